@@ -10,25 +10,83 @@
 public class AVLTree {
 
 
-	private IAVLNode rootNode = new AVLNode(); // The node which is the root of the tree
+	/*
+	 * Every virtual (external) position in every tree refers to this single immutable node.
+	 * Real nodes never allocate their own virtual children.
+	 */
+	private static final IAVLNode VIRTUAL_NODE = new VirtualNode();
+
+	private static final int PROBE_GROUP = 16; // The number of descents searchAll and lessAll run in lock step.
+
+	private IAVLNode rootNode = VIRTUAL_NODE; // The node which is the root of the tree
 
 	private IAVLNode minNode = null; //The node which contains the minimum key in the tree.
 	private IAVLNode maxNode = null; //The node which contains the maximum key in the tree.
 
-	/*
-	 * 
-	 * No constructor. Use the default constructor.
-	 * 
+	private final Aggregate<?>[] aggregates; // The aggregates kept in every node, see rangeAggregate.
+
+	private RebalancePolicy rebalancePolicy = RebalancePolicy.AVL; // Under WAVL the height of a node is its rank.
+
+	private IAVLNode[] searchCache = null; // Direct-mapped cache of found nodes by key, null if disabled.
+	private long searchCacheHits = 0;
+	private long searchCacheMisses = 0;
+
+	private TreeMetrics metrics = null; // Counters and latency histograms of the hot operations, null if disabled.
+
+	private AVLNode pooledNodes = null; // Released nodes kept for reuse, linked by their parent pointers, see enableNodePool.
+	private int pooledCount = 0; // The number of nodes in pooledNodes.
+	private int nodePoolCapacity = 0; // The most nodes the pool keeps, 0 if it is disabled.
+
+	/**
+	 * public AVLTree()
+	 *
+	 * Creates an empty tree which keeps only the built-in size and key sum of every subtree.
+	 */
+	public AVLTree() {
+		this.aggregates = NO_AGGREGATES;
+	}
+
+	/**
+	 * public AVLTree(Aggregate<?>... aggregates)
+	 *
+	 * Creates an empty tree which also keeps the given aggregates of every subtree,
+	 * so rangeAggregate can answer them in O(log(n)).
+	 * Every update then costs O(log(n)) combine calls per aggregate.
 	 */
+	public AVLTree(Aggregate<?>... aggregates) {
+		this.aggregates = (aggregates.length == 0) ? NO_AGGREGATES : aggregates.clone();
+	}
 
-	/*    Variables for keysToArray recursion function   */
-	private static int[] keysArr;
-	private static int keysArrIndex;
-	/*    Variables for infoToArray recursion function   */
-	private static String[] infoArr;
-	private static int infoArrIndex;
+	/**
+	 * public RebalancePolicy rebalancePolicy()
+	 *
+	 * Returns the policy insert and delete use to restore balance. New trees use AVL.
+	 *
+	 * Complexity: O(1)
+	 */
+	public RebalancePolicy rebalancePolicy() {
+		return this.rebalancePolicy;
+	}
 
-	/*/***************************************************/
+	/**
+	 * public void setRebalancePolicy(RebalancePolicy policy)
+	 *
+	 * Sets the policy insert and delete use to restore balance.
+	 * Every AVL tree is a valid WAVL tree, so switching to WAVL keeps the tree as it is.
+	 * A WAVL tree may not be AVL balanced, so switching back to AVL rebuilds it into a perfectly balanced tree.
+	 *
+	 * The batch and join-based methods (insertAll, deleteAll, join, split, union, intersection, difference)
+	 * keep their complexity under WAVL: their joins follow the rank rules, like insert does.
+	 * The trees they return are WAVL if any of their inputs is, and AVL otherwise.
+	 *
+	 * Complexity: O(1), or O(n) when switching from WAVL to AVL
+	 */
+	public void setRebalancePolicy(RebalancePolicy policy) {
+		java.util.Objects.requireNonNull(policy, "policy");
+		if(policy == RebalancePolicy.AVL)
+			rebuildBalanced();
+		this.rebalancePolicy = policy;
+	}
 
 
 	/**
@@ -56,17 +114,291 @@ public class AVLTree {
 	 * Complexity: O(h)=O(log(n))
 	 */
 	public String search(int k)
+	{
+		TreeMetrics m = this.metrics;
+		if (m == null) {return searchItem(k);}
+		m.descentDepth = 0;
+		long start = System.nanoTime();
+		String result = searchItem(k);
+		m.record(Operation.SEARCH, k, System.nanoTime() - start, 0, m.descentDepth);
+		return result;
+	}
+
+	/**
+	 * @return search(k), without recording metrics.
+	 */
+	private String searchItem(int k)
 	{
 		if (empty() == true) {return null;} //If the tree is empty then k is not in the tree.
-		IAVLNode y = treePosition(this.rootNode, k); //Get the last node on the path to k.
+		IAVLNode[] cache = this.searchCache;
+		int slot = 0;
+		if (cache != null) { //Check the cache before descending
+			slot = cacheSlot(k, cache.length);
+			IAVLNode cached = cache[slot];
+			if (cached != null && cached.getKey() == k) {
+				this.searchCacheHits++;
+				return cached.getValue();
+			}
+			this.searchCacheMisses++;
+		}
+		IAVLNode y = treePosition(this.rootNode, k, this.metrics); //Get the last node on the path to k.
 		if (y.getKey() != k) {
 			return null;
 		}
 		else {
+			if (cache != null) {cache[slot] = y;}
 			return y.getValue();
 		}
 	}
 
+	/**
+	 * public void searchAll(int[] keys, String[] out)
+	 *
+	 * Sets out[j] to search(keys[j]) for every j < keys.length, using and filling the search cache like search.
+	 * The probes descend in groups of 16 in lock step, one level of every descent at a time,
+	 * so the cache misses of different descents overlap instead of stalling one after the other.
+	 *
+	 * precondition: out.length >= keys.length (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(m*h)=O(m*log(n)) for m keys
+	 */
+	public void searchAll(int[] keys, String[] out)
+	{
+		if(out.length < keys.length)
+			throw new IllegalArgumentException("Output array is shorter than the keys: " + out.length + " < " + keys.length);
+		IAVLNode[] cache = this.searchCache;
+		IAVLNode[] lanes = new IAVLNode[PROBE_GROUP]; // The current node of every descent in the group.
+		for(int start = 0; start < keys.length; start += PROBE_GROUP) {
+			int count = Math.min(PROBE_GROUP, keys.length - start);
+			for(int l = 0; l < count; l++) {
+				out[start + l] = null;
+				lanes[l] = this.rootNode;
+				if(cache != null && lanes[l].isRealNode()) { //Check the cache before descending
+					IAVLNode cached = cache[cacheSlot(keys[start + l], cache.length)];
+					if(cached != null && cached.getKey() == keys[start + l]) {
+						this.searchCacheHits++;
+						out[start + l] = cached.getValue();
+						lanes[l] = VIRTUAL_NODE;
+					}
+					else
+						this.searchCacheMisses++;
+				}
+			}
+
+			/* Every round moves each unfinished descent one level down, a descent ends on a virtual node */
+			for(boolean moved = true; moved; ) {
+				moved = false;
+				for(int l = 0; l < count; l++) {
+					IAVLNode node = lanes[l];
+					if(!node.isRealNode())
+						continue;
+					int k = keys[start + l];
+					if(node.getKey() == k) { //Found
+						out[start + l] = node.getValue();
+						if(cache != null) {cache[cacheSlot(k, cache.length)] = node;}
+						lanes[l] = VIRTUAL_NODE;
+						continue;
+					}
+					lanes[l] = (k < node.getKey()) ? node.getLeft() : node.getRight();
+					moved = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * public void enableSearchCache(int capacity)
+	 *
+	 * Puts a direct-mapped cache of capacity entries (rounded up to a power of two) in front of search:
+	 * every key found by search replaces the entry of its slot, and a search whose key is in its slot
+	 * returns without descending. delete removes exactly the entry of the deleted key, and operations
+	 * which move many nodes out of the tree (deleteAll, split, join, set operations) clear the cache.
+	 * Enabling the cache again replaces it and resets the counters.
+	 *
+	 * precondition: 1 <= capacity <= 2^30 (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(capacity)
+	 */
+	public void enableSearchCache(int capacity)
+	{
+		if (capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Cache capacity out of range: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.searchCache = new IAVLNode[size];
+		this.searchCacheHits = 0;
+		this.searchCacheMisses = 0;
+	}
+
+	/**
+	 * public void disableSearchCache()
+	 *
+	 * Removes the search cache, the counters keep their values.
+	 *
+	 * Complexity: O(1)
+	 */
+	public void disableSearchCache()
+	{
+		this.searchCache = null;
+	}
+
+	/**
+	 * public long searchCacheHits()
+	 *
+	 * Returns the number of searches answered by the cache since it was enabled.
+	 *
+	 * Complexity: O(1)
+	 */
+	public long searchCacheHits()
+	{
+		return this.searchCacheHits;
+	}
+
+	/**
+	 * public long searchCacheMisses()
+	 *
+	 * Returns the number of searches which descended the tree while the cache was enabled.
+	 *
+	 * Complexity: O(1)
+	 */
+	public long searchCacheMisses()
+	{
+		return this.searchCacheMisses;
+	}
+
+	/**
+	 * public void enableMetrics(long slowOperationNanos)
+	 *
+	 * Starts recording insert, delete, search, select and less calls in a new TreeMetrics (see metrics()):
+	 * their counts, latency histograms, rotations and descent depths, and the number of nodes the tree allocates.
+	 * Every call which takes at least slowOperationNanos is also emitted as an AVLTree.SlowOperation JFR event,
+	 * when a flight recording has the event enabled.
+	 * While metrics are disabled every operation pays one null check; while they are enabled it pays two
+	 * System.nanoTime calls, and its descent stores the number of nodes it visited.
+	 *
+	 * precondition: slowOperationNanos >= 0 (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(1)
+	 */
+	public void enableMetrics(long slowOperationNanos)
+	{
+		if (slowOperationNanos < 0)
+			throw new IllegalArgumentException("Negative slow operation threshold: " + slowOperationNanos);
+		this.metrics = new TreeMetrics(this, slowOperationNanos);
+	}
+
+	/**
+	 * public void enableMetrics()
+	 *
+	 * Like enableMetrics(1000000): operations slower than a millisecond are emitted as JFR events.
+	 *
+	 * Complexity: O(1)
+	 */
+	public void enableMetrics()
+	{
+		enableMetrics(1_000_000L);
+	}
+
+	/**
+	 * public void disableMetrics()
+	 *
+	 * Stops recording, the last TreeMetrics keeps its values.
+	 *
+	 * Complexity: O(1)
+	 */
+	public void disableMetrics()
+	{
+		this.metrics = null;
+	}
+
+	/**
+	 * public TreeMetrics metrics()
+	 *
+	 * Returns the metrics being recorded, or null if they are disabled.
+	 *
+	 * Complexity: O(1)
+	 */
+	public TreeMetrics metrics()
+	{
+		return this.metrics;
+	}
+
+	/**
+	 * public void enableNodePool(int capacity)
+	 *
+	 * Keeps up to capacity nodes which left the tree (by delete, deleteAll or a repeated insert)
+	 * in a free list, and builds new nodes from it before allocating, so a workload which deletes
+	 * and reinserts keys at a steady size allocates no nodes. Released nodes are cleared, so they
+	 * hold no info. If the pool holds more than capacity nodes, the extra ones are dropped.
+	 * Nodes are reused, so an IAVLNode taken from getRoot() must not be kept after its key is deleted.
+	 *
+	 * precondition: capacity >= 0 (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(1), or O(dropped nodes)
+	 */
+	public void enableNodePool(int capacity)
+	{
+		if (capacity < 0)
+			throw new IllegalArgumentException("Negative node pool capacity: " + capacity);
+		this.nodePoolCapacity = capacity;
+		trimNodePool(capacity);
+	}
+
+	/**
+	 * public void disableNodePool()
+	 *
+	 * Drops every pooled node and stops pooling.
+	 *
+	 * Complexity: O(1)
+	 */
+	public void disableNodePool()
+	{
+		this.nodePoolCapacity = 0;
+		this.pooledNodes = null;
+		this.pooledCount = 0;
+	}
+
+	/**
+	 * public void trimNodePool(int retain)
+	 *
+	 * Drops pooled nodes until at most retain are left, so the garbage collector can reclaim them.
+	 * The capacity does not change.
+	 *
+	 * precondition: retain >= 0 (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(min(retain, pooledNodes()))
+	 */
+	public void trimNodePool(int retain)
+	{
+		if (retain < 0)
+			throw new IllegalArgumentException("Negative number of nodes to retain: " + retain);
+		if (this.pooledCount <= retain)
+			return;
+		if (retain == 0) {
+			this.pooledNodes = null;
+		}
+		else {
+			AVLNode last = this.pooledNodes;
+			for (int j = 1; j < retain; j++)
+				last = (AVLNode) last.getParent();
+			last.setParent(null);
+		}
+		this.pooledCount = retain;
+	}
+
+	/**
+	 * public int pooledNodes()
+	 *
+	 * Returns the number of nodes in the node pool.
+	 *
+	 * Complexity: O(1)
+	 */
+	public int pooledNodes()
+	{
+		return this.pooledCount;
+	}
+
 
 	/**
 	 * public int insert(int k, String i)
@@ -79,10 +411,24 @@ public class AVLTree {
 	 * Complexity: O(h)=O(log(n))
 	 */
 	public int insert(int k, String i) {
+		TreeMetrics m = this.metrics;
+		if(m == null)
+			return insertItem(k, i);
+		m.descentDepth = 0;
+		long start = System.nanoTime();
+		int result = insertItem(k, i);
+		m.record(Operation.INSERT, k, System.nanoTime() - start, Math.max(0, result), m.descentDepth);
+		return result;
+	}
+
+	/**
+	 * @return insert(k, i), without recording metrics.
+	 */
+	private int insertItem(int k, String i) {
 		if(k < 1) { //Insert k only if k is a natural number
 			return 0;
 		}
-		IAVLNode newNode = new AVLNode(k, i, null); //Create new node (this node is a leaf with no parent)
+		IAVLNode newNode = createNode(k, i, null); //Create new node (this node is a leaf with no parent)
 		if(this.empty()) { //Empty Tree
 			this.rootNode = newNode;
 			this.maxNode = rootNode;
@@ -90,17 +436,21 @@ public class AVLTree {
 			return 0;
 		}
 
-		if(treeInsert(this.rootNode, newNode)) { //Inserted successfully.
+		if(treeInsert(this.rootNode, newNode, this.metrics)) { //Inserted successfully.
 			//Check if the new node has a maximal or minimal key in the tree and update accordingly.
 			if(newNode.getKey() > maxNode.getKey())
 				maxNode = newNode;
 			else if(newNode.getKey() < minNode.getKey())
 				minNode = newNode;
 			//Rotate and update size, height and sum if necessary.
+			if(this.rebalancePolicy == RebalancePolicy.WAVL)
+				return rebalanceAfterInsertWAVL(newNode);
 			return rotateAndUpdateAfterInsert(newNode);
 		}
-		else //found the inserted key, nothing happened.
+		else { //found the inserted key, nothing happened.
+			releaseNode(newNode);
 			return -1;
+		}
 	}
 
 	/**
@@ -114,19 +464,36 @@ public class AVLTree {
 	 * Complexity: O(h)=O(log(n))
 	 */
 	public int delete(int k)
+	{
+		TreeMetrics m = this.metrics;
+		if(m == null)
+			return deleteItem(k);
+		m.descentDepth = 0;
+		long start = System.nanoTime();
+		int result = deleteItem(k);
+		m.record(Operation.DELETE, k, System.nanoTime() - start, Math.max(0, result), m.descentDepth);
+		return result;
+	}
+
+	/**
+	 * @return delete(k), without recording metrics.
+	 */
+	private int deleteItem(int k)
 	{
 		if(k < 1) { //If k is not a natural number then it could not have been inserted.
 			return -1;
 		}
+		invalidateCachedKey(k);
 		if(this.empty()) { //Empty Tree, k was not found.
 			return -1;
 		} else if(isLeaf(rootNode) && rootNode.getKey()==k) { //Deleting a "root tree" returns a tree with only a virtual node.
-			rootNode = new AVLNode();
+			releaseNode(rootNode);
+			rootNode = VIRTUAL_NODE;
 			minNode = null;
 			maxNode = null;
 			return 0;
 		}
-		IAVLNode node = treePosition(rootNode, k); //Get the last node on the path to k.
+		IAVLNode node = treePosition(rootNode, k, this.metrics); //Get the last node on the path to k.
 		if(node.getKey() == k) { //k was found
 			//Check if the node is a maximal or minimal key in the tree and update accordingly.
 			if(k == maxNode.getKey())
@@ -134,10 +501,23 @@ public class AVLTree {
 			else if(k == minNode.getKey())
 				minNode = successor(node);
 
+			if(this.rebalancePolicy == RebalancePolicy.WAVL) {
+				/* A successor which replaces node also takes its rank */
+				IAVLNode suc = (node.getLeft().isRealNode() && node.getRight().isRealNode()) ? successor(node) : null;
+				IAVLNode parent = bstDelete(node);
+				if(suc != null)
+					suc.setHeight(node.getHeight());
+				int numOfRot = rebalanceAfterDeleteWAVL(parent);
+				releaseNode(node);
+				return numOfRot;
+			}
+
 			IAVLNode parent = bstDelete(node); //Delete the node as in a Binary Search Tree.
 
 			//Rotate and update size, height and sum if necessary.
-			return rotateAndUpdateAfterDelete(parent); 
+			int numOfRot = rotateAndUpdateAfterDelete(parent);
+			releaseNode(node); //node is no longer referenced by the tree
+			return numOfRot;
 		}
 		else //k was not found
 			return -1;
@@ -187,16 +567,16 @@ public class AVLTree {
 	public int[] keysToArray()
 	{
 		if (empty() == true) {return new int[] {};}
-		keysArr = new int[size()];
-		keysArrIndex = 0;
+		int[] keysArr = new int[size()];
 
 		/*
-		 * This method is an envelope function for inOrderKeys recursion function.
-		 * inOrderKeys changes keysArr to a sorted array of all keys in the tree.
+		 * This method is an envelope function for inOrderKeys.
+		 * inOrderKeys fills keysArr with a sorted array of all keys in the tree.
+		 * keysArr is local to this call, so concurrent calls (on any trees) do not share it.
 		 */
-		inOrderKeys(this.getRoot());
+		inOrderKeys(this.minNode, keysArr, 0);
 
-		return keysArr.clone();
+		return keysArr;
 	}
 
 	/**
@@ -211,16 +591,72 @@ public class AVLTree {
 	public String[] infoToArray()
 	{
 		if (empty() == true) {return new String[] {};}
-		infoArr = new String[size()];
-		infoArrIndex = 0;
+		String[] infoArr = new String[size()];
 
 		/*
-		 * This method is an envelope function for inOrderInfo recursion function.
-		 * inOrderInfo changes infoArr to a sorted array of all info in the tree.(sorted by the keys)
+		 * This method is an envelope function for inOrderInfo.
+		 * inOrderInfo fills infoArr with a sorted array of all info in the tree.(sorted by the keys)
+		 * infoArr is local to this call, so concurrent calls (on any trees) do not share it.
 		 */
-		inOrderInfo(this.getRoot());
+		inOrderInfo(this.minNode, infoArr, 0);
+
+		return infoArr;
+	}
+
+	/**
+	 * public int keysInto(int[] dst, int offset)
+	 *
+	 * Writes all keys in the tree, sorted, into dst starting at offset.
+	 * returns the number of keys written, which is size().
+	 *
+	 * precondition: 0 <= offset and offset + size() <= dst.length (otherwise IndexOutOfBoundsException is thrown
+	 * and dst is not changed)
+	 *
+	 * Complexity: O(n), without recursion or allocation
+	 */
+	public int keysInto(int[] dst, int offset)
+	{
+		java.util.Objects.checkFromIndexSize(offset, size(), dst.length);
+		inOrderKeys(this.minNode, dst, offset);
+		return size();
+	}
+
+	/**
+	 * public int infoInto(String[] dst, int offset)
+	 *
+	 * Writes all info in the tree, sorted by their respective keys, into dst starting at offset.
+	 * returns the number of items written, which is size().
+	 *
+	 * precondition: 0 <= offset and offset + size() <= dst.length (otherwise IndexOutOfBoundsException is thrown
+	 * and dst is not changed)
+	 *
+	 * Complexity: O(n), without recursion or allocation
+	 */
+	public int infoInto(String[] dst, int offset)
+	{
+		java.util.Objects.checkFromIndexSize(offset, size(), dst.length);
+		inOrderInfo(this.minNode, dst, offset);
+		return size();
+	}
 
-		return infoArr.clone();
+	/**
+	 * public boolean forEach(EntryVisitor visitor)
+	 *
+	 * Calls visitor.visit(key, info) for the items in the tree by increasing key,
+	 * stopping after the first call which returns false.
+	 * returns true if all items were visited, false if the visitor stopped early.
+	 * The visitor must not modify the tree.
+	 *
+	 * Complexity: O(n) for a full traversal, O(log(n) + m) if stopped after m items,
+	 * without recursion or allocation
+	 */
+	public boolean forEach(EntryVisitor visitor)
+	{
+		for(IAVLNode node = this.minNode; node != null; node = successor(node)) {
+			if(!visitor.visit(node.getKey(), node.getValue()))
+				return false;
+		}
+		return true;
 	}
 
 	/**
@@ -243,11 +679,27 @@ public class AVLTree {
 	 *
 	 * Returns the sum of all keys which are less or equal to i
 	 * i is not neccessarily a key in the tree 	
+	 * The sum wraps around like int arithmetic when it does not fit, rangeSum(Integer.MIN_VALUE, i) is exact.
 	 *
 	 * precondition: none
 	 * postcondition: none
 	 */   
 	public int less(int i)
+	{
+		TreeMetrics m = this.metrics;
+		if(m == null)
+			return lessItem(i);
+		m.descentDepth = 0;
+		long start = System.nanoTime();
+		int result = lessItem(i);
+		m.record(Operation.LESS, i, System.nanoTime() - start, 0, m.descentDepth);
+		return result;
+	}
+
+	/**
+	 * @return less(i), without recording metrics.
+	 */
+	private int lessItem(int i)
 	{
 		if(empty()) { return 0; } //If the tree is empty then the sum must be zero.
 
@@ -261,913 +713,7833 @@ public class AVLTree {
 	}
 
 	/**
-	 * public string select(int i)
+	 * public void lessAll(int[] bounds, long[] out)
 	 *
-	 * Returns the value of the i'th smallest key (return null if tree is empty)
-	 * Example 1: select(1) returns the value of the node with minimal key 
-	 * Example 2: select(size()) returns the value of the node with maximal key 
-	 * Example 3: select(2) returns the value 2nd smallest minimal node, i.e the value of the node minimal node's successor 	
+	 * Sets out[j] to the sum of all keys which are less or equal to bounds[j], for every j < bounds.length.
+	 * The sums are exact (as rangeSum(Integer.MIN_VALUE, bounds[j])), they do not wrap around like less.
+	 * The descents run in groups of 16 in lock step, like searchAll.
 	 *
-	 * precondition: size() >= i > 0
-	 * postcondition: none
-	 * 
-	 * Complexity: O(log k)
-	 */   
-	public String select(int i)
+	 * precondition: out.length >= bounds.length (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(m*h)=O(m*log(n)) for m bounds
+	 */
+	public void lessAll(int[] bounds, long[] out)
 	{
-		if (empty() == true) {return null;}
-		if (i < 1) {return null;}
-		if (i == 1) {return min();}
-		if (i == size()) {return max();}
-		if (i > size()) {return null;}
+		if(out.length < bounds.length)
+			throw new IllegalArgumentException("Output array is shorter than the bounds: " + out.length + " < " + bounds.length);
+		IAVLNode[] lanes = new IAVLNode[PROBE_GROUP]; // The current node of every descent in the group.
+		for(int start = 0; start < bounds.length; start += PROBE_GROUP) {
+			int count = Math.min(PROBE_GROUP, bounds.length - start);
+			for(int l = 0; l < count; l++) {
+				out[start + l] = 0;
+				lanes[l] = this.rootNode;
+			}
 
-		Double temp = Math.ceil(Math.log(i)/Math.log((1+Math.sqrt(5))/2));
-		int top = temp.intValue();
-		IAVLNode curNode = this.minNode;
-		for (int j = 1; j <= top; j++) {
-			if (curNode.getKey()!=this.rootNode.getKey()) {
-				curNode = curNode.getParent();
+			/* Every round moves each unfinished descent one level down, summing the keys it passes on its left */
+			for(boolean moved = true; moved; ) {
+				moved = false;
+				for(int l = 0; l < count; l++) {
+					IAVLNode node = lanes[l];
+					if(!node.isRealNode())
+						continue;
+					if(node.getKey() > bounds[start + l]) {
+						lanes[l] = node.getLeft();
+					}
+					else {
+						out[start + l] += ((AVLNode) node.getLeft()).getLongSum() + node.getKey();
+						lanes[l] = node.getRight();
+					}
+					moved = true;
+				}
 			}
 		}
-		return treeSelect(curNode, i); 
 	}
 
 	/**
-	 * public int getRoot()
+	 * public long rangeSum(int lo, int hi)
 	 *
-	 * Returns the root AVL node, or null if the tree is empty
+	 * Returns the sum of all keys in [lo, hi], as a long so it does not overflow.
+	 * lo and hi are not neccessarily keys in the tree, and the sum is 0 if lo > hi.
 	 *
-	 * precondition: none
-	 * postcondition: none
-	 * 
-	 * Complexity: O(1)
+	 * Complexity: O(h)=O(log(n))
 	 */
-	public IAVLNode getRoot()
+	public long rangeSum(int lo, int hi)
 	{
-		if(!empty())
-			return this.rootNode;
-		else 
-			return null;
+		if(lo > hi)
+			return 0;
+		return prefixSum(hi) - prefixSum(lo - 1L);
 	}
 
-
-	/*/*************************************************
-	 * 					Rotations Methods			   *
-	 ***************************************************/
-
-	/*
-	 * Additional values such as size, height and sum are updated only in the following function.
+	/**
+	 * public int rangeCount(int lo, int hi)
+	 *
+	 * Returns the number of keys in [lo, hi].
+	 * lo and hi are not neccessarily keys in the tree, and the count is 0 if lo > hi.
+	 *
+	 * Complexity: O(h)=O(log(n))
 	 */
+	public int rangeCount(int lo, int hi)
+	{
+		if(lo > hi)
+			return 0;
+		return prefixCount(hi) - prefixCount(lo - 1L);
+	}
 
 	/**
-	 * 
-	 * @param node is the top node of the two that will get rotated
-	 * precondition: node has a right child
-	 * 
-	 * performs a left rotation and update additional node values.
-	 * 
-	 * Complexity: O(1)
+	 * public <A> A rangeAggregate(int lo, int hi, Aggregate<A> aggregate)
+	 *
+	 * Returns the aggregate of the items with keys in [lo, hi], combined by increasing key,
+	 * or aggregate.identity() if there are none.
+	 * The aggregate does not need an inverse: the query combines the O(log(n)) subtrees
+	 * which hang off the two search paths to lo and hi.
+	 *
+	 * precondition: aggregate was given to the tree's constructor (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(h)=O(log(n)) combine calls
 	 */
-	private void rotateLeft(IAVLNode node) {
-		IAVLNode parent = node.getParent();
-		IAVLNode right = node.getRight(); //x
-		IAVLNode left = right.getLeft(); //B
-
-		/* Update reference of the nodes children and parent */
-		right.setLeft(node);
-		right.setParent(parent);
-		node.setParent(right);
-		node.setRight(left);
+	public <A> A rangeAggregate(int lo, int hi, Aggregate<A> aggregate)
+	{
+		int index = aggregateIndex(aggregate);
+		if(index < 0)
+			throw new IllegalArgumentException("Aggregate is not kept by this tree: " + aggregate);
 
-		left.setParent(node);
+		/* Find the highest node in [lo, hi], where the search paths to lo and hi split */
+		IAVLNode split = this.rootNode;
+		while(split.isRealNode() && (split.getKey() < lo || split.getKey() > hi))
+			split = (split.getKey() < lo) ? split.getRight() : split.getLeft();
+		if(!split.isRealNode() || lo > hi)
+			return aggregate.identity();
 
-		if(parent==null) { //The node is root
-			rootNode = right;
-			rootNode.setParent(null);
+		/* Every node in [lo, hi] on the path to lo comes with its right subtree */
+		A leftPart = aggregate.identity();
+		for(IAVLNode node = split.getLeft(); node.isRealNode(); ) {
+			if(node.getKey() >= lo) {
+				A withRight = aggregate.combine(aggregate.of(node.getKey(), node.getValue()), aggregateOf(node.getRight(), index, aggregate));
+				leftPart = aggregate.combine(withRight, leftPart);
+				node = node.getLeft();
+			}
+			else {
+				node = node.getRight();
+			}
 		}
-		else {
-			if(parent.getLeft().getKey() == node.getKey()) //node is the left child
-				parent.setLeft(right);
-			else if(parent.getRight().getKey() == node.getKey()) //node is the right child
-				parent.setRight(right);
-			else //node has no parent but is not the root - error
-				throw new RuntimeException("Has no parent. key:" + node.getKey());
+
+		/* Every node in [lo, hi] on the path to hi comes with its left subtree */
+		A rightPart = aggregate.identity();
+		for(IAVLNode node = split.getRight(); node.isRealNode(); ) {
+			if(node.getKey() <= hi) {
+				A withLeft = aggregate.combine(aggregateOf(node.getLeft(), index, aggregate), aggregate.of(node.getKey(), node.getValue()));
+				rightPart = aggregate.combine(rightPart, withLeft);
+				node = node.getRight();
+			}
+			else {
+				node = node.getLeft();
+			}
 		}
 
-		/* Update size, height and sum of the two rotated nodes */
-		node.setSubtreeSize(1+node.getLeft().getSubtreeSize()+node.getRight().getSubtreeSize());
-		node.setHeight(1+Math.max(node.getLeft().getHeight(), node.getRight().getHeight()));
+		A middle = aggregate.of(split.getKey(), split.getValue());
+		return aggregate.combine(aggregate.combine(leftPart, middle), rightPart);
+	}
 
-		right.setSubtreeSize(1+right.getLeft().getSubtreeSize()+right.getRight().getSubtreeSize());
-		right.setHeight(1+Math.max(right.getLeft().getHeight(), right.getRight().getHeight()));
+	/**
+	 * public string select(int i)
+	 *
+	 * Returns the value of the i'th smallest key (return null if tree is empty)
+	 * Example 1: select(1) returns the value of the node with minimal key 
+	 * Example 2: select(size()) returns the value of the node with maximal key 
+	 * Example 3: select(2) returns the value 2nd smallest minimal node, i.e the value of the node minimal node's successor 	
+	 *
+	 * precondition: size() >= i > 0
+	 * postcondition: none
+	 * 
+	 * Complexity: O(log(d)), where d = min(i, size()-i+1) is the distance from the nearer end
+	 */   
+	public String select(int i)
+	{
+		TreeMetrics m = this.metrics;
+		if (m == null) {return selectItem(i);}
+		m.descentDepth = 0;
+		long start = System.nanoTime();
+		String result = selectItem(i);
+		m.record(Operation.SELECT, i, System.nanoTime() - start, 0, m.descentDepth);
+		return result;
+	}
+
+	/**
+	 * @return select(i), without recording metrics.
+	 */
+	private String selectItem(int i)
+	{
+		if (empty() == true) {return null;}
+		if (i < 1) {return null;}
+		if (i > size()) {return null;}
 
-		((AVLNode) node).setSum(((AVLNode) node.getLeft()).getSum()+((AVLNode) node.getRight()).getSum()+node.getKey());
-		((AVLNode) right).setSum(((AVLNode) right.getLeft()).getSum()+((AVLNode) right.getRight()).getSum()+right.getKey());
+		return selectFromEnds(i).getValue();
 	}
 
 	/**
-	 * 
-	 * @param node is the top node of the two that will get rotated
-	 * precondition: node has a left child
-	 * 
-	 * performs a right rotation and update additional node values.
-	 * 
-	 * Complexity: O(1)
+	 * public int selectKey(int i)
+	 *
+	 * Returns the i'th smallest key, or -1 if i is out of range (i < 1 or i > size()).
+	 *
+	 * Complexity: O(log(d)), where d = min(i, size()-i+1) is the distance from the nearer end
 	 */
-	private void rotateRight(IAVLNode node) {
-		IAVLNode parent = node.getParent();
-		IAVLNode left = node.getLeft(); //y
-		IAVLNode right = left.getRight(); //B
+	public int selectKey(int i)
+	{
+		if (i < 1 || i > size()) {return -1;}
 
-		/* Update reference of the nodes children and parent */
-		left.setRight(node);
-		left.setParent(parent);
-		node.setParent(left);
-		node.setLeft(right);
+		return selectFromEnds(i).getKey();
+	}
 
-		right.setParent(node);
+	/**
+	 * public int rank(int k)
+	 *
+	 * Returns the number of keys which are less or equal to k.
+	 * k is not neccessarily a key in the tree. If it is, rank(k) is its position,
+	 * so select(rank(k)) returns its info.
+	 *
+	 * Complexity: O(log(d)), where d is the number of keys between k and the nearer end of the tree
+	 */
+	public int rank(int k)
+	{
+		if (empty() == true) {return 0;}
+		if (k < this.minNode.getKey()) {return 0;}
+		if (k >= this.maxNode.getKey()) {return size();}
 
-		if(parent==null) { //node is root
-			rootNode = left;
-			rootNode.setParent(null);
+		if (k < this.rootNode.getKey()) {
+			/* Climb the left spine until the subtree holds every key up to k */
+			IAVLNode node = this.minNode;
+			while (node.getParent() != null && node.getParent().getKey() <= k)
+				node = node.getParent();
+			return rankInSubtree(node, k);
 		}
 		else {
-			if(parent.getLeft().getKey() == node.getKey()) //node is the left child
-				parent.setLeft(left);
-			else if(parent.getRight().getKey() == node.getKey()) //node is the right child
-				parent.setRight(left);
-			else //node has no parent but is not the root - error
-				throw new RuntimeException("Has no parent. key:" + node.getKey());
+			/* Climb the right spine until the subtree holds every key from k on */
+			IAVLNode node = this.maxNode;
+			while (node.getParent() != null && node.getParent().getKey() > k)
+				node = node.getParent();
+			return size() - node.getSubtreeSize() + rankInSubtree(node, k);
 		}
+	}
 
-		/* Update size, height and sum of the two rotated nodes */
-		node.setSubtreeSize(1+node.getLeft().getSubtreeSize()+node.getRight().getSubtreeSize());
-		node.setHeight(1+Math.max(node.getLeft().getHeight(), node.getRight().getHeight()));
+	/**
+	 * public int getRoot()
+	 *
+	 * Returns the root AVL node, or null if the tree is empty
+	 *
+	 * precondition: none
+	 * postcondition: none
+	 * 
+	 * Complexity: O(1)
+	 */
+	public IAVLNode getRoot()
+	{
+		if(!empty())
+			return this.rootNode;
+		else 
+			return null;
+	}
 
-		left.setSubtreeSize(1+left.getLeft().getSubtreeSize()+left.getRight().getSubtreeSize());
-		left.setHeight(1+Math.max(left.getLeft().getHeight(), left.getRight().getHeight()));
 
-		((AVLNode) node).setSum(((AVLNode) node.getLeft()).getSum()+((AVLNode) node.getRight()).getSum()+node.getKey());
-		((AVLNode) left).setSum(((AVLNode) left.getLeft()).getSum()+((AVLNode) left.getRight()).getSum()+left.getKey());
+	/**
+	 * public static AVLTree fromSorted(int[] keys, String[] values)
+	 *
+	 * Returns a new tree with the item (keys[j], values[j]) for every j,
+	 * built directly as a perfectly balanced tree, without insert and without rotations.
+	 * Heights, sizes, sums and the minimum and maximum nodes are set as the nodes are created.
+	 * Large inputs are built in parallel, one fork-join task per large subtree.
+	 *
+	 * precondition: keys.length == values.length, keys are strictly increasing natural numbers
+	 * (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(n)
+	 */
+	public static AVLTree fromSorted(int[] keys, String[] values)
+	{
+		if(keys.length != values.length)
+			throw new IllegalArgumentException("keys and values have different lengths: " + keys.length + ", " + values.length);
+		for(int j = 0; j < keys.length; j++) {
+			if(keys[j] < 1 || (j > 0 && keys[j] <= keys[j-1]))
+				throw new IllegalArgumentException("keys must be strictly increasing natural numbers, at index " + j + ": " + keys[j]);
+		}
+		return buildTree(keys, values, keys.length);
 	}
 
-
 	/**
-	 * 
-	 * @param newNode - A node which was just inserted to the tree.
-	 * @return Number of rotations.
-	 * 
-	 * Complexity: O(h)=O(log(n))
+	 * public static AVLTree fromUnsorted(int[] keys, String[] values)
+	 *
+	 * Returns a new tree with the same items as inserting (keys[j], values[j]) for j = 0, 1, ... in order:
+	 * keys which are not natural numbers are skipped, and for a repeated key the first item is kept.
+	 * The items are sorted with a parallel sort and then built as in fromSorted.
+	 * The input arrays are not changed.
+	 *
+	 * precondition: keys.length == values.length (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(n log(n)) for the sort, O(n) for the build
 	 */
-	private int rotateAndUpdateAfterInsert(IAVLNode newNode) {
-		/* Update until a rotation is needed and then rotate (only if needed) */
-		int numOfRot = 0;
+	public static AVLTree fromUnsorted(int[] keys, String[] values)
+	{
+		if(keys.length != values.length)
+			throw new IllegalArgumentException("keys and values have different lengths: " + keys.length + ", " + values.length);
 
-		IAVLNode newNodeParent = newNode.getParent();
+		/* Sort (key, index) pairs, so equal keys stay in input order and the first one is kept */
+		long[] pairs = new long[keys.length];
+		int n = 0;
+		for(int j = 0; j < keys.length; j++) {
+			if(keys[j] >= 1)
+				pairs[n++] = ((long) keys[j] << 32) | j;
+		}
+		java.util.Arrays.parallelSort(pairs, 0, n);
 
-		while(newNodeParent!=null) {
-			newNodeParent.setSubtreeSize(newNodeParent.getSubtreeSize()+1);
-			boolean hasHeightUpdated = updateHeightIfNeeded(newNode, newNodeParent);
-			((AVLNode) newNodeParent).setSum(((AVLNode) newNodeParent.getLeft()).getSum()+((AVLNode) newNodeParent.getRight()).getSum()+newNodeParent.getKey());
+		int[] sortedKeys = new int[n];
+		String[] sortedValues = new String[n];
+		int count = 0;
+		for(int j = 0; j < n; j++) {
+			int k = (int) (pairs[j] >>> 32);
+			if(count > 0 && sortedKeys[count-1] == k)
+				continue; //Repeated key
+			sortedKeys[count] = k;
+			sortedValues[count] = values[(int) pairs[j]];
+			count++;
+		}
+		return buildTree(sortedKeys, sortedValues, count);
+	}
 
-			int parentBF = BF(newNodeParent);
-			if(parentBF<2 && parentBF>-2) {//|BF|<2
-				if(hasHeightUpdated) { //parent height has changed
-					newNode = newNodeParent;
-					newNodeParent = newNode.getParent();
-				}
-				else { //parent height is the same
-					numOfRot= 0; //No rotation were made;
-					break;
-				}
+	/**
+	 * public void writeSnapshot(java.nio.file.Path path)
+	 *
+	 * Writes the tree to path in the snapshot format: a header (magic, version, number of items),
+	 * the sorted keys, the values (each one a byte length, -1 for null, and its UTF-8 bytes)
+	 * and a CRC32 of everything before it.
+	 * The snapshot is written through a FileChannel to a temporary file in the same directory,
+	 * forced to the device and then moved over path, so path always holds a complete snapshot.
+	 *
+	 * Complexity: O(n)
+	 */
+	public void writeSnapshot(java.nio.file.Path path) throws java.io.IOException
+	{
+		java.nio.file.Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(tmp,
+				java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING,
+				java.nio.file.StandardOpenOption.WRITE)) {
+			java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_SIZE);
+			java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+			buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(size());
+			for(IAVLNode node = this.minNode; node != null; node = successor(node)) {
+				if(buffer.remaining() < Integer.BYTES)
+					flushSnapshotBuffer(channel, buffer, crc);
+				buffer.putInt(node.getKey());
 			}
-			else { //|BF|=2
-
-				if(parentBF==2) {
-					if(BF(newNodeParent.getLeft())==1) { //LL
-						rotateRight(newNodeParent);
-						numOfRot = 1;
-						break;
-					}
-					else if(BF(newNodeParent.getLeft())==-1) { //LR
-						rotateLeft(newNode);
-						rotateRight(newNodeParent);
-						numOfRot = 2;
-						break;
-					}
+			for(IAVLNode node = this.minNode; node != null; node = successor(node)) {
+				if(buffer.remaining() < Integer.BYTES)
+					flushSnapshotBuffer(channel, buffer, crc);
+				if(node.getValue() == null) {
+					buffer.putInt(-1);
+					continue;
 				}
-				else if(parentBF==-2) {
-					if(BF(newNodeParent.getRight())==-1) { //RR
-						rotateLeft(newNodeParent);
-						numOfRot = 1;
-						break;
-					}
-					else if(BF(newNodeParent.getRight())==1) { //RL
-						rotateRight(newNode);
-						rotateLeft(newNodeParent);
-						numOfRot = 2;
-						break;
-					}
+				byte[] bytes = node.getValue().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+				buffer.putInt(bytes.length);
+				for(int written = 0; written < bytes.length; ) { //A value may be larger than the buffer
+					if(!buffer.hasRemaining())
+						flushSnapshotBuffer(channel, buffer, crc);
+					int chunk = Math.min(buffer.remaining(), bytes.length - written);
+					buffer.put(bytes, written, chunk);
+					written += chunk;
 				}
 			}
+			flushSnapshotBuffer(channel, buffer, crc);
+			buffer.putInt((int) crc.getValue());
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
 		}
+		java.nio.file.Files.move(tmp, path, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+				java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+	}
 
-		/* Update the rest of the tree path(to root) size, height and sum */
-		if(newNodeParent!=null && newNodeParent.getParent()!=null) {
-			newNode = newNodeParent;
-			newNodeParent = newNode.getParent();
+	/**
+	 * public static AVLTree readSnapshot(java.nio.file.Path path)
+	 *
+	 * Returns a tree with the items of a snapshot written by writeSnapshot.
+	 * The file is memory-mapped (in windows of up to 1GB), its checksum is verified, and the
+	 * tree is built directly from the sorted items, perfectly balanced, without insert.
+	 * Throws IOException if the file is not a valid snapshot.
+	 *
+	 * Complexity: O(n)
+	 */
+	public static AVLTree readSnapshot(java.nio.file.Path path) throws java.io.IOException
+	{
+		try(java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(path, java.nio.file.StandardOpenOption.READ)) {
+			long end = channel.size() - Integer.BYTES; //The checksum follows the data
+			if(end < SNAPSHOT_HEADER_SIZE)
+				throw new java.io.IOException("Not a snapshot, too short: " + path);
+			verifySnapshotChecksum(channel, end, path);
 
-			while(newNodeParent!=null) {
-				newNodeParent.setSubtreeSize(newNodeParent.getLeft().getSubtreeSize()+newNodeParent.getRight().getSubtreeSize()+1);
-				updateHeightIfNeeded(newNode, newNodeParent);
-				((AVLNode) newNodeParent).setSum(((AVLNode) newNodeParent.getLeft()).getSum()+((AVLNode) newNodeParent.getRight()).getSum()+newNodeParent.getKey());
+			SnapshotReader in = new SnapshotReader(channel, end);
+			if(in.readInt() != SNAPSHOT_MAGIC)
+				throw new java.io.IOException("Not a snapshot, bad magic number: " + path);
+			int version = in.readInt();
+			if(version != SNAPSHOT_VERSION)
+				throw new java.io.IOException("Unsupported snapshot version " + version + ": " + path);
+			int n = in.readInt();
+			if(n < 0 || (long) n * Integer.BYTES * 2 > end - SNAPSHOT_HEADER_SIZE)
+				throw new java.io.IOException("Bad number of items " + n + ": " + path);
 
-				newNode = newNodeParent;
-				newNodeParent = newNode.getParent();
+			int[] keys = new int[n];
+			in.readInts(keys);
+			for(int j = 0; j < n; j++) {
+				if(keys[j] < 1 || (j > 0 && keys[j] <= keys[j-1]))
+					throw new java.io.IOException("Keys are not increasing natural numbers at item " + j + ": " + path);
 			}
+			String[] values = new String[n];
+			for(int j = 0; j < n; j++)
+				values[j] = in.readString();
+			if(!in.atEnd())
+				throw new java.io.IOException("Unexpected data after the last item: " + path);
+			return buildTree(keys, values, n);
 		}
-
-		return numOfRot;
 	}
 
+
 	/**
-	 * 
-	 * @param parent - The parent of the node which was just deleted.
-	 * @return Number of rotations.
-	 * 
-	 * Complexity: O(h)=O(log(n))
+	 * public int insertAll(int[] keys, String[] values)
+	 *
+	 * inserts the items (keys[j], values[j]) like calling insert for j = 0, 1, ... in order:
+	 * keys which are not natural numbers or already in the tree are skipped,
+	 * and for a key repeated in the batch the first item is inserted.
+	 * The batch is sorted and merged into the tree in one pass: the tree is descended once for the
+	 * whole batch, and every affected subtree is rebalanced once, when its two sides are joined.
+	 * returns the total number of rebalancing operations.
+	 *
+	 * precondition: keys.length == values.length (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(m log(m)) for the sort and O(m log(n/m + 1)) for the merge, where m = keys.length
 	 */
-	private int rotateAndUpdateAfterDelete(IAVLNode parent) {
-		IAVLNode firstParent = parent;
-
-		/* Update and rotate as needed */
-		int numOfRot = 0;
+	public int insertAll(int[] keys, String[] values)
+	{
+		if(keys.length != values.length)
+			throw new IllegalArgumentException("keys and values have different lengths: " + keys.length + ", " + values.length);
 
-		if(parent!=null) {
-			if(parent.getLeft().isRealNode()) {
-				parent.getLeft().setSubtreeSize(parent.getLeft().getLeft().getSubtreeSize()+parent.getLeft().getRight().getSubtreeSize()+1);
-				updateHeightIfNeeded_Deletion(parent.getLeft());
-				((AVLNode) parent.getLeft()).setSum(((AVLNode) parent.getLeft().getLeft()).getSum()+((AVLNode) parent.getLeft().getRight()).getSum()+parent.getLeft().getKey());
-			}
-			if(parent.getRight().isRealNode()) {
-				parent.getRight().setSubtreeSize(parent.getRight().getLeft().getSubtreeSize()+parent.getRight().getRight().getSubtreeSize()+1);
-				updateHeightIfNeeded_Deletion(parent.getRight());
-				((AVLNode) parent.getRight()).setSum(((AVLNode) parent.getRight().getLeft()).getSum()+((AVLNode) parent.getRight().getRight()).getSum()+parent.getRight().getKey());
-			}
+		/* Sort (key, index) pairs, so equal keys stay in input order and the first one is kept */
+		long[] pairs = new long[keys.length];
+		int n = 0;
+		for(int j = 0; j < keys.length; j++) {
+			if(keys[j] >= 1)
+				pairs[n++] = ((long) keys[j] << 32) | j;
 		}
-		else
+		java.util.Arrays.sort(pairs, 0, n);
+		int[] sortedKeys = new int[n];
+		String[] sortedValues = new String[n];
+		int count = 0;
+		for(int j = 0; j < n; j++) {
+			int k = (int) (pairs[j] >>> 32);
+			if(count > 0 && sortedKeys[count-1] == k)
+				continue; //Repeated key
+			sortedKeys[count] = k;
+			sortedValues[count] = values[(int) pairs[j]];
+			count++;
+		}
+		if(count == 0)
 			return 0;
 
-		if(BF(parent)<2 && BF(parent)>-2) {
-			parent.setSubtreeSize(parent.getLeft().getSubtreeSize()+parent.getRight().getSubtreeSize()+1);
-			updateHeightIfNeeded_Deletion(parent);
-			((AVLNode) parent).setSum(((AVLNode) parent.getLeft()).getSum()+((AVLNode) parent.getRight()).getSum()+parent.getKey());
+		int[] numOfRot = new int[1];
+		setRootAfterJoin(insertSorted(this.rootNode, sortedKeys, sortedValues, 0, count - 1, numOfRot));
+		return numOfRot[0];
+	}
 
-			parent = parent.getParent();
-		}
+	/**
+	 * public int deleteAll(int[] keys)
+	 *
+	 * deletes the items with the given keys, like calling delete for every key.
+	 * Keys which are not in the tree are ignored.
+	 * The keys are sorted and removed in one pass: the tree is descended once for the
+	 * whole batch, and every affected subtree is rebalanced once, when its two sides are joined.
+	 * returns the total number of rebalancing operations.
+	 *
+	 * Complexity: O(m log(m)) for the sort and O(m log(n/m + 1)) for the removal, where m = keys.length
+	 */
+	public int deleteAll(int[] keys)
+	{
+		int[] sortedKeys = keys.clone();
+		java.util.Arrays.sort(sortedKeys);
+		clearSearchCache();
+		int[] numOfRot = new int[1];
+		setRootAfterJoin(deleteSorted(this.rootNode, sortedKeys, 0, sortedKeys.length - 1, numOfRot));
+		return numOfRot[0];
+	}
 
-		while(parent!=null) {
-			parent.setSubtreeSize(parent.getLeft().getSubtreeSize()+parent.getRight().getSubtreeSize()+1);
-			boolean hasHeightUpdated = updateHeightIfNeeded_Deletion(parent);
-			((AVLNode) parent).setSum(((AVLNode) parent.getLeft()).getSum()+((AVLNode) parent.getRight()).getSum()+parent.getKey());
 
-			int parentBF = BF(parent);
+	/**
+	 * public static AVLTree join(AVLTree left, int k, String v, AVLTree right)
+	 *
+	 * Returns a tree with the items of left, the item (k, v) and the items of right.
+	 * The nodes of left and right are moved into the returned tree, and both become empty.
+	 *
+	 * precondition: k is a natural number, every key of left is smaller than k,
+	 * every key of right is larger than k and both trees keep the same aggregates
+	 * (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(|left.height - right.height| + 1)
+	 */
+	public static AVLTree join(AVLTree left, int k, String v, AVLTree right)
+	{
+		if(k < 1)
+			throw new IllegalArgumentException("Key is not a natural number: " + k);
+		if(left.maxNode != null && left.maxNode.getKey() >= k)
+			throw new IllegalArgumentException("Left tree has a key not smaller than " + k + ": " + left.maxNode.getKey());
+		if(right.minNode != null && right.minNode.getKey() <= k)
+			throw new IllegalArgumentException("Right tree has a key not larger than " + k + ": " + right.minNode.getKey());
+		checkSameAggregates(left, right);
 
-			if(parentBF<2 && parentBF>-2) {//|BF|<2
-				if(hasHeightUpdated) { //parent height has changed
-					parent = parent.getParent();
-				}
-				else { //parent height is the same
-					//No rotation were made;
-					break;
-				}
-			}
-			else { //|BF|=2
-				if(parentBF==2) {
-					if(BF(parent.getLeft())==1 || BF(parent.getLeft())==0) { //LL
-						rotateRight(parent);
-						numOfRot += 1;
-					}
-					else if(BF(parent.getLeft())==-1) { //LR
-						rotateLeft(parent.getLeft());
-						rotateRight(parent);
-						numOfRot += 2;
-					}
-				}
-				else if(parentBF==-2) {
-					if(BF(parent.getRight())==-1  || (BF(parent.getRight())==0)) { //RR
-						rotateLeft(parent);
-						numOfRot += 1;
-					}
-					else if(BF(parent.getRight())==1) { //RL
-						rotateRight(parent.getRight());
-						rotateLeft(parent);
-						numOfRot += 2;
-					}
-				}
+		AVLTree tree = new AVLTree(left.aggregates);
+		tree.rebalancePolicy = joinedPolicy(left, right);
+		IAVLNode leftRoot = left.rootNode;
+		IAVLNode rightRoot = right.rootNode;
+		left.setRootAfterJoin(VIRTUAL_NODE);
+		right.setRootAfterJoin(VIRTUAL_NODE);
+		tree.setRootAfterJoin(tree.joinNodes(leftRoot, tree.createNode(k, v, null), rightRoot, new int[1]));
+		return tree;
+	}
 
-				if(parent.getParent()!=null)
-					parent = parent.getParent().getParent();
-				else
-					break;
-			}
-		}
+	/**
+	 * public AVLTree[] split(int k)
+	 *
+	 * Splits the tree by k: returns {smaller, larger}, where smaller holds the items with keys
+	 * less or equal to k and larger holds the items with keys greater than k.
+	 * k is not neccessarily a key in the tree.
+	 * The nodes are moved into the returned trees, and this tree becomes empty.
+	 *
+	 * Complexity: O(h)=O(log(n))
+	 */
+	public AVLTree[] split(int k)
+	{
+		IAVLNode[] parts = new IAVLNode[2];
+		int[] numOfRot = new int[1];
+		AVLTree smaller = new AVLTree(this.aggregates);
+		AVLTree larger = new AVLTree(this.aggregates);
+		smaller.rebalancePolicy = this.rebalancePolicy;
+		larger.rebalancePolicy = this.rebalancePolicy;
+		IAVLNode found = smaller.splitSubtree(this.rootNode, k, parts, numOfRot);
+		if(found != null) //Keys equal to k go to the smaller tree
+			parts[0] = smaller.joinNodes(parts[0], found, VIRTUAL_NODE, numOfRot);
+		smaller.setRootAfterJoin(parts[0]);
+		larger.setRootAfterJoin(parts[1]);
+		this.setRootAfterJoin(VIRTUAL_NODE);
+		return new AVLTree[] {smaller, larger};
+	}
 
-		/* If no rotation was needed then update the children of the parent of originally deleted node */
-		if(firstParent!=null && numOfRot==0) {
-			if(firstParent.getLeft().isRealNode()) {
-				firstParent.getLeft().setSubtreeSize(firstParent.getLeft().getLeft().getSubtreeSize()+firstParent.getLeft().getRight().getSubtreeSize()+1);
-				updateHeightIfNeeded_Deletion(firstParent.getLeft());
-				((AVLNode) firstParent.getLeft()).setSum(((AVLNode) firstParent.getLeft().getLeft()).getSum()+((AVLNode) firstParent.getLeft().getRight()).getSum()+firstParent.getLeft().getKey());
-			}
-			if(firstParent.getRight().isRealNode()) {
-				firstParent.getRight().setSubtreeSize(firstParent.getRight().getLeft().getSubtreeSize()+firstParent.getRight().getRight().getSubtreeSize()+1);
-				updateHeightIfNeeded_Deletion(firstParent.getRight());
-				((AVLNode) firstParent.getRight()).setSum(((AVLNode) firstParent.getRight().getLeft()).getSum()+((AVLNode) firstParent.getRight().getRight()).getSum()+firstParent.getRight().getKey());
-			}
-		}
 
-		/* Update the rest of the tree path(to root) size, height and sum */
-		while(parent!=null) {
-			parent.setSubtreeSize(parent.getLeft().getSubtreeSize()+parent.getRight().getSubtreeSize()+1);
-			updateHeightIfNeeded_Deletion(parent);
-			((AVLNode) parent).setSum(((AVLNode) parent.getLeft()).getSum()+((AVLNode) parent.getRight()).getSum()+parent.getKey());
+	/**
+	 * public static AVLTree union(AVLTree first, AVLTree second)
+	 *
+	 * Returns a tree with the items of both trees. For a key in both trees, the item of first is kept.
+	 * The nodes are moved into the returned tree, and both trees become empty.
+	 * Large trees are processed by parallel fork-join tasks.
+	 *
+	 * precondition: first != second and both trees keep the same aggregates
+	 * (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(m log(n/m + 1)) work and O(log(n)^2) span, for trees of sizes m <= n
+	 */
+	public static AVLTree union(AVLTree first, AVLTree second)
+	{
+		return setOperation(UNION, first, second);
+	}
 
-			parent = parent.getParent();
-		}
+	/**
+	 * public static AVLTree intersection(AVLTree first, AVLTree second)
+	 *
+	 * Returns a tree with the items of first whose keys are also in second.
+	 * The nodes are moved into the returned tree, and both trees become empty.
+	 * Large trees are processed by parallel fork-join tasks.
+	 *
+	 * precondition: first != second and both trees keep the same aggregates
+	 * (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(m log(n/m + 1)) work and O(log(n)^2) span, for trees of sizes m <= n
+	 */
+	public static AVLTree intersection(AVLTree first, AVLTree second)
+	{
+		return setOperation(INTERSECTION, first, second);
+	}
 
-		return numOfRot;
+	/**
+	 * public static AVLTree difference(AVLTree first, AVLTree second)
+	 *
+	 * Returns a tree with the items of first whose keys are not in second.
+	 * The nodes are moved into the returned tree, and both trees become empty.
+	 * Large trees are processed by parallel fork-join tasks.
+	 *
+	 * precondition: first != second and both trees keep the same aggregates
+	 * (otherwise IllegalArgumentException is thrown)
+	 *
+	 * Complexity: O(m log(n/m + 1)) work and O(log(n)^2) span, for trees of sizes m <= n
+	 */
+	public static AVLTree difference(AVLTree first, AVLTree second)
+	{
+		return setOperation(DIFFERENCE, first, second);
 	}
-	/*/*************************************************/
 
 
-	/*/*************************************************
-	 * 				Methods Used By insert 			   *
-	 ***************************************************/
 	/**
-	 * 
-	 * @param root - The root of the subtree.
-	 * @param newNode - The new node to be inserted to the tree.
-	 * @return True - inserted successfully. False - error.
-	 * 
+	 * public int floorKey(int k)
+	 *
+	 * Returns the largest key in the tree which is less or equal to k, or -1 if there is none.
+	 *
 	 * Complexity: O(h)=O(log(n))
 	 */
-	private static boolean treeInsert(IAVLNode root, IAVLNode newNode) {
-		IAVLNode y = treePosition(root, newNode.getKey());
+	public int floorKey(int k)
+	{
+		IAVLNode node = floorNode(k);
+		return (node == null) ? -1 : node.getKey();
+	}
 
-		if(newNode.getKey()==y.getKey())  //if y.key==newNode.key then the key is already in the tree -> "error"
-			return false;
+	/**
+	 * public int ceilingKey(int k)
+	 *
+	 * Returns the smallest key in the tree which is greater or equal to k, or -1 if there is none.
+	 *
+	 * Complexity: O(h)=O(log(n))
+	 */
+	public int ceilingKey(int k)
+	{
+		IAVLNode node = ceilingNode(k);
+		return (node == null) ? -1 : node.getKey();
+	}
 
-		newNode.setParent(y);
-		if(newNode.getKey()<y.getKey())
-			y.setLeft(newNode);
-		else
-			y.setRight(newNode);
+	/**
+	 * public int lowerKey(int k)
+	 *
+	 * Returns the largest key in the tree which is strictly less than k, or -1 if there is none.
+	 *
+	 * Complexity: O(h)=O(log(n))
+	 */
+	public int lowerKey(int k)
+	{
+		if(k == Integer.MIN_VALUE)
+			return -1;
+		return floorKey(k - 1);
+	}
 
-		return true;
+	/**
+	 * public int higherKey(int k)
+	 *
+	 * Returns the smallest key in the tree which is strictly greater than k, or -1 if there is none.
+	 *
+	 * Complexity: O(h)=O(log(n))
+	 */
+	public int higherKey(int k)
+	{
+		if(k == Integer.MAX_VALUE)
+			return -1;
+		return ceilingKey(k + 1);
 	}
 
 	/**
-	 * @return True if the height of Parent has changed, False otherwise.
-	 * 
-	 * precondition: node is in path of the new node inserted.
-	 * precondition: ( Parent.getLeft().getKey() == node.getKey() ) || ( Parent.getRight().getKey() == node.getKey() ).
-	 * 
+	 * public Cursor cursor()
+	 *
+	 * Returns a cursor over the tree, not positioned on any item.
+	 * A cursor can be reused for any number of seeks and scans, none of which allocate.
+	 *
 	 * Complexity: O(1)
 	 */
-	private static boolean updateHeightIfNeeded(IAVLNode node, IAVLNode Parent) {
-
-		if(Parent.getHeight()>node.getHeight()) //No need to update, other child is higher or equal.
-			return false;
-		if(Parent.getHeight()==node.getHeight()) { //Update parent height
-			Parent.setHeight(node.getHeight()+1);
-			return true;
-		}
-		return false;
+	public Cursor cursor()
+	{
+		return new Cursor(this);
 	}
-	/*/*************************************************/
 
 
-	/*/*************************************************
-	 * 				Methods Used By delete 			   *
-	 ***************************************************/
 	/**
-	 * @param node - The node to be deleted
-	 * 
-	 * precondition: node is a leaf.
-	 * precondition: node has a parent.
-	 * 
-	 * Deletes node from the tree
-	 * 
-	 * Complexity: O(1)
+	 * public java.util.stream.IntStream keys()
+	 *
+	 * Returns a sorted stream of the keys in the tree, without copying them.
+	 * The stream splits for parallel use at rank midpoints, with exact sizes from the subtree sizes.
+	 * The tree must not be modified while the stream is used.
+	 *
+	 * Complexity: O(1), and O(log(n) + m) to traverse m keys
 	 */
-	private void justDelete(IAVLNode node) {
-		IAVLNode parent = node.getParent();
-		if(parent.getLeft().getKey() == node.getKey())
-			node.getParent().setLeft(new AVLNode());
-		else if(parent.getRight().getKey() == node.getKey())
-			node.getParent().setRight(new AVLNode());
-		else
-			throw new RuntimeException("Not the node's parent. key:" + node.getKey());
+	public java.util.stream.IntStream keys()
+	{
+		return java.util.stream.StreamSupport.intStream(new KeySpliterator(this, 0, size()), false);
+	}
 
+	/**
+	 * public java.util.stream.Stream<java.util.Map.Entry<Integer, String>> entries()
+	 *
+	 * Returns a stream of the items in the tree as immutable entries, sorted by key, without copying the tree.
+	 * The stream splits for parallel use at rank midpoints, with exact sizes from the subtree sizes.
+	 * The tree must not be modified while the stream is used.
+	 *
+	 * Complexity: O(1), and O(log(n) + m) to traverse m items
+	 */
+	public java.util.stream.Stream<java.util.Map.Entry<Integer, String>> entries()
+	{
+		return java.util.stream.StreamSupport.stream(new EntrySpliterator(this, 0, size()), false);
 	}
 
 	/**
-	 * @param node - The node to be deleted
+	 * public FrozenAVLTree freeze()
+	 *
+	 * Returns an immutable, array-packed copy of the tree for read-only workloads, see FrozenAVLTree.
+	 * The tree itself is not changed and can still be updated, later updates are not seen by the copy.
+	 *
+	 * Complexity: O(n)
+	 */
+	public FrozenAVLTree freeze()
+	{
+		return new FrozenAVLTree(keysToArray(), infoToArray());
+	}
+
+
+	/*/*************************************************
+	 * 					Rotations Methods			   *
+	 ***************************************************/
+
+	/*
+	 * Additional values such as size, height and sum are updated only in the following function.
+	 */
+
+	/**
 	 * 
-	 * precondition: node has one child.
-	 * precondition: node has a parent.
+	 * @param node is the top node of the two that will get rotated
+	 * precondition: node has a right child
 	 * 
-	 * Deletes node from the tree.
+	 * performs a left rotation and update additional node values.
 	 * 
 	 * Complexity: O(1)
 	 */
-	private void bypassDelete(IAVLNode node) {
+	private void rotateLeft(IAVLNode node) {
 		IAVLNode parent = node.getParent();
-		if(parent == null) { //Delete root with one children
-			if(node.getLeft().getKey()!=-1)
-				rootNode = node.getLeft();
-			else 
-				rootNode = node.getRight();
+		IAVLNode right = node.getRight(); //x
+		IAVLNode left = right.getLeft(); //B
+
+		/* Update reference of the nodes children and parent */
+		right.setLeft(node);
+		right.setParent(parent);
+		node.setParent(right);
+		node.setRight(left);
+
+		left.setParent(node);
+
+		if(parent==null) { //The node is root
+			rootNode = right;
 			rootNode.setParent(null);
 		}
-		else if(parent.getLeft().getKey() == node.getKey()) {
-			if(node.getLeft().isRealNode() && !node.getRight().isRealNode()) {
-				parent.setLeft(node.getLeft());
-				node.getLeft().setParent(parent);
-			}
-			else if(!node.getLeft().isRealNode() && node.getRight().isRealNode()){
-				parent.setLeft(node.getRight());
-				node.getRight().setParent(parent);
-			}
-		}
-		else if(parent.getRight().getKey() == node.getKey()) {
-			if(node.getLeft().isRealNode() && !node.getRight().isRealNode()) {
-				parent.setRight(node.getLeft());
-				node.getLeft().setParent(parent);
-			}
-			else if(!node.getLeft().isRealNode() && node.getRight().isRealNode()){
-				parent.setRight(node.getRight());
-				node.getRight().setParent(parent);
-			}
+		else {
+			if(parent.getLeft().getKey() == node.getKey()) //node is the left child
+				parent.setLeft(right);
+			else if(parent.getRight().getKey() == node.getKey()) //node is the right child
+				parent.setRight(right);
+			else //node has no parent but is not the root - error
+				throw new RuntimeException("Has no parent. key:" + node.getKey());
 		}
-		else
-			throw new RuntimeException("Not the node's parent. key:" + node.getKey());
 
+		/* Update size, height and sum (and aggregates) of the two rotated nodes */
+		node.setSubtreeSize(1+node.getLeft().getSubtreeSize()+node.getRight().getSubtreeSize());
+		node.setHeight(1+Math.max(node.getLeft().getHeight(), node.getRight().getHeight()));
+
+		right.setSubtreeSize(1+right.getLeft().getSubtreeSize()+right.getRight().getSubtreeSize());
+		right.setHeight(1+Math.max(right.getLeft().getHeight(), right.getRight().getHeight()));
+
+		updateSum(node);
+		updateSum(right);
 	}
 
 	/**
-	 * @param node - the node to be deleted
-	 * @return the parent of the deleted node (the one that was actually deleted)
 	 * 
-	 * precondition: node does not have two children then it must have a parent.
+	 * @param node is the top node of the two that will get rotated
+	 * precondition: node has a left child
 	 * 
-	 * Deletes node from the tree.
+	 * performs a right rotation and update additional node values.
 	 * 
-	 * Complexity: O(h)=O(log(n))
+	 * Complexity: O(1)
 	 */
-	private IAVLNode bstDelete(IAVLNode node) {
-		if(isLeaf(node)) {
-			justDelete(node);
+	private void rotateRight(IAVLNode node) {
+		IAVLNode parent = node.getParent();
+		IAVLNode left = node.getLeft(); //y
+		IAVLNode right = left.getRight(); //B
+
+		/* Update reference of the nodes children and parent */
+		left.setRight(node);
+		left.setParent(parent);
+		node.setParent(left);
+		node.setLeft(right);
+
+		right.setParent(node);
+
+		if(parent==null) { //node is root
+			rootNode = left;
+			rootNode.setParent(null);
+		}
+		else {
+			if(parent.getLeft().getKey() == node.getKey()) //node is the left child
+				parent.setLeft(left);
+			else if(parent.getRight().getKey() == node.getKey()) //node is the right child
+				parent.setRight(left);
+			else //node has no parent but is not the root - error
+				throw new RuntimeException("Has no parent. key:" + node.getKey());
+		}
+
+		/* Update size, height and sum (and aggregates) of the two rotated nodes */
+		node.setSubtreeSize(1+node.getLeft().getSubtreeSize()+node.getRight().getSubtreeSize());
+		node.setHeight(1+Math.max(node.getLeft().getHeight(), node.getRight().getHeight()));
+
+		left.setSubtreeSize(1+left.getLeft().getSubtreeSize()+left.getRight().getSubtreeSize());
+		left.setHeight(1+Math.max(left.getLeft().getHeight(), left.getRight().getHeight()));
+
+		updateSum(node);
+		updateSum(left);
+	}
+
+
+	/**
+	 * 
+	 * @param newNode - A node which was just inserted to the tree.
+	 * @return Number of rotations.
+	 * 
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private int rotateAndUpdateAfterInsert(IAVLNode newNode) {
+		/* Update until a rotation is needed and then rotate (only if needed) */
+		int numOfRot = 0;
+
+		IAVLNode newNodeParent = newNode.getParent();
+
+		while(newNodeParent!=null) {
+			newNodeParent.setSubtreeSize(newNodeParent.getSubtreeSize()+1);
+			boolean hasHeightUpdated = updateHeightIfNeeded(newNode, newNodeParent);
+			updateSum(newNodeParent);
+
+			int parentBF = BF(newNodeParent);
+			if(parentBF<2 && parentBF>-2) {//|BF|<2
+				if(hasHeightUpdated) { //parent height has changed
+					newNode = newNodeParent;
+					newNodeParent = newNode.getParent();
+				}
+				else { //parent height is the same
+					numOfRot= 0; //No rotation were made;
+					break;
+				}
+			}
+			else { //|BF|=2
+
+				if(parentBF==2) {
+					if(BF(newNodeParent.getLeft())==1) { //LL
+						rotateRight(newNodeParent);
+						numOfRot = 1;
+						break;
+					}
+					else if(BF(newNodeParent.getLeft())==-1) { //LR
+						rotateLeft(newNode);
+						rotateRight(newNodeParent);
+						numOfRot = 2;
+						break;
+					}
+				}
+				else if(parentBF==-2) {
+					if(BF(newNodeParent.getRight())==-1) { //RR
+						rotateLeft(newNodeParent);
+						numOfRot = 1;
+						break;
+					}
+					else if(BF(newNodeParent.getRight())==1) { //RL
+						rotateRight(newNode);
+						rotateLeft(newNodeParent);
+						numOfRot = 2;
+						break;
+					}
+				}
+			}
+		}
+
+		/* Update the rest of the tree path(to root) size, height and sum */
+		if(newNodeParent!=null && newNodeParent.getParent()!=null) {
+			newNode = newNodeParent;
+			newNodeParent = newNode.getParent();
+
+			while(newNodeParent!=null) {
+				newNodeParent.setSubtreeSize(newNodeParent.getLeft().getSubtreeSize()+newNodeParent.getRight().getSubtreeSize()+1);
+				updateHeightIfNeeded(newNode, newNodeParent);
+				updateSum(newNodeParent);
+
+				newNode = newNodeParent;
+				newNodeParent = newNode.getParent();
+			}
+		}
+
+		return numOfRot;
+	}
+
+	/**
+	 * 
+	 * @param parent - The parent of the node which was just deleted.
+	 * @return Number of rotations.
+	 * 
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private int rotateAndUpdateAfterDelete(IAVLNode parent) {
+		IAVLNode firstParent = parent;
+
+		/* Update and rotate as needed */
+		int numOfRot = 0;
+
+		if(parent!=null) {
+			if(parent.getLeft().isRealNode()) {
+				parent.getLeft().setSubtreeSize(parent.getLeft().getLeft().getSubtreeSize()+parent.getLeft().getRight().getSubtreeSize()+1);
+				updateHeightIfNeeded_Deletion(parent.getLeft());
+				updateSum(parent.getLeft());
+			}
+			if(parent.getRight().isRealNode()) {
+				parent.getRight().setSubtreeSize(parent.getRight().getLeft().getSubtreeSize()+parent.getRight().getRight().getSubtreeSize()+1);
+				updateHeightIfNeeded_Deletion(parent.getRight());
+				updateSum(parent.getRight());
+			}
+		}
+		else
+			return 0;
+
+		if(BF(parent)<2 && BF(parent)>-2) {
+			parent.setSubtreeSize(parent.getLeft().getSubtreeSize()+parent.getRight().getSubtreeSize()+1);
+			updateHeightIfNeeded_Deletion(parent);
+			updateSum(parent);
+
+			parent = parent.getParent();
+		}
+
+		while(parent!=null) {
+			parent.setSubtreeSize(parent.getLeft().getSubtreeSize()+parent.getRight().getSubtreeSize()+1);
+			boolean hasHeightUpdated = updateHeightIfNeeded_Deletion(parent);
+			updateSum(parent);
+
+			int parentBF = BF(parent);
+
+			if(parentBF<2 && parentBF>-2) {//|BF|<2
+				if(hasHeightUpdated) { //parent height has changed
+					parent = parent.getParent();
+				}
+				else { //parent height is the same
+					//No rotation were made;
+					break;
+				}
+			}
+			else { //|BF|=2
+				if(parentBF==2) {
+					if(BF(parent.getLeft())==1 || BF(parent.getLeft())==0) { //LL
+						rotateRight(parent);
+						numOfRot += 1;
+					}
+					else if(BF(parent.getLeft())==-1) { //LR
+						rotateLeft(parent.getLeft());
+						rotateRight(parent);
+						numOfRot += 2;
+					}
+				}
+				else if(parentBF==-2) {
+					if(BF(parent.getRight())==-1  || (BF(parent.getRight())==0)) { //RR
+						rotateLeft(parent);
+						numOfRot += 1;
+					}
+					else if(BF(parent.getRight())==1) { //RL
+						rotateRight(parent.getRight());
+						rotateLeft(parent);
+						numOfRot += 2;
+					}
+				}
+
+				if(parent.getParent()!=null)
+					parent = parent.getParent().getParent();
+				else
+					break;
+			}
+		}
+
+		/* If no rotation was needed then update the children of the parent of originally deleted node */
+		if(firstParent!=null && numOfRot==0) {
+			if(firstParent.getLeft().isRealNode()) {
+				firstParent.getLeft().setSubtreeSize(firstParent.getLeft().getLeft().getSubtreeSize()+firstParent.getLeft().getRight().getSubtreeSize()+1);
+				updateHeightIfNeeded_Deletion(firstParent.getLeft());
+				updateSum(firstParent.getLeft());
+			}
+			if(firstParent.getRight().isRealNode()) {
+				firstParent.getRight().setSubtreeSize(firstParent.getRight().getLeft().getSubtreeSize()+firstParent.getRight().getRight().getSubtreeSize()+1);
+				updateHeightIfNeeded_Deletion(firstParent.getRight());
+				updateSum(firstParent.getRight());
+			}
+		}
+
+		/* Update the rest of the tree path(to root) size, height and sum */
+		while(parent!=null) {
+			parent.setSubtreeSize(parent.getLeft().getSubtreeSize()+parent.getRight().getSubtreeSize()+1);
+			updateHeightIfNeeded_Deletion(parent);
+			updateSum(parent);
+
+			parent = parent.getParent();
+		}
+
+		return numOfRot;
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 				Methods Used By insert 			   *
+	 ***************************************************/
+	/**
+	 * 
+	 * @param root - The root of the subtree.
+	 * @param newNode - The new node to be inserted to the tree.
+	 * @param metrics - The tree's metrics, which get the depth of the descent, or null.
+	 * @return True - inserted successfully. False - error.
+	 * 
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private static boolean treeInsert(IAVLNode root, IAVLNode newNode, TreeMetrics metrics) {
+		IAVLNode y = treePosition(root, newNode.getKey(), metrics);
+
+		if(newNode.getKey()==y.getKey())  //if y.key==newNode.key then the key is already in the tree -> "error"
+			return false;
+
+		newNode.setParent(y);
+		if(newNode.getKey()<y.getKey())
+			y.setLeft(newNode);
+		else
+			y.setRight(newNode);
+
+		return true;
+	}
+
+	/**
+	 * @return True if the height of Parent has changed, False otherwise.
+	 * 
+	 * precondition: node is in path of the new node inserted.
+	 * precondition: ( Parent.getLeft().getKey() == node.getKey() ) || ( Parent.getRight().getKey() == node.getKey() ).
+	 * 
+	 * Complexity: O(1)
+	 */
+	private static boolean updateHeightIfNeeded(IAVLNode node, IAVLNode Parent) {
+
+		if(Parent.getHeight()>node.getHeight()) //No need to update, other child is higher or equal.
+			return false;
+		if(Parent.getHeight()==node.getHeight()) { //Update parent height
+			Parent.setHeight(node.getHeight()+1);
+			return true;
+		}
+		return false;
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 				Methods Used By delete 			   *
+	 ***************************************************/
+	/**
+	 * @param node - The node to be deleted
+	 * 
+	 * precondition: node is a leaf.
+	 * precondition: node has a parent.
+	 * 
+	 * Deletes node from the tree
+	 * 
+	 * Complexity: O(1)
+	 */
+	private void justDelete(IAVLNode node) {
+		IAVLNode parent = node.getParent();
+		if(parent.getLeft().getKey() == node.getKey())
+			node.getParent().setLeft(VIRTUAL_NODE);
+		else if(parent.getRight().getKey() == node.getKey())
+			node.getParent().setRight(VIRTUAL_NODE);
+		else
+			throw new RuntimeException("Not the node's parent. key:" + node.getKey());
+
+	}
+
+	/**
+	 * @param node - The node to be deleted
+	 * 
+	 * precondition: node has one child.
+	 * precondition: node has a parent.
+	 * 
+	 * Deletes node from the tree.
+	 * 
+	 * Complexity: O(1)
+	 */
+	private void bypassDelete(IAVLNode node) {
+		IAVLNode parent = node.getParent();
+		if(parent == null) { //Delete root with one children
+			if(node.getLeft().getKey()!=-1)
+				rootNode = node.getLeft();
+			else 
+				rootNode = node.getRight();
+			rootNode.setParent(null);
+		}
+		else if(parent.getLeft().getKey() == node.getKey()) {
+			if(node.getLeft().isRealNode() && !node.getRight().isRealNode()) {
+				parent.setLeft(node.getLeft());
+				node.getLeft().setParent(parent);
+			}
+			else if(!node.getLeft().isRealNode() && node.getRight().isRealNode()){
+				parent.setLeft(node.getRight());
+				node.getRight().setParent(parent);
+			}
+		}
+		else if(parent.getRight().getKey() == node.getKey()) {
+			if(node.getLeft().isRealNode() && !node.getRight().isRealNode()) {
+				parent.setRight(node.getLeft());
+				node.getLeft().setParent(parent);
+			}
+			else if(!node.getLeft().isRealNode() && node.getRight().isRealNode()){
+				parent.setRight(node.getRight());
+				node.getRight().setParent(parent);
+			}
+		}
+		else
+			throw new RuntimeException("Not the node's parent. key:" + node.getKey());
+
+	}
+
+	/**
+	 * @param node - the node to be deleted
+	 * @return the parent of the deleted node (the one that was actually deleted)
+	 * 
+	 * precondition: node does not have two children then it must have a parent.
+	 * 
+	 * Deletes node from the tree.
+	 * 
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private IAVLNode bstDelete(IAVLNode node) {
+		if(isLeaf(node)) {
+			justDelete(node);
+			return node.getParent();
+		}
+		else if(isOneChild(node)) {
+			bypassDelete(node);
 			return node.getParent();
 		}
-		else if(isOneChild(node)) {
-			bypassDelete(node);
-			return node.getParent();
+		else { //Has two children
+			IAVLNode suc =  successor(node);  //successor of node
+			IAVLNode sucParent;
+			if(node.getRight().getKey()==suc.getKey())
+				sucParent = suc;
+			else
+				sucParent = suc.getParent();
+
+			if(sucParent!=null && sucParent.getKey()==node.getKey())
+				sucParent = sucParent.getParent();
+			/*
+			 * suc is from the subtree of the right children of node (node has two child).
+			 * Therefore suc has no left children.
+			 * Remove suc and Replace node with suc;
+			 */
+			if(isLeaf(suc))
+				justDelete(suc);
+			else if(isOneChild(suc))
+				bypassDelete(suc);
+
+			if(node.getParent()==null) {
+				rootNode = suc;
+				rootNode.setParent(null);
+			}
+			else {
+				IAVLNode parent = node.getParent();
+				if(parent.getLeft().getKey() == node.getKey()) //node is left child
+					parent.setLeft(suc);
+				else if(parent.getRight().getKey() == node.getKey())
+					parent.setRight(suc);
+				suc.setParent(parent);
+			}
+
+
+			suc.setLeft(node.getLeft());
+			suc.setRight(node.getRight());
+			suc.getLeft().setParent(suc);
+			suc.getRight().setParent(suc);
+
+
+			return sucParent;
+		}
+	}
+
+	/**
+	 * @param parent - A node on the path from the node actually deleted.
+	 * @return True if the height of parent has changed, False otherwise.
+	 * 
+	 * Complexity: O(1)
+	 */
+	private static boolean updateHeightIfNeeded_Deletion(IAVLNode parent) {
+
+		if(parent.getHeight()==parent.getLeft().getHeight()+1 && parent.getHeight()==parent.getRight().getHeight()+1) //Equal heights, No need to update.
+			return false;
+		else if(parent.getLeft().getHeight()>parent.getRight().getHeight() && parent.getHeight()==parent.getLeft().getHeight()+1) { //No need to update.
+			return false;
+		}
+		else if(parent.getRight().getHeight()>parent.getLeft().getHeight() && parent.getHeight()==parent.getRight().getHeight()+1) { //No need to update.
+			return false;
+		}
+		else {
+			parent.setHeight(1+Math.max(parent.getLeft().getHeight(), parent.getRight().getHeight()));
+			return true;
+		}
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 				WAVL Rebalancing Methods 		   *
+	 ***************************************************/
+	/*
+	 * Under the WAVL policy the height field of a node holds its rank (-1 for the virtual node).
+	 * The rank difference of a child is its parent's rank minus its own, and must be 1 or 2,
+	 * and a leaf must have rank 0. Rotations recompute heights, so the methods below set
+	 * the ranks of the rotated nodes again right after.
+	 */
+	/**
+	 * @param newNode - A leaf which was just inserted to the tree.
+	 * @return Number of rotations (at most 2).
+	 *
+	 * Promotes the ancestors of newNode while one of them has a 0-child whose sibling is a 1-child,
+	 * and rotates once (or twice) if the 0-child's sibling is a 2-child.
+	 *
+	 * Complexity: O(h)=O(log(n)) for the sizes and sums, O(1) amortized rank changes
+	 */
+	private int rebalanceAfterInsertWAVL(IAVLNode newNode) {
+		updateSizeAndSumToRoot(newNode.getParent());
+
+		IAVLNode node = newNode;
+		IAVLNode parent = node.getParent();
+		while(parent != null && parent.getHeight() == node.getHeight()) { //node is a 0-child
+			int rank = parent.getHeight();
+			boolean isLeft = (parent.getLeft() == node);
+			IAVLNode sibling = isLeft ? parent.getRight() : parent.getLeft();
+			if(rank - sibling.getHeight() == 1) { //Promote and continue up
+				parent.setHeight(rank + 1);
+				node = parent;
+				parent = node.getParent();
+				continue;
+			}
+
+			IAVLNode inner = isLeft ? node.getRight() : node.getLeft();
+			if(node.getHeight() - inner.getHeight() == 2) { //LL or RR
+				if(isLeft)
+					rotateRight(parent);
+				else
+					rotateLeft(parent);
+				node.setHeight(rank);
+				parent.setHeight(rank - 1);
+				return 1;
+			}
+			/* LR or RL */
+			if(isLeft) {
+				rotateLeft(node);
+				rotateRight(parent);
+			}
+			else {
+				rotateRight(node);
+				rotateLeft(parent);
+			}
+			inner.setHeight(rank);
+			node.setHeight(rank - 1);
+			parent.setHeight(rank - 1);
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param parent - The parent of the node which was just deleted, or null if it was the root.
+	 * @return Number of rotations (at most 2).
+	 *
+	 * Demotes a leaf left with rank 1, then climbs while a node has a 3-child: it is demoted
+	 * (together with its sibling child if both of the sibling's children are 2-children),
+	 * or else rotated once (or twice), which ends the rebalancing.
+	 *
+	 * Complexity: O(h)=O(log(n)) for the sizes and sums, O(1) amortized rank changes
+	 */
+	private int rebalanceAfterDeleteWAVL(IAVLNode parent) {
+		if(parent == null)
+			return 0;
+		updateSizeAndSumToRoot(parent);
+
+		if(isLeaf(parent) && parent.getHeight() == 1) { //A 2,2 leaf
+			parent.setHeight(0);
+			parent = parent.getParent();
+		}
+		while(parent != null) {
+			int rank = parent.getHeight();
+			boolean isLeft; //Whether the 3-child is the left child
+			if(rank - parent.getLeft().getHeight() == 3)
+				isLeft = true;
+			else if(rank - parent.getRight().getHeight() == 3)
+				isLeft = false;
+			else
+				break;
+
+			IAVLNode sibling = isLeft ? parent.getRight() : parent.getLeft();
+			if(rank - sibling.getHeight() == 2) { //Demote and continue up
+				parent.setHeight(rank - 1);
+				parent = parent.getParent();
+				continue;
+			}
+			int siblingRank = sibling.getHeight();
+			IAVLNode outer = isLeft ? sibling.getRight() : sibling.getLeft();
+			IAVLNode inner = isLeft ? sibling.getLeft() : sibling.getRight();
+			if(siblingRank - outer.getHeight() == 2 && siblingRank - inner.getHeight() == 2) { //Demote both and continue up
+				sibling.setHeight(siblingRank - 1);
+				parent.setHeight(rank - 1);
+				parent = parent.getParent();
+				continue;
+			}
+
+			if(siblingRank - outer.getHeight() == 1) { //RR or LL
+				if(isLeft)
+					rotateLeft(parent);
+				else
+					rotateRight(parent);
+				sibling.setHeight(rank);
+				parent.setHeight(isLeaf(parent) ? rank - 2 : rank - 1); //A leaf must not be left with rank 1
+				return 1;
+			}
+			/* RL or LR */
+			if(isLeft) {
+				rotateRight(sibling);
+				rotateLeft(parent);
+			}
+			else {
+				rotateLeft(sibling);
+				rotateRight(parent);
+			}
+			inner.setHeight(rank);
+			sibling.setHeight(siblingRank - 1);
+			parent.setHeight(rank - 2);
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * Recomputes size and sum (and aggregates) from node up to the root.
+	 *
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private void updateSizeAndSumToRoot(IAVLNode node) {
+		for(; node != null; node = node.getParent()) {
+			node.setSubtreeSize(1+node.getLeft().getSubtreeSize()+node.getRight().getSubtreeSize());
+			updateSum(node);
+		}
+	}
+
+	/**
+	 * Re-links the nodes of a tree under the WAVL policy into a perfectly balanced tree,
+	 * whose ranks are then AVL heights, so it can switch to the AVL policy.
+	 * Trees under the AVL policy are left as they are.
+	 *
+	 * Complexity: O(n) under WAVL, O(1) under AVL
+	 */
+	private void rebuildBalanced() {
+		if(this.rebalancePolicy == RebalancePolicy.AVL || empty())
+			return;
+		IAVLNode[] nodes = new IAVLNode[size()];
+		int index = 0;
+		for(IAVLNode node = this.minNode; node != null; node = successor(node))
+			nodes[index++] = node;
+		setRootAfterJoin(relinkSubtree(nodes, 0, nodes.length - 1));
+	}
+
+	/**
+	 * @return The root of a perfectly balanced subtree of nodes[lo..hi], or the virtual node if lo > hi.
+	 *
+	 * Complexity: O(hi-lo)
+	 */
+	private IAVLNode relinkSubtree(IAVLNode[] nodes, int lo, int hi) {
+		if(lo > hi)
+			return VIRTUAL_NODE;
+		int mid = (lo + hi) >>> 1;
+		return link(nodes[mid], relinkSubtree(nodes, lo, mid - 1), relinkSubtree(nodes, mid + 1, hi));
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 					General Methods 			   *
+	 ***************************************************/
+
+	/**
+	 * 
+	 * @param node - Is the root node of the sub tree.
+	 * @param k - the key which his position is wanted.
+	 * @param metrics - The tree's metrics, which get the number of nodes visited, or null.
+	 * 
+	 * precondition: node.isRealNode() == true
+	 * 
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private static IAVLNode treePosition(IAVLNode node, int k, TreeMetrics metrics) {
+		IAVLNode y = null; //Supposed to be replaced by node anyway.
+		int depth = 0;
+		while(node.isRealNode()) {
+			y = node;
+			depth++;
+			if(k == node.getKey())
+				break;
+			else if(k < node.getKey())
+				node = node.getLeft();
+			else
+				node = node.getRight();
+		}
+		if(metrics != null)
+			metrics.descentDepth = depth;
+		return y;
+	}
+
+	/**
+	 * Balance Factor
+	 * @return the node's balance factor
+	 * 
+	 * Complexity: O(1)
+	 */
+	private static int BF(IAVLNode node) {
+		return node.getLeft().getHeight() - node.getRight().getHeight();
+	}
+
+	/**
+	 * @return Whether the node is a leaf or not
+	 */
+	private static boolean isLeaf(IAVLNode node) {
+		return ( !node.getLeft().isRealNode() && !node.getRight().isRealNode() );
+	}
+
+	/**
+	 * @return Whether the node has one child or not
+	 */
+	private static boolean isOneChild(IAVLNode node) {
+		return ( node.getLeft().isRealNode() && !node.getRight().isRealNode() ) || ( !node.getLeft().isRealNode() && node.getRight().isRealNode() );
+	}
+
+	/**
+	 * @param node - The root of the sub tree.
+	 * @return The node minimum node in the sub tree.
+	 */
+	private static IAVLNode minInSubtree(IAVLNode node) {
+		while(node.getLeft().isRealNode()) {
+			node = node.getLeft();
+		}
+		return node;
+	}
+
+	/**
+	 * @param node - A node in the tree.
+	 * @return The successor of node. Returns null if node is the maximum node.
+	 */
+	private static IAVLNode successor(IAVLNode node) {
+		if(node.getRight().isRealNode()) {
+			return minInSubtree(node.getRight());
+		}
+
+		IAVLNode parent = node.getParent();
+		while(parent!=null && node.getKey() == parent.getRight().getKey()) {
+			node = parent;
+			parent = node.getParent();
+		}
+		return parent;
+	}
+
+	/**
+	 * @param node - The root of the sub tree.
+	 * @return The node maximum node in the sub tree.
+	 */
+	private static IAVLNode maxInSubtree(IAVLNode node) {
+		while(node.getRight().isRealNode()) {
+			node = node.getRight();
+		}
+		return node;
+	}
+
+	/**
+	 * @param node - A node in the tree.
+	 * @return The predecessor of node. Returns null if node is the minimum node.
+	 */
+	private static IAVLNode predecessor(IAVLNode node) {
+		if(node.getLeft().isRealNode()) {
+			return maxInSubtree(node.getLeft());
+		}
+
+		IAVLNode parent = node.getParent();
+		while(parent!=null && node.getKey() == parent.getLeft().getKey()) {
+			node = parent;
+			parent = node.getParent();
+		}
+		return parent;
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 			Method enveloped by keyToArray 		   *
+	 ***************************************************/
+	/**
+	 * @param first - The minimum node of the tree, or null if the tree is empty.
+	 * @param keysArr - The array to fill.
+	 * @param keysArrIndex - The index in keysArr of the first key.
+	 * @return The index in keysArr after the last key.
+	 * 
+	 * When inOrder is finished the array keysArr will contain a sorted list of the keys that are in the tree.
+	 * The nodes are visited with successor, so every edge is walked twice and no virtual node is visited.
+	 */
+	private static int inOrderKeys(IAVLNode first, int[] keysArr, int keysArrIndex) {
+		for(IAVLNode node = first; node != null; node = successor(node)) {
+			keysArr[keysArrIndex] = node.getKey();
+			keysArrIndex++;
+		}
+		return keysArrIndex;
+	}
+	/*/*************************************************/
+	/*/*************************************************
+	 * 			Method enveloped by keyToArray 		   *
+	 ***************************************************/
+	/**
+	 * @param first - The minimum node of the tree, or null if the tree is empty.
+	 * @param infoArr - The array to fill.
+	 * @param infoArrIndex - The index in infoArr of the first info.
+	 * @return The index in infoArr after the last info.
+	 * 
+	 * When inOrder is finished the array infoArr will contain the info in the tree, sorted by the keys.
+	 * The nodes are visited with successor, so every edge is walked twice and no virtual node is visited.
+	 */
+	private static int inOrderInfo(IAVLNode first, String[] infoArr, int infoArrIndex) {
+		for(IAVLNode node = first; node != null; node = successor(node)) {
+			infoArr[infoArrIndex] = node.getValue();
+			infoArrIndex++;
+		}
+		return infoArrIndex;
+	}
+	/*/*************************************************/
+
+	/*/*************************************************
+	 * 				Methods enveloped by select		   *
+	 ***************************************************/
+	/**
+	 * @param i - A rank, 1 <= i <= size().
+	 * @return The node of the i'th smallest key, found from the nearer of minNode and maxNode:
+	 * climb the spine until the subtree is large enough, then descend.
+	 *
+	 * Complexity: O(log(d)), where d = min(i, size()-i+1)
+	 */
+	private IAVLNode selectFromEnds(int i) {
+		int fromEnd = size() - i + 1;
+		int climb = 0;
+		IAVLNode node;
+		if (i <= fromEnd) {
+			node = this.minNode; //The subtree of a left spine node holds ranks 1..size
+			for (; node.getSubtreeSize() < i; climb++)
+				node = node.getParent();
+		}
+		else {
+			node = this.maxNode; //The subtree of a right spine node holds the last size ranks
+			for (; node.getSubtreeSize() < fromEnd; climb++)
+				node = node.getParent();
+			i = node.getSubtreeSize() - fromEnd + 1;
+		}
+		TreeMetrics m = this.metrics;
+		IAVLNode selected = selectNode(node, i, m);
+		if (m != null)
+			m.descentDepth += climb; //The nodes below node on the climb were visited too
+		return selected;
+	}
+
+	/**
+	 * @param root - The root of a subtree.
+	 * @param i - A rank in the subtree, 1 <= i <= root.getSubtreeSize().
+	 * @return The node of the i'th smallest key in the subtree.
+	 *
+	 * Complexity: O(h)
+	 */
+	private static IAVLNode selectNode(IAVLNode root, int i) {
+		return selectNode(root, i, null);
+	}
+
+	/**
+	 * @param metrics - The tree's metrics, which get the number of nodes visited, or null.
+	 * @return selectNode(root, i).
+	 *
+	 * Complexity: O(h)
+	 */
+	private static IAVLNode selectNode(IAVLNode root, int i, TreeMetrics metrics) {
+		int depth = 1;
+		while(true) {
+			int rootI = root.getLeft().getSubtreeSize() + 1;
+			if(i == rootI) {
+				if(metrics != null)
+					metrics.descentDepth = depth;
+				return root;
+			}
+			depth++;
+			if(i < rootI) {
+				root = root.getLeft();
+			}
+			else {
+				i -= rootI;
+				root = root.getRight();
+			}
+		}
+	}
+
+	/**
+	 * @param root - The root of a subtree.
+	 * @param k - A key, not neccessarily in the tree.
+	 * @return The number of keys in the subtree which are less or equal to k.
+	 *
+	 * Complexity: O(h)
+	 */
+	private static int rankInSubtree(IAVLNode root, int k) {
+		int count = 0;
+		while(root.isRealNode()) {
+			if(root.getKey() > k) {
+				root = root.getLeft();
+			}
+			else {
+				count += root.getLeft().getSubtreeSize() + 1;
+				root = root.getRight();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param finger - A node in the tree.
+	 * @param offset - The distance in ranks from finger to the wanted node.
+	 * @return The node whose rank is finger's rank + offset, or null if there is none.
+	 *
+	 * Climbs from finger, keeping offset relative to the current node, until the current
+	 * subtree holds the wanted rank, and then descends.
+	 *
+	 * Complexity: O(log(|offset|)) unless the climb crosses a high ancestor, O(h) in the worst case
+	 */
+	private static IAVLNode moveByRank(IAVLNode finger, int offset) {
+		IAVLNode node = finger;
+		long rel = offset;
+		while(rel < -node.getLeft().getSubtreeSize() || rel > node.getRight().getSubtreeSize()) {
+			IAVLNode parent = node.getParent();
+			if(parent == null)
+				return null; //Out of the tree's ranks
+			if(parent.getLeft() == node)
+				rel -= node.getRight().getSubtreeSize() + 1; //parent follows node's subtree
+			else
+				rel += node.getLeft().getSubtreeSize() + 1; //parent precedes node's subtree
+			node = parent;
+		}
+		return selectNode(node, (int) (node.getLeft().getSubtreeSize() + 1 + rel));
+	}
+
+	/**
+	 * @param finger - A node in the tree.
+	 * @param k - A key, not neccessarily in the tree.
+	 * @return The node with the smallest key greater or equal to k, or null if there is none.
+	 *
+	 * Climbs from finger only until the current subtree must hold the answer (or the answer
+	 * is the parent where the climb stopped), and then descends.
+	 *
+	 * Complexity: O(log(d)) unless the climb crosses a high ancestor, where d is the number of keys
+	 * between finger and k, O(h) in the worst case
+	 */
+	private static IAVLNode ceilingFrom(IAVLNode finger, int k) {
+		IAVLNode node = finger;
+		IAVLNode ceiling = null;
+		if(k > finger.getKey()) {
+			while(node.getParent() != null && node.getParent().getKey() < k)
+				node = node.getParent();
+			ceiling = node.getParent(); //null, or the first ancestor above node's subtree, whose key is >= k
+		}
+		else {
+			while(node.getParent() != null && node.getParent().getKey() >= k)
+				node = node.getParent();
+		}
+		while(node.isRealNode()) {
+			if(node.getKey() == k)
+				return node;
+			if(node.getKey() > k) {
+				ceiling = node;
+				node = node.getLeft();
+			}
+			else {
+				node = node.getRight();
+			}
+		}
+		return ceiling;
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 				Method Used By less 			   *
+	 ***************************************************/
+	/**
+	 * @param i - A number between 1 and size()
+	 * @return the sum of all keys which are less or equal to i.
+	 */
+	private int treeLess(int i) {
+		IAVLNode node = this.getRoot(); //Start from the root.
+		int lessSum = 0; //Initialize the sum of keys which are less or equal to i.
+		int depth = 0;
+
+		/*
+		 * Start a the top and get down towards the supposed location of i.
+		 * Sum the node with keys which are less or equal to i along the way.
+		 */
+		while(node.isRealNode()) { //Stop at the bottom
+			/* If the node's key is larger than i continue left. Otherwise, continue right and sum the smaller/equal keys. */
+			depth++;
+			if(node.getKey()>i) {
+				node = node.getLeft();
+			}
+			else {
+				lessSum += node.getLeft().getSum() + node.getKey();
+				node = node.getRight();
+			}
+		}
+
+		if(this.metrics != null)
+			this.metrics.descentDepth = depth;
+		return lessSum;
+	}
+	/*/*************************************************/
+
+	/*/*************************************************
+	 * 			Methods Used By the search cache 	   *
+	 ***************************************************/
+	/**
+	 * @param length - The cache length, a power of two.
+	 * @return The slot of key k: Fibonacci hashing, with the high bits folded in so nearby keys spread.
+	 */
+	private static int cacheSlot(int k, int length) {
+		int h = k * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (length - 1);
+	}
+
+	/**
+	 * Removes the cache entry of key k, if there is one.
+	 *
+	 * Complexity: O(1)
+	 */
+	private void invalidateCachedKey(int k) {
+		IAVLNode[] cache = this.searchCache;
+		if(cache == null)
+			return;
+		int slot = cacheSlot(k, cache.length);
+		IAVLNode cached = cache[slot];
+		if(cached != null && cached.getKey() == k)
+			cache[slot] = null;
+	}
+
+	/**
+	 * Removes all cache entries.
+	 *
+	 * Complexity: O(capacity)
+	 */
+	private void clearSearchCache() {
+		if(this.searchCache != null)
+			java.util.Arrays.fill(this.searchCache, null);
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 	Methods Used By rangeSum, rangeCount, rangeAggregate *
+	 ***************************************************/
+	/**
+	 * @param i - Any number, including ones outside the int range.
+	 * @return The exact sum of all keys which are less or equal to i.
+	 *
+	 * Complexity: O(h)
+	 */
+	private long prefixSum(long i) {
+		IAVLNode node = this.rootNode;
+		long sum = 0;
+		while(node.isRealNode()) {
+			if(node.getKey() > i) {
+				node = node.getLeft();
+			}
+			else {
+				sum += ((AVLNode) node.getLeft()).getLongSum() + node.getKey();
+				node = node.getRight();
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @param i - Any number, including ones outside the int range.
+	 * @return The number of keys which are less or equal to i.
+	 *
+	 * Complexity: O(h)
+	 */
+	private int prefixCount(long i) {
+		IAVLNode node = this.rootNode;
+		int count = 0;
+		while(node.isRealNode()) {
+			if(node.getKey() > i) {
+				node = node.getLeft();
+			}
+			else {
+				count += node.getLeft().getSubtreeSize() + 1;
+				node = node.getRight();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The index of aggregate in the tree's aggregates, or -1 if the tree does not keep it.
+	 */
+	private int aggregateIndex(Aggregate<?> aggregate) {
+		for(int j = 0; j < this.aggregates.length; j++) {
+			if(this.aggregates[j] == aggregate)
+				return j;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param node - The root of a subtree (real or virtual).
+	 * @param index - The index of aggregate in the tree's aggregates.
+	 * @return The aggregate of the subtree, aggregate.identity() for the virtual node.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <A> A aggregateOf(IAVLNode node, int index, Aggregate<A> aggregate) {
+		if(!node.isRealNode())
+			return aggregate.identity();
+		return (A) ((AggregateNode) node).aggregates[index];
+	}
+	/*/*************************************************/
+
+	/*/*************************************************
+	 * 			Methods Used By fromSorted 			   *
+	 ***************************************************/
+	/* Subtrees with fewer nodes than this are built by the task that reaches them */
+	private static final int PARALLEL_BUILD_THRESHOLD = 1 << 14;
+
+	/**
+	 * @param keys - Strictly increasing natural numbers.
+	 * @param values - The info of every key.
+	 * @param n - The number of items to use, from the start of the arrays.
+	 * @return A tree with the first n items, perfectly balanced.
+	 *
+	 * Complexity: O(n)
+	 */
+	private static AVLTree buildTree(int[] keys, String[] values, int n) {
+		AVLTree tree = new AVLTree();
+		if(n == 0)
+			return tree;
+		if(n < PARALLEL_BUILD_THRESHOLD)
+			tree.rootNode = tree.buildSubtree(keys, values, 0, n - 1, null);
+		else
+			tree.rootNode = java.util.concurrent.ForkJoinPool.commonPool().invoke(new BuildTask(tree, keys, values, 0, n - 1, null));
+		tree.minNode = minInSubtree(tree.rootNode);
+		tree.maxNode = maxInSubtree(tree.rootNode);
+		return tree;
+	}
+
+	/**
+	 * @return The root of a perfectly balanced subtree of the items lo..hi, whose parent is parent.
+	 * Returns the virtual node if lo > hi.
+	 *
+	 * Complexity: O(hi-lo)
+	 */
+	private IAVLNode buildSubtree(int[] keys, String[] values, int lo, int hi, IAVLNode parent) {
+		if(lo > hi)
+			return VIRTUAL_NODE;
+		int mid = (lo + hi) >>> 1;
+		IAVLNode node = createNode(keys[mid], values[mid], parent);
+		node.setLeft(buildSubtree(keys, values, lo, mid - 1, node));
+		node.setRight(buildSubtree(keys, values, mid + 1, hi, node));
+		updateBuiltNode(node);
+		return node;
+	}
+
+	/**
+	 * Sets height, size and sum (and aggregates) of a node whose subtrees were just built.
+	 *
+	 * Complexity: O(1)
+	 */
+	private void updateBuiltNode(IAVLNode node) {
+		node.setHeight(1+Math.max(node.getLeft().getHeight(), node.getRight().getHeight()));
+		node.setSubtreeSize(1+node.getLeft().getSubtreeSize()+node.getRight().getSubtreeSize());
+		updateSum(node);
+	}
+
+	/**
+	 * private static final class BuildTask
+	 *
+	 * Builds the subtree of the items lo..hi like buildSubtree, forking the left half
+	 * while the subtree is larger than PARALLEL_BUILD_THRESHOLD.
+	 */
+	private static final class BuildTask extends java.util.concurrent.RecursiveTask<IAVLNode> {
+		private static final long serialVersionUID = 1L;
+
+		private final AVLTree tree;
+		private final int[] keys;
+		private final String[] values;
+		private final int lo;
+		private final int hi;
+		private final IAVLNode parent;
+
+		private BuildTask(AVLTree tree, int[] keys, String[] values, int lo, int hi, IAVLNode parent) {
+			this.tree = tree;
+			this.keys = keys;
+			this.values = values;
+			this.lo = lo;
+			this.hi = hi;
+			this.parent = parent;
+		}
+
+		protected IAVLNode compute() {
+			if(this.hi - this.lo + 1 < PARALLEL_BUILD_THRESHOLD)
+				return this.tree.buildSubtree(this.keys, this.values, this.lo, this.hi, this.parent);
+			int mid = (this.lo + this.hi) >>> 1;
+			IAVLNode node = this.tree.createNode(this.keys[mid], this.values[mid], this.parent);
+			BuildTask leftTask = new BuildTask(this.tree, this.keys, this.values, this.lo, mid - 1, node);
+			leftTask.fork();
+			IAVLNode right = new BuildTask(this.tree, this.keys, this.values, mid + 1, this.hi, node).compute();
+			node.setLeft(leftTask.join());
+			node.setRight(right);
+			this.tree.updateBuiltNode(node);
+			return node;
+		}
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 	Methods Used By writeSnapshot and readSnapshot  *
+	 ***************************************************/
+	private static final int SNAPSHOT_MAGIC = 0x41564C54; // "AVLT"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_HEADER_SIZE = 3 * Integer.BYTES; // magic, version, number of items
+	private static final int SNAPSHOT_BUFFER_SIZE = 1 << 20;
+	private static final int SNAPSHOT_WINDOW_SIZE = 1 << 30; // Largest region mapped at once
+
+	/**
+	 * Adds the buffered bytes to crc, writes them to channel and clears the buffer.
+	 */
+	private static void flushSnapshotBuffer(java.nio.channels.FileChannel channel, java.nio.ByteBuffer buffer,
+			java.util.zip.CRC32 crc) throws java.io.IOException {
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Throws IOException unless the CRC32 of bytes 0..end of the file equals the int stored at end.
+	 *
+	 * Complexity: O(file size)
+	 */
+	private static void verifySnapshotChecksum(java.nio.channels.FileChannel channel, long end, java.nio.file.Path path)
+			throws java.io.IOException {
+		java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+		for(long position = 0; position < end; position += SNAPSHOT_WINDOW_SIZE) {
+			long length = Math.min(SNAPSHOT_WINDOW_SIZE, end - position);
+			crc.update(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, position, length));
+		}
+		int stored = channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, end, Integer.BYTES).getInt();
+		if(stored != (int) crc.getValue())
+			throw new java.io.IOException("Snapshot checksum mismatch: " + path);
+	}
+
+	/**
+	 * private static final class SnapshotReader
+	 *
+	 * Reads the data part of a snapshot (bytes 0..end) through memory-mapped windows.
+	 * A window is remapped at the current position when the next read does not fit in it.
+	 */
+	private static final class SnapshotReader {
+		private final java.nio.channels.FileChannel channel;
+		private final long end;
+		private java.nio.MappedByteBuffer window = null;
+		private long windowStart = 0;
+
+		private SnapshotReader(java.nio.channels.FileChannel channel, long end) {
+			this.channel = channel;
+			this.end = end;
+		}
+
+		private int readInt() throws java.io.IOException {
+			ensure(Integer.BYTES);
+			return this.window.getInt();
+		}
+
+		/**
+		 * Reads dst.length ints, in bulk from every window.
+		 */
+		private void readInts(int[] dst) throws java.io.IOException {
+			for(int offset = 0; offset < dst.length; ) {
+				ensure(Integer.BYTES);
+				int count = Math.min(dst.length - offset, this.window.remaining() / Integer.BYTES);
+				this.window.asIntBuffer().get(dst, offset, count);
+				this.window.position(this.window.position() + count * Integer.BYTES);
+				offset += count;
+			}
+		}
+
+		/**
+		 * Reads a byte length (-1 for null) and that many UTF-8 bytes.
+		 */
+		private String readString() throws java.io.IOException {
+			int length = readInt();
+			if(length == -1)
+				return null;
+			if(length < 0)
+				throw new java.io.IOException("Bad value length " + length);
+			ensure(length);
+			byte[] bytes = new byte[length];
+			this.window.get(bytes);
+			return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+		}
+
+		private boolean atEnd() {
+			long position = (this.window == null) ? 0 : this.windowStart + this.window.position();
+			return position == this.end;
+		}
+
+		/**
+		 * Makes sure the next bytes bytes are in the window, remapping it at the current position if not.
+		 */
+		private void ensure(int bytes) throws java.io.IOException {
+			if(this.window != null && this.window.remaining() >= bytes)
+				return;
+			long position = (this.window == null) ? 0 : this.windowStart + this.window.position();
+			if(position + bytes > this.end)
+				throw new java.io.IOException("Snapshot is truncated");
+			long length = Math.max(bytes, Math.min(SNAPSHOT_WINDOW_SIZE, this.end - position));
+			this.window = this.channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, position, length);
+			this.windowStart = position;
+		}
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 		Methods Used By insertAll and deleteAll	   *
+	 ***************************************************/
+	/**
+	 * @param node - The root of a subtree.
+	 * @param keys - Strictly increasing natural numbers.
+	 * @return The root of the subtree with the items lo..hi whose keys are not already in it.
+	 *
+	 * Complexity: O(m log(n/m + 1)) for m = hi-lo+1 items and n nodes
+	 */
+	private IAVLNode insertSorted(IAVLNode node, int[] keys, String[] values, int lo, int hi, int[] numOfRot) {
+		if(lo > hi)
+			return node;
+		if(!node.isRealNode())
+			return buildSubtree(keys, values, lo, hi, null);
+
+		int pos = java.util.Arrays.binarySearch(keys, lo, hi + 1, node.getKey());
+		int leftHi = (pos >= 0) ? pos - 1 : -pos - 2; //Keys below node's key
+		int rightLo = (pos >= 0) ? pos + 1 : -pos - 1; //Keys above node's key (node's own key is skipped)
+
+		IAVLNode left = insertSorted(node.getLeft(), keys, values, lo, leftHi, numOfRot);
+		IAVLNode right = insertSorted(node.getRight(), keys, values, rightLo, hi, numOfRot);
+		return joinNodes(left, node, right, numOfRot);
+	}
+
+	/**
+	 * @param node - The root of a subtree.
+	 * @param keys - Sorted keys.
+	 * @return The root of the subtree without the keys lo..hi.
+	 *
+	 * Complexity: O(m log(n/m + 1)) for m = hi-lo+1 keys and n nodes
+	 */
+	private IAVLNode deleteSorted(IAVLNode node, int[] keys, int lo, int hi, int[] numOfRot) {
+		if(lo > hi || !node.isRealNode())
+			return node;
+
+		int pos = java.util.Arrays.binarySearch(keys, lo, hi + 1, node.getKey());
+		int leftHi, rightLo;
+		if(pos >= 0) { //Skip every copy of node's key
+			leftHi = pos - 1;
+			while(leftHi >= lo && keys[leftHi] == node.getKey())
+				leftHi--;
+			rightLo = pos + 1;
+			while(rightLo <= hi && keys[rightLo] == node.getKey())
+				rightLo++;
+		}
+		else {
+			leftHi = -pos - 2;
+			rightLo = -pos - 1;
+		}
+
+		IAVLNode left = deleteSorted(node.getLeft(), keys, lo, leftHi, numOfRot);
+		IAVLNode right = deleteSorted(node.getRight(), keys, rightLo, hi, numOfRot);
+		if(pos >= 0) {
+			releaseNode(node);
+			return joinWithoutMiddle(left, right, numOfRot);
+		}
+		return joinNodes(left, node, right, numOfRot);
+	}
+
+	/**
+	 * Makes root (a real or virtual node) the root of the tree and updates minNode and maxNode.
+	 *
+	 * Complexity: O(h)=O(log(n))
+	 */
+	private void setRootAfterJoin(IAVLNode root) {
+		this.rootNode = root;
+		if(root.isRealNode()) {
+			root.setParent(null);
+			this.minNode = minInSubtree(root);
+			this.maxNode = maxInSubtree(root);
+		}
+		else {
+			this.minNode = null;
+			this.maxNode = null;
+			clearSearchCache(); //The nodes were removed or moved to another tree
+		}
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 				Join and Split Methods 		   *
+	 ***************************************************/
+	/*
+	 * These methods work on detached subtrees: the parent of a returned root is not meaningful,
+	 * and is set by whoever links the root under a node (or by setRootAfterJoin).
+	 * Every rotation is counted in numOfRot[0].
+	 */
+
+	/**
+	 * @param left - The root of a subtree whose keys are all smaller than middle's key.
+	 * @param middle - A real node, its current children are ignored.
+	 * @param right - The root of a subtree whose keys are all larger than middle's key.
+	 * @return The root of a valid AVL tree (WAVL tree, under the WAVL policy) with left's nodes, middle and right's nodes.
+	 *
+	 * Complexity: O(|left.height - right.height| + 1)
+	 */
+	private IAVLNode joinNodes(IAVLNode left, IAVLNode middle, IAVLNode right, int[] numOfRot) {
+		boolean wavl = (this.rebalancePolicy == RebalancePolicy.WAVL);
+		if(left.getHeight() > right.getHeight() + 1)
+			return wavl ? joinRightWAVL(left, middle, right, numOfRot) : joinRight(left, middle, right, numOfRot);
+		if(right.getHeight() > left.getHeight() + 1)
+			return wavl ? joinLeftWAVL(left, middle, right, numOfRot) : joinLeft(left, middle, right, numOfRot);
+		return link(middle, left, right); //Rank max+1 leaves rank differences of 1 and 1 or 2
+	}
+
+	/**
+	 * joinNodes when left is higher by more than one: middle and right are joined
+	 * at the right spine of left, and the spine is rebalanced on the way up.
+	 */
+	private IAVLNode joinRight(IAVLNode left, IAVLNode middle, IAVLNode right, int[] numOfRot) {
+		IAVLNode l = left.getLeft();
+		IAVLNode c = left.getRight();
+		if(c.getHeight() <= right.getHeight() + 1) {
+			IAVLNode t = link(middle, c, right);
+			if(t.getHeight() <= l.getHeight() + 1)
+				return link(left, l, t);
+			return rotateSubtreeLeft(link(left, l, rotateSubtreeRight(t, numOfRot)), numOfRot); //Double rotation
+		}
+		IAVLNode t = joinRight(c, middle, right, numOfRot);
+		link(left, l, t);
+		if(t.getHeight() <= l.getHeight() + 1)
+			return left;
+		return rotateSubtreeLeft(left, numOfRot);
+	}
+
+	/**
+	 * joinNodes when right is higher by more than one: left and middle are joined
+	 * at the left spine of right, and the spine is rebalanced on the way up.
+	 */
+	private IAVLNode joinLeft(IAVLNode left, IAVLNode middle, IAVLNode right, int[] numOfRot) {
+		IAVLNode r = right.getRight();
+		IAVLNode c = right.getLeft();
+		if(c.getHeight() <= left.getHeight() + 1) {
+			IAVLNode t = link(middle, left, c);
+			if(t.getHeight() <= r.getHeight() + 1)
+				return link(right, t, r);
+			return rotateSubtreeRight(link(right, rotateSubtreeLeft(t, numOfRot), r), numOfRot); //Double rotation
+		}
+		IAVLNode t = joinLeft(left, middle, c, numOfRot);
+		link(right, t, r);
+		if(t.getHeight() <= r.getHeight() + 1)
+			return right;
+		return rotateSubtreeRight(right, numOfRot);
+	}
+
+	/*
+	 * Under the WAVL policy the height fields are ranks. joinRightWAVL descends the right spine of left
+	 * to the first node c with rank(c) <= rank(right) + 1; as its parent's rank is higher and rank differences
+	 * are at most 2, rank(c) is rank(right) or rank(right) + 1. middle then takes c and right as children
+	 * with rank max + 1, which is a 1,1 or 1,2 node, and replaces c. Its rank is at most one more than c's,
+	 * so on the way up a node can only get a 0-child, which is then fixed like after an insert:
+	 * the 0-child is 1,2, so its parent is promoted if its other child is a 1-child, and rotated otherwise.
+	 */
+	/**
+	 * joinNodes under the WAVL policy when left's rank is higher by more than one.
+	 */
+	private IAVLNode joinRightWAVL(IAVLNode left, IAVLNode middle, IAVLNode right, int[] numOfRot) {
+		IAVLNode l = left.getLeft();
+		IAVLNode c = left.getRight();
+		int rank = left.getHeight();
+		IAVLNode t = (c.getHeight() <= right.getHeight() + 1) ? link(middle, c, right) : joinRightWAVL(c, middle, right, numOfRot);
+		link(left, l, t);
+		left.setHeight(rank); //link computes an AVL height, left keeps its rank
+		if(t.getHeight() < rank)
+			return left;
+		if(rank - l.getHeight() == 1) { //t is a 0-child, promote
+			left.setHeight(rank + 1);
+			return left;
+		}
+		IAVLNode inner = t.getLeft();
+		if(t.getHeight() - inner.getHeight() == 2) { //Single rotation
+			rotateSubtreeLeft(left, numOfRot);
+			t.setHeight(rank);
+			left.setHeight(rank - 1);
+			return t;
+		}
+		link(left, l, rotateSubtreeRight(t, numOfRot)); //Double rotation
+		rotateSubtreeLeft(left, numOfRot);
+		inner.setHeight(rank);
+		t.setHeight(rank - 1);
+		left.setHeight(rank - 1);
+		return inner;
+	}
+
+	/**
+	 * joinNodes under the WAVL policy when right's rank is higher by more than one, symmetric to joinRightWAVL.
+	 */
+	private IAVLNode joinLeftWAVL(IAVLNode left, IAVLNode middle, IAVLNode right, int[] numOfRot) {
+		IAVLNode r = right.getRight();
+		IAVLNode c = right.getLeft();
+		int rank = right.getHeight();
+		IAVLNode t = (c.getHeight() <= left.getHeight() + 1) ? link(middle, left, c) : joinLeftWAVL(left, middle, c, numOfRot);
+		link(right, t, r);
+		right.setHeight(rank); //link computes an AVL height, right keeps its rank
+		if(t.getHeight() < rank)
+			return right;
+		if(rank - r.getHeight() == 1) { //t is a 0-child, promote
+			right.setHeight(rank + 1);
+			return right;
+		}
+		IAVLNode inner = t.getRight();
+		if(t.getHeight() - inner.getHeight() == 2) { //Single rotation
+			rotateSubtreeRight(right, numOfRot);
+			t.setHeight(rank);
+			right.setHeight(rank - 1);
+			return t;
+		}
+		link(right, rotateSubtreeLeft(t, numOfRot), r); //Double rotation
+		rotateSubtreeRight(right, numOfRot);
+		inner.setHeight(rank);
+		t.setHeight(rank - 1);
+		right.setHeight(rank - 1);
+		return inner;
+	}
+
+	/**
+	 * @return The policy of a tree made of the nodes of first and second: an AVL tree is also
+	 * a valid WAVL tree, but a WAVL tree may not be AVL balanced.
+	 */
+	private static RebalancePolicy joinedPolicy(AVLTree first, AVLTree second) {
+		if(first.rebalancePolicy == RebalancePolicy.WAVL || second.rebalancePolicy == RebalancePolicy.WAVL)
+			return RebalancePolicy.WAVL;
+		return RebalancePolicy.AVL;
+	}
+
+	/**
+	 * @param left - The root of a subtree whose keys are all smaller than right's keys.
+	 * @param right - The root of a subtree.
+	 * @return The root of a valid AVL tree with left's and right's nodes.
+	 *
+	 * Complexity: O(log(n))
+	 */
+	private IAVLNode joinWithoutMiddle(IAVLNode left, IAVLNode right, int[] numOfRot) {
+		if(!left.isRealNode())
+			return right;
+		if(!right.isRealNode())
+			return left;
+		IAVLNode[] last = new IAVLNode[1];
+		IAVLNode rest = splitLast(left, last, numOfRot);
+		return joinNodes(rest, last[0], right, numOfRot);
+	}
+
+	/**
+	 * @param node - The root of a real subtree.
+	 * @param last - last[0] is set to the maximum node of the subtree.
+	 * @return The root of the subtree without its maximum node.
+	 *
+	 * Complexity: O(h)
+	 */
+	private IAVLNode splitLast(IAVLNode node, IAVLNode[] last, int[] numOfRot) {
+		if(!node.getRight().isRealNode()) {
+			last[0] = node;
+			return node.getLeft();
+		}
+		IAVLNode rest = splitLast(node.getRight(), last, numOfRot);
+		return joinNodes(node.getLeft(), node, rest, numOfRot);
+	}
+
+	/**
+	 * @param node - The root of a subtree.
+	 * @param k - The key to split by.
+	 * @param parts - parts[0] is set to the root of the nodes with keys smaller than k,
+	 * and parts[1] to the root of the nodes with keys larger than k.
+	 * @return The node with key k (detached from both parts), or null if there is none.
+	 *
+	 * Complexity: O(h)
+	 */
+	private IAVLNode splitSubtree(IAVLNode node, int k, IAVLNode[] parts, int[] numOfRot) {
+		if(!node.isRealNode()) {
+			parts[0] = VIRTUAL_NODE;
+			parts[1] = VIRTUAL_NODE;
+			return null;
+		}
+		IAVLNode left = node.getLeft();
+		IAVLNode right = node.getRight();
+		if(k == node.getKey()) {
+			parts[0] = left;
+			parts[1] = right;
+			return node;
+		}
+		IAVLNode found;
+		if(k < node.getKey()) {
+			found = splitSubtree(left, k, parts, numOfRot);
+			parts[1] = joinNodes(parts[1], node, right, numOfRot);
+		}
+		else {
+			found = splitSubtree(right, k, parts, numOfRot);
+			parts[0] = joinNodes(left, node, parts[0], numOfRot);
+		}
+		return found;
+	}
+
+	/**
+	 * Makes left and right the children of node and updates node's height, size and sum (and aggregates).
+	 *
+	 * Complexity: O(1)
+	 */
+	private IAVLNode link(IAVLNode node, IAVLNode left, IAVLNode right) {
+		node.setLeft(left);
+		node.setRight(right);
+		left.setParent(node);
+		right.setParent(node);
+		updateBuiltNode(node);
+		return node;
+	}
+
+	/**
+	 * Left rotation of a detached subtree.
+	 * @return The new root of the subtree.
+	 *
+	 * Complexity: O(1)
+	 */
+	private IAVLNode rotateSubtreeLeft(IAVLNode node, int[] numOfRot) {
+		IAVLNode right = node.getRight();
+		link(node, node.getLeft(), right.getLeft());
+		link(right, node, right.getRight());
+		numOfRot[0]++;
+		return right;
+	}
+
+	/**
+	 * Right rotation of a detached subtree.
+	 * @return The new root of the subtree.
+	 *
+	 * Complexity: O(1)
+	 */
+	private IAVLNode rotateSubtreeRight(IAVLNode node, int[] numOfRot) {
+		IAVLNode left = node.getLeft();
+		link(node, left.getRight(), node.getRight());
+		link(left, left.getLeft(), node);
+		numOfRot[0]++;
+		return left;
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 	Methods Used By union, intersection, difference *
+	 ***************************************************/
+	private static final int UNION = 0;
+	private static final int INTERSECTION = 1;
+	private static final int DIFFERENCE = 2;
+
+	/* Pairs of subtrees with fewer nodes than this are processed by the task that reaches them */
+	private static final int PARALLEL_SET_THRESHOLD = 1 << 14;
+
+	/**
+	 * @param operation - UNION, INTERSECTION or DIFFERENCE.
+	 * @return A tree with the result of the operation, moving the nodes out of first and second.
+	 */
+	private static AVLTree setOperation(int operation, AVLTree first, AVLTree second) {
+		if(first == second)
+			throw new IllegalArgumentException("A set operation needs two different trees");
+		checkSameAggregates(first, second);
+		AVLTree tree = new AVLTree(first.aggregates);
+		tree.rebalancePolicy = joinedPolicy(first, second);
+		IAVLNode firstRoot = first.rootNode;
+		IAVLNode secondRoot = second.rootNode;
+		first.setRootAfterJoin(VIRTUAL_NODE);
+		second.setRootAfterJoin(VIRTUAL_NODE);
+		IAVLNode root;
+		if(firstRoot.getSubtreeSize() + secondRoot.getSubtreeSize() < PARALLEL_SET_THRESHOLD)
+			root = tree.setOperation(operation, firstRoot, secondRoot, new int[1]);
+		else
+			root = java.util.concurrent.ForkJoinPool.commonPool().invoke(new SetOperationTask(tree, operation, firstRoot, secondRoot));
+		tree.setRootAfterJoin(root);
+		return tree;
+	}
+
+	/**
+	 * @param operation - UNION, INTERSECTION or DIFFERENCE.
+	 * @param first - The root of a detached subtree.
+	 * @param second - The root of another detached subtree.
+	 * @return The root of the result of the operation on the two subtrees.
+	 *
+	 * One subtree is split by the key of the other's root, the two sides are processed
+	 * recursively (the left side by a forked task, while the pair is larger than
+	 * PARALLEL_SET_THRESHOLD) and joined back around the root if it belongs to the result.
+	 *
+	 * Complexity: O(m log(n/m + 1)) work for subtrees of sizes m <= n
+	 */
+	private IAVLNode setOperation(int operation, IAVLNode first, IAVLNode second, int[] numOfRot) {
+		if(!first.isRealNode())
+			return (operation == UNION) ? second : VIRTUAL_NODE;
+		if(!second.isRealNode())
+			return (operation == INTERSECTION) ? VIRTUAL_NODE : first;
+
+		boolean parallel = first.getSubtreeSize() + second.getSubtreeSize() >= PARALLEL_SET_THRESHOLD;
+		IAVLNode[] parts = new IAVLNode[2];
+		IAVLNode pivot, found, firstLeft, firstRight, secondLeft, secondRight;
+		if(operation == DIFFERENCE) { //Split first by second's root, which is never in the result
+			pivot = second;
+			found = splitSubtree(first, second.getKey(), parts, numOfRot);
+			firstLeft = parts[0];
+			firstRight = parts[1];
+			secondLeft = second.getLeft();
+			secondRight = second.getRight();
+		}
+		else { //Split second by first's root, whose item is kept
+			pivot = first;
+			firstLeft = first.getLeft();
+			firstRight = first.getRight();
+			found = splitSubtree(second, first.getKey(), parts, numOfRot);
+			secondLeft = parts[0];
+			secondRight = parts[1];
+		}
+
+		IAVLNode left, right;
+		if(parallel) {
+			SetOperationTask leftTask = new SetOperationTask(this, operation, firstLeft, secondLeft);
+			leftTask.fork();
+			right = setOperation(operation, firstRight, secondRight, numOfRot);
+			left = leftTask.join();
+		}
+		else {
+			left = setOperation(operation, firstLeft, secondLeft, numOfRot);
+			right = setOperation(operation, firstRight, secondRight, numOfRot);
+		}
+
+		if(operation == UNION || (operation == INTERSECTION && found != null))
+			return joinNodes(left, pivot, right, numOfRot);
+		return joinWithoutMiddle(left, right, numOfRot);
+	}
+
+	/**
+	 * private static final class SetOperationTask
+	 *
+	 * Runs setOperation on a pair of subtrees in a fork-join pool, with its own rotation counter.
+	 */
+	private static final class SetOperationTask extends java.util.concurrent.RecursiveTask<IAVLNode> {
+		private static final long serialVersionUID = 1L;
+
+		private final AVLTree tree;
+		private final int operation;
+		private final IAVLNode first;
+		private final IAVLNode second;
+
+		private SetOperationTask(AVLTree tree, int operation, IAVLNode first, IAVLNode second) {
+			this.tree = tree;
+			this.operation = operation;
+			this.first = first;
+			this.second = second;
+		}
+
+		protected IAVLNode compute() {
+			return this.tree.setOperation(this.operation, this.first, this.second, new int[1]);
+		}
+	}
+	/*/*************************************************/
+
+
+	/*/*************************************************
+	 * 		Methods Used By floorKey and ceilingKey	   *
+	 ***************************************************/
+	/**
+	 * @param k - A key, not neccessarily in the tree.
+	 * @return The node with the largest key less or equal to k, or null if there is none.
+	 *
+	 * Complexity: O(h)
+	 */
+	private IAVLNode floorNode(int k) {
+		IAVLNode node = this.rootNode;
+		IAVLNode floor = null;
+		while(node.isRealNode()) {
+			if(node.getKey() == k)
+				return node;
+			if(node.getKey() < k) {
+				floor = node;
+				node = node.getRight();
+			}
+			else {
+				node = node.getLeft();
+			}
+		}
+		return floor;
+	}
+
+	/**
+	 * @param k - A key, not neccessarily in the tree.
+	 * @return The node with the smallest key greater or equal to k, or null if there is none.
+	 *
+	 * Complexity: O(h)
+	 */
+	private IAVLNode ceilingNode(int k) {
+		IAVLNode node = this.rootNode;
+		IAVLNode ceiling = null;
+		while(node.isRealNode()) {
+			if(node.getKey() == k)
+				return node;
+			if(node.getKey() > k) {
+				ceiling = node;
+				node = node.getLeft();
+			}
+			else {
+				node = node.getRight();
+			}
+		}
+		return ceiling;
+	}
+	/*/*************************************************/
+
+
+	/**
+	 * public static final class Cursor
+	 *
+	 * A position in the tree, optionally restricted to the keys in [lo, hi].
+	 * seek positions the cursor in O(log(n)), next and prev step in amortized O(1)
+	 * using successor and predecessor, so scanning m items costs O(log(n) + m).
+	 * A cursor keeps no state besides its node and bounds, so it allocates nothing after creation.
+	 *
+	 * The tree must not be modified while a cursor is positioned on it: after an insert or
+	 * delete, the cursor has to seek again before it is used.
+	 */
+	public static final class Cursor {
+		private final AVLTree tree;
+		private IAVLNode node; // The current node, or null if the cursor is not on an item.
+		private int lo = Integer.MIN_VALUE;
+		private int hi = Integer.MAX_VALUE;
+
+		private Cursor(AVLTree tree) {
+			this.tree = tree;
+		}
+
+		/**
+		 * public Cursor range(int lo, int hi)
+		 *
+		 * Restricts the cursor to the keys in [lo, hi] and positions it on the first of them.
+		 * returns this cursor.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public Cursor range(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+			seekFirst();
+			return this;
+		}
+
+		/**
+		 * public Cursor unbounded()
+		 *
+		 * Removes the range restriction, without moving the cursor. returns this cursor.
+		 *
+		 * Complexity: O(1)
+		 */
+		public Cursor unbounded() {
+			this.lo = Integer.MIN_VALUE;
+			this.hi = Integer.MAX_VALUE;
+			return this;
+		}
+
+		/**
+		 * public boolean seek(int k)
+		 *
+		 * Positions the cursor on the smallest key in range which is greater or equal to k.
+		 * returns true if there is such a key, otherwise the cursor is not on an item.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public boolean seek(int k) {
+			return position(this.tree.ceilingNode(Math.max(k, this.lo)));
+		}
+
+		/**
+		 * public boolean seekFloor(int k)
+		 *
+		 * Positions the cursor on the largest key in range which is less or equal to k.
+		 * returns true if there is such a key, otherwise the cursor is not on an item.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public boolean seekFloor(int k) {
+			return position(this.tree.floorNode(Math.min(k, this.hi)));
+		}
+
+		/**
+		 * public boolean seekFirst()
+		 *
+		 * Positions the cursor on the smallest key in range.
+		 * returns false if the range is empty.
+		 *
+		 * Complexity: O(1) without a lower bound, otherwise O(h)=O(log(n))
+		 */
+		public boolean seekFirst() {
+			if(this.lo == Integer.MIN_VALUE)
+				return position(this.tree.minNode);
+			return seek(this.lo);
+		}
+
+		/**
+		 * public boolean seekLast()
+		 *
+		 * Positions the cursor on the largest key in range.
+		 * returns false if the range is empty.
+		 *
+		 * Complexity: O(1) without an upper bound, otherwise O(h)=O(log(n))
+		 */
+		public boolean seekLast() {
+			if(this.hi == Integer.MAX_VALUE)
+				return position(this.tree.maxNode);
+			return seekFloor(this.hi);
+		}
+
+		/**
+		 * public boolean seekNear(int k)
+		 *
+		 * Like seek(k), but searches from the current item (the finger) instead of the root when
+		 * the cursor is on an item, so nearby keys are found in O(log(d)), where d is the number of
+		 * keys between the current item and k.
+		 * returns true if there is such a key, otherwise the cursor is not on an item.
+		 *
+		 * Complexity: O(log(d)) for nearby keys, O(h)=O(log(n)) in the worst case
+		 */
+		public boolean seekNear(int k) {
+			if(this.node == null)
+				return seek(k);
+			return position(ceilingFrom(this.node, Math.max(k, this.lo)));
+		}
+
+		/**
+		 * public boolean seekRank(int i)
+		 *
+		 * Positions the cursor on the i'th smallest key of the tree, found from the nearer end.
+		 * returns false (and leaves the cursor off the items) if i is out of range or the key is out of bounds.
+		 *
+		 * Complexity: O(log(d)), where d = min(i, size()-i+1)
+		 */
+		public boolean seekRank(int i) {
+			if(i < 1 || i > this.tree.size())
+				return position(null);
+			return position(this.tree.selectFromEnds(i));
+		}
+
+		/**
+		 * public boolean move(int offset)
+		 *
+		 * Moves the cursor offset items forward (or backward, for a negative offset),
+		 * searching from the current item, which serves as the finger.
+		 * returns false (and leaves the cursor off the items) if the new position is out of
+		 * the tree or out of bounds, or if the cursor was not on an item.
+		 *
+		 * Complexity: O(log(|offset|)) for nearby positions, O(h)=O(log(n)) in the worst case
+		 */
+		public boolean move(int offset) {
+			if(this.node == null)
+				return false;
+			return position(moveByRank(this.node, offset));
+		}
+
+		/**
+		 * public int rank()
+		 *
+		 * returns the position of the current item in the tree (1 for the minimum),
+		 * or 0 if the cursor is not on an item.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int rank() {
+			if(this.node == null)
+				return 0;
+			IAVLNode current = this.node;
+			int rank = current.getLeft().getSubtreeSize() + 1;
+			for(IAVLNode parent = current.getParent(); parent != null; parent = parent.getParent()) {
+				if(parent.getRight() == current)
+					rank += parent.getLeft().getSubtreeSize() + 1;
+				current = parent;
+			}
+			return rank;
+		}
+
+		/**
+		 * public boolean next()
+		 *
+		 * Moves the cursor to the next key in range.
+		 * returns false (and leaves the cursor off the items) if there is none,
+		 * or if the cursor was not on an item.
+		 *
+		 * Complexity: amortized O(1), O(h) in the worst case
+		 */
+		public boolean next() {
+			if(this.node == null)
+				return false;
+			return position(successor(this.node));
+		}
+
+		/**
+		 * public boolean prev()
+		 *
+		 * Moves the cursor to the previous key in range.
+		 * returns false (and leaves the cursor off the items) if there is none,
+		 * or if the cursor was not on an item.
+		 *
+		 * Complexity: amortized O(1), O(h) in the worst case
+		 */
+		public boolean prev() {
+			if(this.node == null)
+				return false;
+			return position(predecessor(this.node));
+		}
+
+		/**
+		 * public boolean valid()
+		 *
+		 * returns true if and only if the cursor is on an item.
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean valid() {
+			return this.node != null;
+		}
+
+		/**
+		 * public int key()
+		 *
+		 * returns the key of the current item, or -1 if the cursor is not on an item.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int key() {
+			return (this.node == null) ? -1 : this.node.getKey();
+		}
+
+		/**
+		 * public String value()
+		 *
+		 * returns the info of the current item, or null if the cursor is not on an item.
+		 *
+		 * Complexity: O(1)
+		 */
+		public String value() {
+			return (this.node == null) ? null : this.node.getValue();
+		}
+
+		/**
+		 * Moves the cursor to node if it is in range, otherwise off the items.
+		 * @return Whether the cursor is on an item.
+		 */
+		private boolean position(IAVLNode node) {
+			if(node != null && (node.getKey() < this.lo || node.getKey() > this.hi))
+				node = null;
+			this.node = node;
+			return node != null;
+		}
+	}
+
+
+	/*/*************************************************
+	 * 				Spliterators of keys and entries   *
+	 ***************************************************/
+	/**
+	 * private abstract static class RankSpliterator
+	 *
+	 * Covers the items with ranks from (inclusive) to to (exclusive), counted from 0.
+	 * Splitting halves the rank range, so the sizes of both parts are exact.
+	 * The first node is found by rank (using the subtree sizes) only when traversal starts,
+	 * and later nodes are reached with successor.
+	 */
+	private abstract static class RankSpliterator {
+		protected static final int CHARACTERISTICS = java.util.Spliterator.SIZED | java.util.Spliterator.SUBSIZED
+				| java.util.Spliterator.ORDERED | java.util.Spliterator.SORTED | java.util.Spliterator.DISTINCT
+				| java.util.Spliterator.NONNULL;
+
+		protected final AVLTree tree;
+		protected int from;
+		protected final int to;
+		private IAVLNode node; // The node of rank from, null until traversal starts.
+
+		protected RankSpliterator(AVLTree tree, int from, int to) {
+			this.tree = tree;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * @return The node of rank from and advances from, or null if the range is exhausted.
+		 *
+		 * Complexity: O(h) for the first node, amortized O(1) for the others
+		 */
+		protected IAVLNode nextNode() {
+			if(this.from >= this.to)
+				return null;
+			IAVLNode current = (this.node == null) ? selectNode(this.tree.rootNode, this.from + 1) : this.node;
+			this.from++;
+			this.node = (this.from < this.to) ? successor(current) : null;
+			return current;
+		}
+
+		/**
+		 * @return The rank where the range splits, or -1 if it is too small to split
+		 * (a range is split only before traversal starts).
+		 */
+		protected int splitRank() {
+			if(this.node != null || this.to - this.from < 2)
+				return -1;
+			return (this.from + this.to) >>> 1;
+		}
+
+		public long estimateSize() {
+			return this.to - this.from;
+		}
+
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+	/**
+	 * private static final class KeySpliterator
+	 *
+	 * A RankSpliterator of keys.
+	 */
+	private static final class KeySpliterator extends RankSpliterator implements java.util.Spliterator.OfInt {
+
+		private KeySpliterator(AVLTree tree, int from, int to) {
+			super(tree, from, to);
+		}
+
+		public boolean tryAdvance(java.util.function.IntConsumer action) {
+			IAVLNode current = nextNode();
+			if(current == null)
+				return false;
+			action.accept(current.getKey());
+			return true;
+		}
+
+		public void forEachRemaining(java.util.function.IntConsumer action) {
+			for(IAVLNode current = nextNode(); current != null; current = nextNode())
+				action.accept(current.getKey());
+		}
+
+		public KeySpliterator trySplit() {
+			int mid = splitRank();
+			if(mid < 0)
+				return null;
+			KeySpliterator prefix = new KeySpliterator(this.tree, this.from, mid);
+			this.from = mid;
+			return prefix;
+		}
+
+		public java.util.Comparator<? super Integer> getComparator() {
+			return null; // Natural order
+		}
+	}
+
+	/**
+	 * private static final class EntrySpliterator
+	 *
+	 * A RankSpliterator of immutable (key, info) entries.
+	 */
+	private static final class EntrySpliterator extends RankSpliterator
+			implements java.util.Spliterator<java.util.Map.Entry<Integer, String>> {
+
+		private EntrySpliterator(AVLTree tree, int from, int to) {
+			super(tree, from, to);
+		}
+
+		public boolean tryAdvance(java.util.function.Consumer<? super java.util.Map.Entry<Integer, String>> action) {
+			IAVLNode current = nextNode();
+			if(current == null)
+				return false;
+			action.accept(new java.util.AbstractMap.SimpleImmutableEntry<>(current.getKey(), current.getValue()));
+			return true;
+		}
+
+		public EntrySpliterator trySplit() {
+			int mid = splitRank();
+			if(mid < 0)
+				return null;
+			EntrySpliterator prefix = new EntrySpliterator(this.tree, this.from, mid);
+			this.from = mid;
+			return prefix;
+		}
+
+		public java.util.Comparator<? super java.util.Map.Entry<Integer, String>> getComparator() {
+			return java.util.Map.Entry.comparingByKey();
+		}
+	}
+	/*/*************************************************/
+
+
+	/**
+	 * public static final class TreeMetrics
+	 *
+	 * The measurements of one tree since enableMetrics, see AVLTree.enableMetrics(long).
+	 * Latencies are kept in histograms of 64 power-of-two buckets: bucket b counts the calls
+	 * which took [2^(b-1), 2^b) nanoseconds (bucket 0 counts calls under a nanosecond).
+	 * Rotations are those returned by insert and delete, and the descent depth of a call is the number
+	 * of nodes its descent visited (for select, the climb from the nearer end and the descent), or 0 if
+	 * it was answered without one, such as a search cache hit or a less bound outside the keys.
+	 *
+	 * Like the tree, the counters are not synchronized: they are updated by the thread which calls the tree.
+	 */
+	public static final class TreeMetrics {
+		private static final int BUCKETS = 64;
+		private static final int OPERATIONS = Operation.values().length;
+
+		private final AVLTree tree;
+		private final long slowOperationNanos; // Calls which take at least this long are emitted as JFR events.
+
+		private final long[] counts = new long[OPERATIONS];
+		private final long[] totalNanos = new long[OPERATIONS];
+		private final long[][] histograms = new long[OPERATIONS][BUCKETS];
+		private final long[] rotations = new long[OPERATIONS];
+		private final long[] depths = new long[OPERATIONS];
+		private final java.util.concurrent.atomic.LongAdder nodesAllocated = new java.util.concurrent.atomic.LongAdder(); // Parallel builds allocate from several threads.
+		private long slowOperations = 0;
+		private int descentDepth = 0; // Nodes visited by the call being recorded, set by the tree's descents.
+
+		private TreeMetrics(AVLTree tree, long slowOperationNanos) {
+			this.tree = tree;
+			this.slowOperationNanos = slowOperationNanos;
+		}
+
+		/**
+		 * Adds one call of operation to the counters, and emits it as a JFR event if it was slow.
+		 *
+		 * Complexity: O(1)
+		 */
+		private void record(Operation operation, int argument, long nanos, int rotations, int depth) {
+			int index = operation.ordinal();
+			this.counts[index]++;
+			this.totalNanos[index] += nanos;
+			this.histograms[index][BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos))]++;
+			this.rotations[index] += rotations;
+			this.depths[index] += depth;
+			if(nanos < this.slowOperationNanos)
+				return;
+			this.slowOperations++;
+			SlowOperationEvent event = new SlowOperationEvent();
+			if(event.shouldCommit()) {
+				event.operation = operation.name();
+				event.argument = argument;
+				event.latency = nanos;
+				event.rotations = rotations;
+				event.depth = depth;
+				event.treeSize = this.tree.size();
+				event.commit();
+			}
+		}
+
+		/**
+		 * public long count(Operation operation)
+		 *
+		 * Returns the number of recorded calls of operation.
+		 */
+		public long count(Operation operation) {
+			return this.counts[operation.ordinal()];
+		}
+
+		/**
+		 * public double meanLatencyNanos(Operation operation)
+		 *
+		 * Returns the mean latency of operation in nanoseconds, or 0 if it was not called.
+		 */
+		public double meanLatencyNanos(Operation operation) {
+			return perCall(this.totalNanos, operation);
+		}
+
+		/**
+		 * public long[] latencyHistogram(Operation operation)
+		 *
+		 * Returns a copy of the 64 latency buckets of operation.
+		 */
+		public long[] latencyHistogram(Operation operation) {
+			return this.histograms[operation.ordinal()].clone();
+		}
+
+		/**
+		 * public long latencyPercentileNanos(Operation operation, double p)
+		 *
+		 * Returns an upper bound on the p'th percentile latency of operation in nanoseconds:
+		 * the end of the bucket which holds it, or 0 if operation was not called.
+		 *
+		 * precondition: 0 <= p <= 100 (otherwise IllegalArgumentException is thrown)
+		 */
+		public long latencyPercentileNanos(Operation operation, double p) {
+			if(!(p >= 0 && p <= 100))
+				throw new IllegalArgumentException("Percentile out of range: " + p);
+			long[] histogram = this.histograms[operation.ordinal()];
+			long rank = (long) Math.ceil(p / 100 * this.counts[operation.ordinal()]);
+			long seen = 0;
+			for(int b = 0; b < BUCKETS; b++) {
+				seen += histogram[b];
+				if(seen >= rank && seen > 0)
+					return (b == BUCKETS - 1) ? Long.MAX_VALUE : (1L << b) - 1;
+			}
+			return 0;
+		}
+
+		/**
+		 * public double rotationsPerOperation(Operation operation)
+		 *
+		 * Returns the mean number of rotations of an insert or a delete, or 0 for other operations.
+		 */
+		public double rotationsPerOperation(Operation operation) {
+			return perCall(this.rotations, operation);
+		}
+
+		/**
+		 * public double averageDescentDepth(Operation operation)
+		 *
+		 * Returns the mean number of nodes on the search paths of operation, or 0 if it was not called.
+		 */
+		public double averageDescentDepth(Operation operation) {
+			return perCall(this.depths, operation);
+		}
+
+		/**
+		 * public long nodesAllocated()
+		 *
+		 * Returns the number of nodes the tree has allocated, not counting nodes reused from its node pool.
+		 */
+		public long nodesAllocated() {
+			return this.nodesAllocated.sum();
+		}
+
+		/**
+		 * public long slowOperations()
+		 *
+		 * Returns the number of calls which took at least the slow operation threshold,
+		 * whether or not a flight recording took their events.
+		 */
+		public long slowOperations() {
+			return this.slowOperations;
+		}
+
+		/**
+		 * public int height()
+		 *
+		 * Returns the current height of the tree (-1 if it is empty).
+		 * Under the WAVL policy this is the rank of the root, which is at least the height.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int height() {
+			return this.tree.rootNode.getHeight();
+		}
+
+		/**
+		 * public int heightBound()
+		 *
+		 * Returns the largest height() the tree can have with its current size:
+		 * 1.4405log(n+2)-0.3277 for an AVL tree, 2log(n) for the rank of a WAVL tree, -1 if it is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int heightBound() {
+			int n = this.tree.size();
+			if(n == 0)
+				return -1;
+			if(this.tree.rebalancePolicy == RebalancePolicy.WAVL)
+				return (int) Math.floor(2 * Math.log(n) / Math.log(2));
+			return (int) Math.floor(1.4405 * Math.log(n + 2.0) / Math.log(2) - 0.3277);
+		}
+
+		/**
+		 * public String toString()
+		 *
+		 * Returns a report of every operation which was called, the height and the allocations.
+		 */
+		public String toString() {
+			StringBuilder report = new StringBuilder();
+			for(Operation operation : Operation.values()) {
+				if(count(operation) == 0)
+					continue;
+				report.append(String.format("%s: count=%d mean=%.0fns p50<=%dns p99<=%dns p99.9<=%dns rotations/op=%.3f depth=%.2f%n",
+						operation, count(operation), meanLatencyNanos(operation),
+						latencyPercentileNanos(operation, 50), latencyPercentileNanos(operation, 99), latencyPercentileNanos(operation, 99.9),
+						rotationsPerOperation(operation), averageDescentDepth(operation)));
+			}
+			report.append(String.format("height=%d bound=%d nodesAllocated=%d slowOperations=%d",
+					height(), heightBound(), nodesAllocated(), slowOperations()));
+			return report.toString();
+		}
+
+		/**
+		 * @return The sum of values[operation] over the calls of operation, or 0 if there were none.
+		 */
+		private double perCall(long[] values, Operation operation) {
+			long count = this.counts[operation.ordinal()];
+			return (count == 0) ? 0 : (double) values[operation.ordinal()] / count;
+		}
+	}
+
+	/**
+	 * private static final class SlowOperationEvent
+	 *
+	 * The JFR event of a tree operation which took at least its tree's slow operation threshold.
+	 * Enable AVLTree.SlowOperation in the recording settings to collect it (with its stack trace).
+	 */
+	@jdk.jfr.Name("AVLTree.SlowOperation")
+	@jdk.jfr.Label("Slow AVLTree Operation")
+	@jdk.jfr.Category("AVLTree")
+	@jdk.jfr.Description("An AVLTree operation which took at least the slow operation threshold of its tree")
+	private static final class SlowOperationEvent extends jdk.jfr.Event {
+		@jdk.jfr.Label("Operation")
+		private String operation;
+
+		@jdk.jfr.Label("Argument")
+		@jdk.jfr.Description("The key of insert, delete and search, the index of select or the bound of less")
+		private int argument;
+
+		@jdk.jfr.Label("Latency")
+		@jdk.jfr.Timespan(jdk.jfr.Timespan.NANOSECONDS)
+		private long latency;
+
+		@jdk.jfr.Label("Rotations")
+		private int rotations;
+
+		@jdk.jfr.Label("Descent Depth")
+		private int depth;
+
+		@jdk.jfr.Label("Tree Size")
+		private int treeSize;
+	}
+
+
+	/*/*************************************************
+	 * 				Node Creation And Updates 		   *
+	 ***************************************************/
+	private static final Aggregate<?>[] NO_AGGREGATES = new Aggregate<?>[0];
+
+	/**
+	 * @return A new leaf with the given item, which holds a slot for every aggregate of the tree.
+	 * The leaf is taken from the node pool if it has one.
+	 *
+	 * Complexity: O(number of aggregates)
+	 */
+	private IAVLNode createNode(int k, String i, IAVLNode parent) {
+		AVLNode pooled = this.pooledNodes;
+		if(pooled != null) {
+			this.pooledNodes = (AVLNode) pooled.getParent();
+			this.pooledCount--;
+			pooled.reuse(k, i, parent);
+			if(this.aggregates.length != 0)
+				updateSum(pooled);
+			return pooled;
+		}
+		TreeMetrics m = this.metrics;
+		if(m != null)
+			m.nodesAllocated.increment();
+		if(this.aggregates.length == 0)
+			return new AVLNode(k, i, parent);
+		AggregateNode node = new AggregateNode(k, i, parent, this.aggregates.length);
+		updateSum(node);
+		return node;
+	}
+
+	/**
+	 * Clears node, which is no longer referenced by the tree, and puts it in the node pool
+	 * unless the pool is full (or disabled).
+	 *
+	 * Complexity: O(1) without aggregates, otherwise O(number of aggregates)
+	 */
+	private void releaseNode(IAVLNode node) {
+		if(this.pooledCount >= this.nodePoolCapacity)
+			return;
+		AVLNode released = (AVLNode) node;
+		released.release(this.pooledNodes);
+		if(this.aggregates.length != 0)
+			java.util.Arrays.fill(((AggregateNode) released).aggregates, null);
+		this.pooledNodes = released;
+		this.pooledCount++;
+	}
+
+	/**
+	 * Sets the key sum of a real node, and its aggregates, from its children.
+	 * Every change to a subtree's keys passes through here (insert, delete, rotations,
+	 * building and joins), so it is the only place that aggregates are maintained.
+	 *
+	 * Complexity: O(1) without aggregates, otherwise O(number of aggregates) combine calls
+	 */
+	private void updateSum(IAVLNode node) {
+		((AVLNode) node).setSum(((AVLNode) node.getLeft()).getLongSum()+((AVLNode) node.getRight()).getLongSum()+node.getKey());
+		if(this.aggregates.length == 0)
+			return;
+		Object[] values = ((AggregateNode) node).aggregates;
+		for(int j = 0; j < this.aggregates.length; j++)
+			values[j] = combineNode(this.aggregates[j], node, j);
+	}
+
+	/**
+	 * @return The aggregate of node's subtree: left subtree, node's item, right subtree.
+	 */
+	private static <A> A combineNode(Aggregate<A> aggregate, IAVLNode node, int index) {
+		A item = aggregate.of(node.getKey(), node.getValue());
+		return aggregate.combine(aggregate.combine(aggregateOf(node.getLeft(), index, aggregate), item),
+				aggregateOf(node.getRight(), index, aggregate));
+	}
+
+	/**
+	 * Throws IllegalArgumentException unless both trees keep the same aggregates,
+	 * which is needed to move nodes from one to the other.
+	 */
+	private static void checkSameAggregates(AVLTree first, AVLTree second) {
+		if(!java.util.Arrays.equals(first.aggregates, second.aggregates))
+			throw new IllegalArgumentException("The trees keep different aggregates");
+	}
+	/*/*************************************************/
+
+
+	/**
+	 * public interface EntryVisitor
+	 *
+	 * A callback for forEach over the items of a tree, with a primitive key.
+	 */
+	public interface EntryVisitor {
+		/**
+		 * @return true to continue the traversal, false to stop it.
+		 */
+		public boolean visit(int key, String value);
+	}
+
+	/**
+	 * public enum RebalancePolicy
+	 *
+	 * How insert and delete restore balance, see setRebalancePolicy.
+	 * AVL - children heights differ by at most one. A delete may rotate at every level up to the root.
+	 * WAVL - weak AVL rank rules: every rank difference is 1 or 2, and leaves have rank 0.
+	 *        Every insert or delete does at most two rotations, and O(1) amortized rank changes.
+	 *        Without deletes the tree is exactly the AVL tree, otherwise its height is at most 2log(n).
+	 */
+	public enum RebalancePolicy {AVL, WAVL}
+
+	/**
+	 * public enum Operation
+	 *
+	 * The operations recorded by TreeMetrics.
+	 */
+	public enum Operation {INSERT, DELETE, SEARCH, SELECT, LESS}
+
+	/**
+	 * public interface IAVLNode
+	 * ! Do not delete or modify this - otherwise all tests will fail !
+	 */
+	public interface IAVLNode{	
+		public int getKey(); //returns node's key (for virtual node return -1)
+		public String getValue(); //returns node's value [info] (for virtual node return null)
+		public void setLeft(IAVLNode node); //sets left child
+		public IAVLNode getLeft(); //returns left child (if there is no left child return null)
+		public void setRight(IAVLNode node); //sets right child
+		public IAVLNode getRight(); //returns right child (if there is no right child return null)
+		public void setParent(IAVLNode node); //sets parent
+		public IAVLNode getParent(); //returns the parent (if there is no parent return null)
+		public boolean isRealNode(); // Returns True if this is a non-virtual AVL node
+		public void setSubtreeSize(int size); // sets the number of real nodes in this node's subtree
+		public int getSubtreeSize(); // Returns the number of real nodes in this node's subtree (Should be implemented in O(1))
+		public void setHeight(int height); // sets the height of the node
+		public int getHeight(); // Returns the height of the node (-1 for virtual nodes)
+		public int getSum(); // Returns the sum of all node's keys in the node's subtree.
+	}
+
+	/**
+	 * public class AVLNode
+	 *
+	 * If you wish to implement classes other than AVLTree
+	 * (for example AVLNode), do it in this file, not in 
+	 * another file.
+	 * This class can and must be modified.
+	 * (It must implement IAVLNode)
+	 *
+	 * AVLNode is a static nested class so nodes do not carry a reference to their tree.
+	 */
+	public static class AVLNode implements IAVLNode{
+		private int key = -1; // Contains the node's key.
+		private String info = null; // Contains the node's info.
+
+		private IAVLNode parentNode = null; // Contains the node's parent node.
+		private IAVLNode leftNode = null; // Contains the node's left node.
+		private IAVLNode rightNode = null; // Contains the node's right node.
+
+		private int size = 0; // Contains the number of nodes in the node's subtree.
+		private int height = -1; // Contains the height of the node in the AVLTree.
+		private long sum = 0; // Contains the sum of all node's keys in the node's subtree.
+
+		//Use only if creating a virtual node.(default)
+		//The tree itself never calls this, all of its virtual positions share VIRTUAL_NODE.
+		public AVLNode() {
+
+		}
+		//Use only if creating a leaf. (real node)
+		public AVLNode(int k, String i, IAVLNode parent) {
+			this.key = k;
+			this.info = i;
+
+			this.parentNode = parent;
+			this.leftNode = VIRTUAL_NODE; //shared virtual node
+			this.rightNode = VIRTUAL_NODE;//shared virtual node
+
+			this.height = 0;
+			this.size = 1;
+			this.sum = k;
+		}
+		/**
+		 * @return the node key.
+		 */
+		public int getKey()
+		{
+			return this.key;
+		}
+		/**
+		 * @return the node value.
+		 */
+		public String getValue()
+		{
+			return this.info;
+		}
+		/**
+		 * @param node the reference of the node to be set as the left node.
+		 */
+		public void setLeft(IAVLNode node)
+		{
+			this.leftNode = node;
+		}
+		/**
+		 * @return the left node reference.
+		 */
+		public IAVLNode getLeft()
+		{
+			return this.leftNode;
+		}
+		/**
+		 * @param node the reference of the node to be set as the right node.
+		 */
+		public void setRight(IAVLNode node)
+		{
+			this.rightNode = node;
+		}
+		/**
+		 * @return the right node reference.
+		 */
+		public IAVLNode getRight()
+		{
+			return this.rightNode;
+		}
+		/**
+		 * @param node the reference of the node to be set as the parent node.
+		 */
+		public void setParent(IAVLNode node)
+		{
+			this.parentNode = node;
+		}
+		/**
+		 * @return the parent node reference.
+		 */
+		public IAVLNode getParent()
+		{
+			return this.parentNode;
+		}
+		/**
+		 *  @return True if this is a non-virtual AVL node, Flase otherwise.
+		 */
+		public boolean isRealNode()
+		{
+			if(this.key == -1)
+				return false;
+			else
+				return true;
+		}
+		/**
+		 * @param size is the value to be set as the node's subtree size.
+		 */
+		public void setSubtreeSize(int size)
+		{
+			this.size = size;
+		}
+		/**
+		 * @return the nodes's subtree size.
+		 */
+		public int getSubtreeSize()
+		{
+			return this.size;
+		}
+		/**
+		 * @param height is the value to be set as the node's height.
+		 */
+		public void setHeight(int height)
+		{
+			this.height = height;
+		}
+		/**
+		 * @return the nodes's height.
+		 */
+		public int getHeight()
+		{
+			return height;
+		}
+		/**
+		 * @param sum is the value to be set as the node's subtree sum.
+		 */
+		public void setSum(long sum) {
+			this.sum = sum;
+		}
+		/**
+		 * @return the nodes's subtree sum, wrapped to an int.
+		 */
+		public int getSum() {
+			return (int) this.sum;
+		}
+		/**
+		 * @return the nodes's exact subtree sum.
+		 */
+		public long getLongSum() {
+			return this.sum;
+		}
+		/**
+		 * Makes a pooled node a leaf with the given item, like the leaf constructor.
+		 */
+		private void reuse(int k, String i, IAVLNode parent) {
+			this.key = k;
+			this.info = i;
+
+			this.parentNode = parent;
+			this.leftNode = VIRTUAL_NODE;
+			this.rightNode = VIRTUAL_NODE;
+
+			this.height = 0;
+			this.size = 1;
+			this.sum = k;
+		}
+		/**
+		 * Clears a node which left its tree, so it looks virtual, and links it to next in the node pool.
+		 */
+		private void release(AVLNode next) {
+			this.key = -1;
+			this.info = null;
+
+			this.parentNode = next;
+			this.leftNode = VIRTUAL_NODE;
+			this.rightNode = VIRTUAL_NODE;
+
+			this.height = -1;
+			this.size = 0;
+			this.sum = 0;
+		}
+	}
+
+	/**
+	 * private static final class VirtualNode
+	 *
+	 * The shared virtual node (key -1, height -1, size 0, sum 0).
+	 * Since it is shared by all trees its state never changes, so all setters are ignored.
+	 */
+	private static final class VirtualNode extends AVLNode{
+		public void setLeft(IAVLNode node) {}
+		public void setRight(IAVLNode node) {}
+		public void setParent(IAVLNode node) {}
+		public void setSubtreeSize(int size) {}
+		public void setHeight(int height) {}
+		public void setSum(long sum) {}
+	}
+
+	/**
+	 * public interface Aggregate<A>
+	 *
+	 * A monoid over the items of a tree: identity() is the aggregate of no items, of(key, value)
+	 * the aggregate of one item and combine is associative, with identity() neutral on both sides.
+	 * combine gets its arguments in key order, so it does not need to be commutative.
+	 * A tree keeps the aggregates given to its constructor in every node, and rangeAggregate
+	 * answers them for any key range. The built-in aggregates are the constants below.
+	 */
+	public interface Aggregate<A> {
+		public A identity();
+		public A of(int key, String value);
+		public A combine(A left, A right);
+
+		/** The sum of the keys, as a long. */
+		public static final Aggregate<Long> KEY_SUM = new LongAggregate() {
+			protected long ofItem(int key, String value) {return key;}
+		};
+		/** The number of items. */
+		public static final Aggregate<Long> COUNT = new LongAggregate() {
+			protected long ofItem(int key, String value) {return 1;}
+		};
+		/** The sum of the squares of the keys, as a long (exact while it is below 2^63). */
+		public static final Aggregate<Long> KEY_SQUARE_SUM = new LongAggregate() {
+			protected long ofItem(int key, String value) {return (long) key * key;}
+		};
+		/** The smallest value (by String order), ignoring null values; null if there is none. */
+		public static final Aggregate<String> MIN_VALUE = new ValueAggregate(false);
+		/** The largest value (by String order), ignoring null values; null if there is none. */
+		public static final Aggregate<String> MAX_VALUE = new ValueAggregate(true);
+	}
+
+	/**
+	 * private abstract static class LongAggregate
+	 *
+	 * A sum of a long computed from every item.
+	 */
+	private abstract static class LongAggregate implements Aggregate<Long> {
+		private static final Long ZERO = 0L;
+
+		protected abstract long ofItem(int key, String value);
+
+		public Long identity() {
+			return ZERO;
+		}
+		public Long of(int key, String value) {
+			return ofItem(key, value);
+		}
+		public Long combine(Long left, Long right) {
+			return left + right;
+		}
+	}
+
+	/**
+	 * private static final class ValueAggregate
+	 *
+	 * The minimum or maximum of the non-null values.
+	 */
+	private static final class ValueAggregate implements Aggregate<String> {
+		private final boolean max;
+
+		private ValueAggregate(boolean max) {
+			this.max = max;
+		}
+
+		public String identity() {
+			return null;
+		}
+		public String of(int key, String value) {
+			return value;
+		}
+		public String combine(String left, String right) {
+			if(left == null)
+				return right;
+			if(right == null)
+				return left;
+			boolean leftWins = this.max ? left.compareTo(right) >= 0 : left.compareTo(right) <= 0;
+			return leftWins ? left : right;
+		}
+	}
+
+	/**
+	 * private static final class AggregateNode
+	 *
+	 * A real node of a tree which keeps aggregates: aggregates[j] is the value of the
+	 * tree's j'th aggregate over this node's subtree. Trees without aggregates use plain
+	 * AVLNodes, so they do not pay for the extra field.
+	 */
+	private static final class AggregateNode extends AVLNode {
+		private final Object[] aggregates;
+
+		private AggregateNode(int k, String i, IAVLNode parent, int count) {
+			super(k, i, parent);
+			this.aggregates = new Object[count];
+		}
+	}
+
+	/**
+	 * public abstract static class SlotAVLTree
+	 *
+	 * The AVLTree algorithms over nodes addressed by int slot instead of AVLNode objects.
+	 * Every node is a record of key, info, left/right/parent links, height, size and sum,
+	 * and subclasses decide where the records are stored.
+	 * Slot 0 is the virtual node. Deleted slots are kept in a free list (linked through the left link).
+	 *
+	 * The semantics of every public method are the same as in AVLTree.
+	 */
+	public abstract static class SlotAVLTree {
+
+		protected static final int NIL = 0; // The slot of the virtual node.
+
+		private int root = NIL; // The slot which is the root of the tree.
+		private int minSlot = NIL; // The slot which contains the minimum key in the tree.
+		private int maxSlot = NIL; // The slot which contains the maximum key in the tree.
+
+		private int freeHead = NIL; // The first slot of the free list.
+		private int nextSlot = 1; // The first slot that has never been used.
+
+		/*/*************************************************
+		 * 					Record Storage				   *
+		 ***************************************************/
+		/*
+		 * Subclasses store the records. The virtual slot must read as
+		 * key -1, info null, height -1, size 0 and sum 0, and is never written.
+		 */
+		protected abstract int key(int x);
+		protected abstract void setKey(int x, int k);
+		protected abstract String value(int x);
+		protected abstract void setValue(int x, String i);
+		protected abstract int left(int x);
+		protected abstract void setLeft(int x, int l);
+		protected abstract int right(int x);
+		protected abstract void setRight(int x, int r);
+		protected abstract int parent(int x);
+		protected abstract void setParent(int x, int p);
+		protected abstract int height(int x);
+		protected abstract void setHeight(int x, int h);
+		protected abstract int size(int x);
+		protected abstract void setSize(int x, int s);
+		protected abstract int sum(int x);
+		protected abstract void setSum(int x, int s);
+
+		/**
+		 * Makes sure slots 0..capacity-1 can be stored.
+		 */
+		protected abstract void ensureCapacity(int capacity);
+		/*/*************************************************/
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return this.root == NIL;
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String search(int k) {
+			int x = this.root;
+			while(x != NIL) {
+				int key = key(x);
+				if(k == key)
+					return value(x);
+				x = (k < key) ? left(x) : right(x);
+			}
+			return null;
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int insert(int k, String i) {
+			if(k < 1) { //Insert k only if k is a natural number
+				return 0;
+			}
+			int y = NIL; //The last slot on the path to k.
+			int x = this.root;
+			while(x != NIL) {
+				y = x;
+				int key = key(x);
+				if(k == key)
+					return -1;
+				x = (k < key) ? left(x) : right(x);
+			}
+
+			int slot = allocateSlot(k, i, y);
+			if(y == NIL) { //Empty tree
+				this.root = slot;
+				this.minSlot = slot;
+				this.maxSlot = slot;
+				return 0;
+			}
+			if(k < key(y))
+				setLeft(y, slot);
+			else
+				setRight(y, slot);
+
+			if(k > key(this.maxSlot))
+				this.maxSlot = slot;
+			else if(k < key(this.minSlot))
+				this.minSlot = slot;
+
+			return retrace(y);
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree, if it is there.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+		 * returns -1 if an item with key k was not found in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int delete(int k) {
+			if(k < 1) { //If k is not a natural number then it could not have been inserted.
+				return -1;
+			}
+			int z = this.root;
+			while(z != NIL && key(z) != k) {
+				z = (k < key(z)) ? left(z) : right(z);
+			}
+			if(z == NIL) //k was not found
+				return -1;
+
+			boolean wasMin = (z == this.minSlot);
+			boolean wasMax = (z == this.maxSlot);
+
+			/* A slot with two children takes the item of its successor, and the successor slot is removed instead */
+			int removed = z;
+			if(left(z) != NIL && right(z) != NIL) {
+				removed = minInSubtree(right(z));
+				setKey(z, key(removed));
+				setValue(z, value(removed));
+				if(removed == this.maxSlot)
+					wasMax = true;
+			}
+
+			/* removed has at most one child, bypass it */
+			int child = (left(removed) != NIL) ? left(removed) : right(removed);
+			int p = parent(removed);
+			if(child != NIL)
+				setParent(child, p);
+			replaceChild(p, removed, child);
+			freeSlot(removed);
+
+			int numOfRot = retrace(p);
+
+			if(this.root == NIL) {
+				this.minSlot = NIL;
+				this.maxSlot = NIL;
+			}
+			else {
+				if(wasMin)
+					this.minSlot = minInSubtree(this.root);
+				if(wasMax)
+					this.maxSlot = maxInSubtree(this.root);
+			}
+			return numOfRot;
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public String min() {
+			return value(this.minSlot);
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public String max() {
+			return value(this.maxSlot);
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public int[] keysToArray() {
+			int[] arr = new int[size()];
+			int index = 0;
+			for(int x = this.minSlot; x != NIL; x = successor(x))
+				arr[index++] = key(x);
+			return arr;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public String[] infoToArray() {
+			String[] arr = new String[size()];
+			int index = 0;
+			for(int x = this.minSlot; x != NIL; x = successor(x))
+				arr[index++] = value(x);
+			return arr;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int size() {
+			return size(this.root);
+		}
+
+		/**
+		 * public int less(int i)
+		 *
+		 * Returns the sum of all keys which are less or equal to i
+		 * i is not neccessarily a key in the tree
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int less(int i) {
+			int x = this.root;
+			int lessSum = 0;
+			while(x != NIL) {
+				if(key(x) > i) {
+					x = left(x);
+				}
+				else {
+					lessSum += sum(left(x)) + key(x);
+					x = right(x);
+				}
+			}
+			return lessSum;
+		}
+
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String select(int i) {
+			if(i < 1 || i > size()) {return null;}
+			int x = this.root;
+			while(true) {
+				int rootI = size(left(x)) + 1;
+				if(i == rootI)
+					return value(x);
+				if(i < rootI) {
+					x = left(x);
+				}
+				else {
+					i -= rootI;
+					x = right(x);
+				}
+			}
+		}
+
+		/**
+		 * public IAVLNode getRoot()
+		 *
+		 * Returns a read-only view of the root, or null if the tree is empty.
+		 * Views are created on demand, the tree itself never allocates them.
+		 *
+		 * Complexity: O(1)
+		 */
+		public IAVLNode getRoot() {
+			if(empty())
+				return null;
+			return new SlotNode(this.root);
+		}
+
+		/**
+		 * Forgets all the slots. Used by subclasses which release their storage.
+		 */
+		protected void clearSlots() {
+			this.root = NIL;
+			this.minSlot = NIL;
+			this.maxSlot = NIL;
+			this.freeHead = NIL;
+			this.nextSlot = 1;
+		}
+
+
+		/*/*************************************************
+		 * 				Slot Allocation Methods 		   *
+		 ***************************************************/
+		/**
+		 * @return a slot holding a new leaf with key k, info i and the given parent.
+		 *
+		 * Complexity: O(1) amortized
+		 */
+		private int allocateSlot(int k, String i, int parentSlot) {
+			int slot;
+			if(this.freeHead != NIL) {
+				slot = this.freeHead;
+				this.freeHead = left(slot);
+			}
+			else {
+				ensureCapacity(this.nextSlot + 1);
+				slot = this.nextSlot++;
+			}
+			setKey(slot, k);
+			setValue(slot, i);
+			setLeft(slot, NIL);
+			setRight(slot, NIL);
+			setParent(slot, parentSlot);
+			setHeight(slot, 0);
+			setSize(slot, 1);
+			setSum(slot, k);
+			return slot;
+		}
+
+		/**
+		 * Pushes slot to the free list.
+		 *
+		 * Complexity: O(1)
+		 */
+		private void freeSlot(int slot) {
+			setValue(slot, null); //Let the info be collected.
+			setLeft(slot, this.freeHead);
+			this.freeHead = slot;
+		}
+		/*/*************************************************/
+
+
+		/*/*************************************************
+		 * 					Rotations Methods			   *
+		 ***************************************************/
+		/**
+		 * @param x - A slot on the path from a changed slot.
+		 * @return Number of rotations.
+		 *
+		 * Updates height, size and sum from x up to the root and rotates wherever |BF|=2.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		private int retrace(int x) {
+			int numOfRot = 0;
+			while(x != NIL) {
+				update(x);
+				int bf = height(left(x)) - height(right(x));
+				if(bf == 2) {
+					int l = left(x);
+					if(height(left(l)) < height(right(l))) { //LR
+						rotateLeft(l);
+						numOfRot++;
+					}
+					x = rotateRight(x);
+					numOfRot++;
+				}
+				else if(bf == -2) {
+					int r = right(x);
+					if(height(right(r)) < height(left(r))) { //RL
+						rotateRight(r);
+						numOfRot++;
+					}
+					x = rotateLeft(x);
+					numOfRot++;
+				}
+				x = parent(x);
+			}
+			return numOfRot;
+		}
+
+		/**
+		 * Performs a left rotation on x and returns the slot which replaced it.
+		 *
+		 * Complexity: O(1)
+		 */
+		private int rotateLeft(int x) {
+			int y = right(x);
+			int b = left(y);
+			int p = parent(x);
+
+			setRight(x, b);
+			if(b != NIL)
+				setParent(b, x);
+			setLeft(y, x);
+			setParent(x, y);
+			setParent(y, p);
+			replaceChild(p, x, y);
+
+			update(x);
+			update(y);
+			return y;
+		}
+
+		/**
+		 * Performs a right rotation on x and returns the slot which replaced it.
+		 *
+		 * Complexity: O(1)
+		 */
+		private int rotateRight(int x) {
+			int y = left(x);
+			int b = right(y);
+			int p = parent(x);
+
+			setLeft(x, b);
+			if(b != NIL)
+				setParent(b, x);
+			setRight(y, x);
+			setParent(x, y);
+			setParent(y, p);
+			replaceChild(p, x, y);
+
+			update(x);
+			update(y);
+			return y;
+		}
+
+		/**
+		 * Replaces the child oldChild of p (or the root if p is NIL) with newChild.
+		 */
+		private void replaceChild(int p, int oldChild, int newChild) {
+			if(p == NIL)
+				this.root = newChild;
+			else if(left(p) == oldChild)
+				setLeft(p, newChild);
+			else
+				setRight(p, newChild);
+		}
+
+		/**
+		 * Recomputes height, size and sum of x from its children.
+		 *
+		 * Complexity: O(1)
+		 */
+		private void update(int x) {
+			int l = left(x);
+			int r = right(x);
+			setHeight(x, 1 + Math.max(height(l), height(r)));
+			setSize(x, 1 + size(l) + size(r));
+			setSum(x, key(x) + sum(l) + sum(r));
+		}
+		/*/*************************************************/
+
+
+		/*/*************************************************
+		 * 					General Methods 			   *
+		 ***************************************************/
+		private int minInSubtree(int x) {
+			while(left(x) != NIL)
+				x = left(x);
+			return x;
+		}
+
+		private int maxInSubtree(int x) {
+			while(right(x) != NIL)
+				x = right(x);
+			return x;
+		}
+
+		/**
+		 * @return The successor slot of x. Returns NIL if x is the maximum slot.
+		 */
+		private int successor(int x) {
+			if(right(x) != NIL)
+				return minInSubtree(right(x));
+			int p = parent(x);
+			while(p != NIL && x == right(p)) {
+				x = p;
+				p = parent(x);
+			}
+			return p;
+		}
+		/*/*************************************************/
+
+		/**
+		 * private class SlotNode
+		 *
+		 * A read-only IAVLNode view of a slot. Setters throw UnsupportedOperationException,
+		 * the tree can only be changed through insert and delete.
+		 */
+		private class SlotNode implements IAVLNode{
+			private final int slot;
+
+			private SlotNode(int slot) {
+				this.slot = slot;
+			}
+			public int getKey() {
+				return key(this.slot);
+			}
+			public String getValue() {
+				return value(this.slot);
+			}
+			public void setLeft(IAVLNode node) {
+				throw new UnsupportedOperationException("Read-only slot view");
+			}
+			public IAVLNode getLeft() {
+				return isRealNode() ? new SlotNode(left(this.slot)) : null;
+			}
+			public void setRight(IAVLNode node) {
+				throw new UnsupportedOperationException("Read-only slot view");
+			}
+			public IAVLNode getRight() {
+				return isRealNode() ? new SlotNode(right(this.slot)) : null;
+			}
+			public void setParent(IAVLNode node) {
+				throw new UnsupportedOperationException("Read-only slot view");
+			}
+			public IAVLNode getParent() {
+				return (isRealNode() && parent(this.slot) != NIL) ? new SlotNode(parent(this.slot)) : null;
+			}
+			public boolean isRealNode() {
+				return this.slot != NIL;
+			}
+			public void setSubtreeSize(int size) {
+				throw new UnsupportedOperationException("Read-only slot view");
+			}
+			public int getSubtreeSize() {
+				return size(this.slot);
+			}
+			public void setHeight(int height) {
+				throw new UnsupportedOperationException("Read-only slot view");
+			}
+			public int getHeight() {
+				return height(this.slot);
+			}
+			public int getSum() {
+				return sum(this.slot);
+			}
+		}
+	}
+
+	/**
+	 * public static final class ArrayAVLTree
+	 *
+	 * A SlotAVLTree which stores keys, info, links, heights, subtree sizes and sums
+	 * in parallel primitive arrays indexed by slot.
+	 */
+	public static final class ArrayAVLTree extends SlotAVLTree {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private int[] keys = new int[INITIAL_CAPACITY]; // The key of every slot.
+		private String[] values = new String[INITIAL_CAPACITY]; // The info of every slot.
+		private int[] left = new int[INITIAL_CAPACITY]; // The left child slot (next free slot for free slots).
+		private int[] right = new int[INITIAL_CAPACITY]; // The right child slot.
+		private int[] parent = new int[INITIAL_CAPACITY]; // The parent slot.
+		private int[] height = new int[INITIAL_CAPACITY]; // The height of the slot's subtree.
+		private int[] size = new int[INITIAL_CAPACITY]; // The number of real slots in the slot's subtree.
+		private int[] sum = new int[INITIAL_CAPACITY]; // The sum of the keys in the slot's subtree.
+
+		public ArrayAVLTree() {
+			this.keys[NIL] = -1;
+			this.height[NIL] = -1;
+		}
+
+		protected int key(int x) {return this.keys[x];}
+		protected void setKey(int x, int k) {this.keys[x] = k;}
+		protected String value(int x) {return this.values[x];}
+		protected void setValue(int x, String i) {this.values[x] = i;}
+		protected int left(int x) {return this.left[x];}
+		protected void setLeft(int x, int l) {this.left[x] = l;}
+		protected int right(int x) {return this.right[x];}
+		protected void setRight(int x, int r) {this.right[x] = r;}
+		protected int parent(int x) {return this.parent[x];}
+		protected void setParent(int x, int p) {this.parent[x] = p;}
+		protected int height(int x) {return this.height[x];}
+		protected void setHeight(int x, int h) {this.height[x] = h;}
+		protected int size(int x) {return this.size[x];}
+		protected void setSize(int x, int s) {this.size[x] = s;}
+		protected int sum(int x) {return this.sum[x];}
+		protected void setSum(int x, int s) {this.sum[x] = s;}
+
+		/**
+		 * Doubles the capacity of all the arrays until capacity slots fit.
+		 *
+		 * Complexity: O(n)
+		 */
+		protected void ensureCapacity(int capacity) {
+			if(capacity <= this.keys.length)
+				return;
+			int newCapacity = Math.max(capacity, this.keys.length * 2);
+			this.keys = java.util.Arrays.copyOf(this.keys, newCapacity);
+			this.values = java.util.Arrays.copyOf(this.values, newCapacity);
+			this.left = java.util.Arrays.copyOf(this.left, newCapacity);
+			this.right = java.util.Arrays.copyOf(this.right, newCapacity);
+			this.parent = java.util.Arrays.copyOf(this.parent, newCapacity);
+			this.height = java.util.Arrays.copyOf(this.height, newCapacity);
+			this.size = java.util.Arrays.copyOf(this.size, newCapacity);
+			this.sum = java.util.Arrays.copyOf(this.sum, newCapacity);
+		}
+	}
+
+	/**
+	 * public static final class OffHeapAVLTree
+	 *
+	 * A SlotAVLTree whose node records (key, links, height, size and sum) live off-heap,
+	 * in direct memory slabs that are added as the tree grows. Only the info strings stay on the heap.
+	 * Deleted slots are reused, slabs are only released by close().
+	 *
+	 * close() frees all the slabs immediately. A closed tree is empty and rejects inserts.
+	 */
+	public static final class OffHeapAVLTree extends SlotAVLTree implements AutoCloseable {
+
+		private static final int SLAB_SHIFT = 16; // Every slab holds 2^16 records.
+		private static final int SLAB_RECORDS = 1 << SLAB_SHIFT;
+		private static final int SLAB_MASK = SLAB_RECORDS - 1;
+
+		/* Record layout, in bytes */
+		private static final int KEY = 0;
+		private static final int LEFT = 4;
+		private static final int RIGHT = 8;
+		private static final int PARENT = 12;
+		private static final int HEIGHT = 16;
+		private static final int SIZE = 20;
+		private static final int SUM = 24;
+		private static final int RECORD_BYTES = 28;
+
+		private java.nio.ByteBuffer[] slabs = new java.nio.ByteBuffer[0]; // The off-heap records.
+		private String[][] values = new String[0][]; // The info of every slot, in chunks matching the slabs.
+		private boolean closed = false;
+
+		public OffHeapAVLTree() {
+			ensureCapacity(1);
+			setVirtualSlot();
+		}
+
+		protected int key(int x) {return slab(x).getInt(offset(x) + KEY);}
+		protected void setKey(int x, int k) {slab(x).putInt(offset(x) + KEY, k);}
+		protected String value(int x) {return this.values[x >>> SLAB_SHIFT][x & SLAB_MASK];}
+		protected void setValue(int x, String i) {this.values[x >>> SLAB_SHIFT][x & SLAB_MASK] = i;}
+		protected int left(int x) {return slab(x).getInt(offset(x) + LEFT);}
+		protected void setLeft(int x, int l) {slab(x).putInt(offset(x) + LEFT, l);}
+		protected int right(int x) {return slab(x).getInt(offset(x) + RIGHT);}
+		protected void setRight(int x, int r) {slab(x).putInt(offset(x) + RIGHT, r);}
+		protected int parent(int x) {return slab(x).getInt(offset(x) + PARENT);}
+		protected void setParent(int x, int p) {slab(x).putInt(offset(x) + PARENT, p);}
+		protected int height(int x) {return slab(x).getInt(offset(x) + HEIGHT);}
+		protected void setHeight(int x, int h) {slab(x).putInt(offset(x) + HEIGHT, h);}
+		protected int size(int x) {return slab(x).getInt(offset(x) + SIZE);}
+		protected void setSize(int x, int s) {slab(x).putInt(offset(x) + SIZE, s);}
+		protected int sum(int x) {return slab(x).getInt(offset(x) + SUM);}
+		protected void setSum(int x, int s) {slab(x).putInt(offset(x) + SUM, s);}
+
+		private java.nio.ByteBuffer slab(int x) {
+			return this.slabs[x >>> SLAB_SHIFT];
+		}
+
+		private static int offset(int x) {
+			return (x & SLAB_MASK) * RECORD_BYTES;
+		}
+
+		/**
+		 * Adds slabs until capacity slots fit.
+		 *
+		 * Complexity: O(number of slabs) per added slab
+		 */
+		protected void ensureCapacity(int capacity) {
+			if(this.closed)
+				throw new IllegalStateException("The tree is closed");
+			while(this.slabs.length * SLAB_RECORDS < capacity) {
+				int n = this.slabs.length;
+				this.slabs = java.util.Arrays.copyOf(this.slabs, n + 1);
+				this.slabs[n] = java.nio.ByteBuffer.allocateDirect(SLAB_RECORDS * RECORD_BYTES).order(java.nio.ByteOrder.nativeOrder());
+				this.values = java.util.Arrays.copyOf(this.values, n + 1);
+				this.values[n] = new String[SLAB_RECORDS];
+			}
+		}
+
+		/**
+		 * public long offHeapBytes()
+		 *
+		 * Returns the number of off-heap bytes currently held by the tree.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long offHeapBytes() {
+			return this.closed ? 0 : (long) this.slabs.length * SLAB_RECORDS * RECORD_BYTES;
+		}
+
+		/**
+		 * public void close()
+		 *
+		 * Frees all the off-heap slabs. Afterwards the tree is empty and insert throws IllegalStateException.
+		 * Calling close() more than once has no effect.
+		 *
+		 * Complexity: O(number of slabs)
+		 */
+		public void close() {
+			if(this.closed)
+				return;
+			this.closed = true;
+			java.nio.ByteBuffer[] released = this.slabs;
+			clearSlots();
+			/* Keep a single heap record for the virtual slot, so a closed tree still reads as empty */
+			this.slabs = new java.nio.ByteBuffer[] {java.nio.ByteBuffer.allocate(RECORD_BYTES).order(java.nio.ByteOrder.nativeOrder())};
+			this.values = new String[][] {new String[1]};
+			setVirtualSlot();
+			for(java.nio.ByteBuffer slab : released)
+				freeDirect(slab);
+		}
+
+		private void setVirtualSlot() {
+			setKey(NIL, -1);
+			setHeight(NIL, -1);
+		}
+
+		/*
+		 * Direct buffers are normally freed only when they are garbage collected.
+		 * sun.misc.Unsafe.invokeCleaner frees one right away, and is looked up reflectively
+		 * since it is not part of the standard API. Without it, the slabs are left to the collector.
+		 */
+		private static final java.lang.reflect.Method INVOKE_CLEANER;
+		private static final Object UNSAFE;
+		static {
+			java.lang.reflect.Method invokeCleaner = null;
+			Object unsafe = null;
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				java.lang.reflect.Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				unsafe = theUnsafe.get(null);
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				invokeCleaner = null;
+				unsafe = null;
+			}
+			INVOKE_CLEANER = invokeCleaner;
+			UNSAFE = unsafe;
+		}
+
+		private static void freeDirect(java.nio.ByteBuffer slab) {
+			if(INVOKE_CLEANER == null)
+				return;
+			try {
+				INVOKE_CLEANER.invoke(UNSAFE, slab);
+			} catch (ReflectiveOperationException e) {
+				//The slab will be freed by the garbage collector.
+			}
+		}
+	}
+
+	/**
+	 * public static class ConcurrentAVLTree
+	 *
+	 * A thread-safe AVLTree guarded by a StampedLock.
+	 * search, select, less, min, max, size and empty first run as optimistic reads
+	 * without taking any lock, and validate the stamp afterwards. If a writer was active
+	 * they run again under the read lock. insert and delete take the write lock.
+	 *
+	 * An optimistic read may observe a rotation half done, so it never trusts the structure:
+	 * descents are bounded by MAX_STEPS and any exception counts as a failed validation.
+	 */
+	public static class ConcurrentAVLTree {
+
+		/* An AVL tree with at most 2^31 nodes is less than 46 levels high, a longer descent saw a tree mid-rotation */
+		private static final int MAX_STEPS = 64;
+
+		private final AVLTree tree = new AVLTree();
+		private final java.util.concurrent.locks.StampedLock lock = new java.util.concurrent.locks.StampedLock();
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return size() == 0;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int size() {
+			long stamp = this.lock.tryOptimisticRead();
+			int size = this.tree.rootNode.getSubtreeSize();
+			if(this.lock.validate(stamp))
+				return size;
+			stamp = this.lock.readLock();
+			try {
+				return this.tree.size();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String search(int k) {
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0L) {
+				try {
+					IAVLNode node = this.tree.rootNode;
+					for(int steps = 0; node.isRealNode() && steps < MAX_STEPS; steps++) {
+						int key = node.getKey();
+						if(k == key)
+							break;
+						node = (k < key) ? node.getLeft() : node.getRight();
+					}
+					String result = node.getValue();
+					if(this.lock.validate(stamp))
+						return result;
+				} catch (RuntimeException e) {
+					//Saw the tree during a write, retry under the read lock.
+				}
+			}
+			stamp = this.lock.readLock();
+			try {
+				return this.tree.search(k);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public String min() {
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0L) {
+				try {
+					IAVLNode node = this.tree.minNode;
+					String result = (node == null) ? null : node.getValue();
+					if(this.lock.validate(stamp))
+						return result;
+				} catch (RuntimeException e) {
+					//Saw the tree during a write, retry under the read lock.
+				}
+			}
+			stamp = this.lock.readLock();
+			try {
+				return this.tree.min();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public String max() {
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0L) {
+				try {
+					IAVLNode node = this.tree.maxNode;
+					String result = (node == null) ? null : node.getValue();
+					if(this.lock.validate(stamp))
+						return result;
+				} catch (RuntimeException e) {
+					//Saw the tree during a write, retry under the read lock.
+				}
+			}
+			stamp = this.lock.readLock();
+			try {
+				return this.tree.max();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String select(int i) {
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0L) {
+				try {
+					IAVLNode node = this.tree.rootNode;
+					String result = null;
+					if(i >= 1 && i <= node.getSubtreeSize()) {
+						for(int steps = 0; node.isRealNode() && steps < MAX_STEPS; steps++) {
+							int rootI = node.getLeft().getSubtreeSize() + 1;
+							if(i == rootI) {
+								result = node.getValue();
+								break;
+							}
+							if(i < rootI) {
+								node = node.getLeft();
+							}
+							else {
+								i -= rootI;
+								node = node.getRight();
+							}
+						}
+					}
+					if(this.lock.validate(stamp))
+						return result;
+				} catch (RuntimeException e) {
+					//Saw the tree during a write, retry under the read lock.
+				}
+			}
+			stamp = this.lock.readLock();
+			try {
+				return this.tree.select(i);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public int less(int i)
+		 *
+		 * Returns the sum of all keys which are less or equal to i
+		 * i is not neccessarily a key in the tree
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int less(int i) {
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0L) {
+				try {
+					IAVLNode node = this.tree.rootNode;
+					int lessSum = 0;
+					for(int steps = 0; node.isRealNode() && steps < MAX_STEPS; steps++) {
+						if(node.getKey() > i) {
+							node = node.getLeft();
+						}
+						else {
+							lessSum += node.getLeft().getSum() + node.getKey();
+							node = node.getRight();
+						}
+					}
+					if(this.lock.validate(stamp))
+						return lessSum;
+				} catch (RuntimeException e) {
+					//Saw the tree during a write, retry under the read lock.
+				}
+			}
+			stamp = this.lock.readLock();
+			try {
+				return this.tree.less(i);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree.
+		 * Runs under the read lock, since a full traversal would rarely validate.
+		 *
+		 * Complexity: O(n)
+		 */
+		public int[] keysToArray() {
+			long stamp = this.lock.readLock();
+			try {
+				return this.tree.keysToArray();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree, sorted by their respective keys.
+		 * Runs under the read lock, since a full traversal would rarely validate.
+		 *
+		 * Complexity: O(n)
+		 */
+		public String[] infoToArray() {
+			long stamp = this.lock.readLock();
+			try {
+				return this.tree.infoToArray();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * Same as AVLTree.insert, under the write lock.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int insert(int k, String i) {
+			long stamp = this.lock.writeLock();
+			try {
+				return this.tree.insert(k, i);
+			} finally {
+				this.lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * Same as AVLTree.delete, under the write lock.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int delete(int k) {
+			long stamp = this.lock.writeLock();
+			try {
+				return this.tree.delete(k);
+			} finally {
+				this.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * public static class OptimisticAVLTree
+	 *
+	 * A concurrent AVL tree whose reads never lock and whose writers lock only the nodes they change.
+	 *
+	 * Every node has a version stamp, which is odd while a writer changes the node's links
+	 * and is advanced whenever the node's links, its key range or its place in the tree change.
+	 * Reads walk hand over hand: they read a child and the child's version, then check that the
+	 * parent's version did not move, so the child really was the parent's child on their path.
+	 * A failed check restarts the descent. Writers only touch the versions of the nodes on their
+	 * path and rotations, so a read is disturbed only by writes near its own path.
+	 *
+	 * Every node also has a lock word. An insert locks the parent of the new leaf, a delete locks
+	 * the removed node, its parent and (for a node with two children) the path down to its successor.
+	 * The retrace up to the root then locks one parent and child at a time, and also the child (and grandchild)
+	 * of a rotation, recomputing heights, sizes and sums. Locks are taken top down, so writers cannot deadlock,
+	 * and writers in different subtrees only meet for the short recomputation of their common ancestors.
+	 *
+	 * Sizes and sums reach the root lazily, as each writer retraces. select, less and size read them
+	 * with the same node by node validation as search, so their results are exact when no write is in progress,
+	 * and otherwise count every completed write and possibly some of the writes still retracing.
+	 * While writes contend, balance is relaxed: a rotation which saw a height still being updated
+	 * may leave a node off by more than one, and the retrace which updates that height repairs it later.
+	 */
+	public static class OptimisticAVLTree {
+
+		/* An AVL tree with at most 2^31 nodes is less than 46 levels high, a longer descent saw a tree mid-rotation */
+		private static final int MAX_STEPS = 64;
+		private static final int SPINS_BEFORE_YIELD = 64;
+
+		/* The root is holder.right. holder's key is below every key, so descents never go left from it */
+		private final VNode holder = new VNode(Integer.MIN_VALUE, null, null);
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return this.holder.right == null;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 * While writes are retracing, the root may not count them yet.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int size() {
+			return size(this.holder.right);
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * Never locks.
+		 *
+		 * Complexity: O(h)=O(log(n)) when not disturbed by a write on its path
+		 */
+		public String search(int k) {
+			VNode node = findNode(k);
+			return (node == null) ? null : node.value;
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * Never locks.
+		 *
+		 * Complexity: O(h)=O(log(n)), writers would all contend on a minimum pointer.
+		 */
+		public String min() {
+			VNode node = extremeNode(false);
+			return (node == null) ? null : node.value;
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * Never locks.
+		 *
+		 * Complexity: O(h)=O(log(n)), writers would all contend on a maximum pointer.
+		 */
+		public String max() {
+			VNode node = extremeNode(true);
+			return (node == null) ? null : node.value;
+		}
+
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+		 * Never locks: every subtree size is read from a node whose version is then validated.
+		 *
+		 * Complexity: O(h)=O(log(n)) when not disturbed by a write on its path
+		 */
+		public String select(int i) {
+			retry:
+			while(true) {
+				VNode parent = this.holder;
+				long parentVersion = stableVersion(parent);
+				VNode node = parent.right;
+				if(i < 1 || i > size(node)) {
+					if(parent.version == parentVersion)
+						return null;
+					continue retry;
+				}
+				int index = i;
+				for(int steps = 0; steps < MAX_STEPS; steps++) {
+					if(node == null)
+						continue retry; //The sizes on the path were read in the middle of a retrace.
+					long nodeVersion = stableVersion(node);
+					if(parent.version != parentVersion)
+						continue retry;
+					VNode left = node.left;
+					int rootI = size(left) + 1;
+					if(node.version != nodeVersion)
+						continue retry;
+					if(index == rootI)
+						return node.value;
+					parent = node;
+					parentVersion = nodeVersion;
+					if(index < rootI) {
+						node = left;
+					}
+					else {
+						index -= rootI;
+						node = node.right;
+					}
+				}
+			}
+		}
+
+		/**
+		 * public int less(int i)
+		 *
+		 * Returns the sum of all keys which are less or equal to i
+		 * Never locks: every subtree sum is read from a node whose version is then validated.
+		 *
+		 * Complexity: O(h)=O(log(n)) when not disturbed by a write on its path
+		 */
+		public int less(int i) {
+			retry:
+			while(true) {
+				VNode parent = this.holder;
+				long parentVersion = stableVersion(parent);
+				VNode node = parent.right;
+				int lessSum = 0;
+				for(int steps = 0; steps < MAX_STEPS; steps++) {
+					if(node == null) {
+						if(parent.version == parentVersion)
+							return lessSum;
+						continue retry;
+					}
+					long nodeVersion = stableVersion(node);
+					if(parent.version != parentVersion)
+						continue retry;
+					parent = node;
+					parentVersion = nodeVersion;
+					if(node.key > i) {
+						node = node.left;
+					}
+					else {
+						VNode left = node.left;
+						lessSum += sum(left) + node.key;
+						if(node.version != nodeVersion)
+							continue retry;
+						node = node.right;
+					}
+				}
+			}
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree.
+		 * Never locks. The array holds every key which was in the tree during the whole call,
+		 * and may or may not hold keys inserted or deleted during it.
+		 *
+		 * Complexity: O(n) when not disturbed by writes
+		 */
+		public int[] keysToArray() {
+			VNode[] nodes = nodesInOrder();
+			int[] arr = new int[nodes.length];
+			for(int j = 0; j < nodes.length; j++)
+				arr[j] = nodes[j].key;
+			return arr;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree, sorted by their respective keys.
+		 * Never locks, and sees the tree like keysToArray.
+		 *
+		 * Complexity: O(n) when not disturbed by writes
+		 */
+		public String[] infoToArray() {
+			VNode[] nodes = nodesInOrder();
+			String[] arr = new String[nodes.length];
+			for(int j = 0; j < nodes.length; j++)
+				arr[j] = nodes[j].value;
+			return arr;
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * Same as AVLTree.insert. Locks the parent of the new leaf, and then the nodes of the retrace.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int insert(int k, String i) {
+			if(k < 1) { //Insert k only if k is a natural number
+				return 0;
+			}
+			while(true) {
+				/* Find the parent of the new leaf, like search */
+				VNode y;
+				long yVersion;
+				retry:
+				while(true) {
+					VNode parent = this.holder;
+					long parentVersion = stableVersion(parent);
+					VNode node = parent.right;
+					while(true) {
+						if(node == null) {
+							if(parent.version != parentVersion)
+								continue retry;
+							y = parent;
+							yVersion = parentVersion;
+							break retry;
+						}
+						long nodeVersion = stableVersion(node);
+						if(parent.version != parentVersion)
+							continue retry;
+						if(k == node.key)
+							return -1;
+						parent = node;
+						parentVersion = nodeVersion;
+						node = (k < node.key) ? node.left : node.right;
+					}
+				}
+
+				lockNode(y);
+				if(y.version != yVersion) { //y changed after the search, so the leaf may belong elsewhere now
+					unlockNode(y);
+					continue;
+				}
+				VNode newNode = new VNode(k, i, y);
+				beginChange(y);
+				if(k < y.key)
+					y.left = newNode;
+				else
+					y.right = newNode;
+				endChange(y);
+				unlockNode(y);
+				return retrace(y);
+			}
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * Same as AVLTree.delete. Locks the removed node, its parent and the path to its successor,
+		 * and then the nodes of the retrace.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int delete(int k) {
+			if(k < 1) { //If k is not a natural number then it could not have been inserted.
+				return -1;
+			}
+			while(true) {
+				VNode z = findNode(k);
+				if(z == null) //k was not found
+					return -1;
+				VNode p = lockParent(z);
+				if(p == null) //Another writer deleted z first
+					continue;
+				lockNode(z);
+
+				VNode retraceFrom;
+				if(z.left == null || z.right == null) { //Bypass z
+					VNode child = (z.left != null) ? z.left : z.right;
+					beginChange(p);
+					beginChange(z);
+					if(child != null)
+						child.parent = p;
+					replaceChild(p, z, child);
+					z.unlinked = true;
+					endChange(z);
+					endChange(p);
+					unlockNode(z);
+					unlockNode(p);
+					retraceFrom = p;
+				}
+				else { //Replace z with its successor
+					/*
+					 * Every node from z.right down to the successor loses the successor's key from its range,
+					 * so they are all locked and change version along with z, its parent and the successor.
+					 */
+					VNode first = z.right;
+					lockNode(first);
+					VNode suc = first;
+					while(suc.left != null) {
+						lockNode(suc.left);
+						suc = suc.left;
+					}
+					VNode sucParent = suc.parent;
+					beginChange(p);
+					beginChange(z);
+					for(VNode x = suc; x != z; x = x.parent)
+						beginChange(x);
+
+					if(sucParent != z) {
+						sucParent.left = suc.right;
+						if(suc.right != null)
+							suc.right.parent = sucParent;
+						suc.right = first;
+						first.parent = suc;
+						retraceFrom = sucParent;
+					}
+					else {
+						retraceFrom = suc;
+					}
+					suc.left = z.left;
+					z.left.parent = suc;
+					suc.parent = p;
+					suc.height = z.height;
+					replaceChild(p, z, suc);
+					z.unlinked = true;
+
+					if(sucParent != z) { //Release the path from sucParent up to first, whose links did not change
+						for(VNode x = sucParent; ; ) {
+							VNode up = x.parent;
+							endChange(x);
+							unlockNode(x);
+							if(x == first)
+								break;
+							x = up;
+						}
+					}
+					endChange(suc);
+					unlockNode(suc);
+					endChange(z);
+					unlockNode(z);
+					endChange(p);
+					unlockNode(p);
+				}
+				return retrace(retraceFrom);
+			}
+		}
+
+		/**
+		 * public String checkStructure()
+		 *
+		 * Checks the whole tree, and must be called while no write is in progress.
+		 * Returns null if every node is in key order, is its children's parent, has the height,
+		 * size and sum of its children, has |BF| <= 1, is not locked, has an even version and is
+		 * not marked deleted; otherwise returns a description of the first node which breaks one of these.
+		 *
+		 * Complexity: O(n)
+		 */
+		public String checkStructure() {
+			VNode root = this.holder.right;
+			if(this.holder.lock != 0 || (this.holder.version & 1L) != 0L)
+				return "The root holder is still locked or changing";
+			if(root != null && root.parent != this.holder)
+				return "The root " + root.key + " has a wrong parent";
+			return checkSubtree(root, Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+
+
+		/*/*************************************************
+		 * 				Version Stamp Methods 			   *
+		 ***************************************************/
+		/**
+		 * @return the version of node once no writer is changing it.
+		 */
+		private static long stableVersion(VNode node) {
+			int spins = 0;
+			long version = node.version;
+			while((version & 1L) != 0L) {
+				if(++spins % SPINS_BEFORE_YIELD == 0)
+					Thread.yield();
+				else
+					Thread.onSpinWait();
+				version = node.version;
+			}
+			return version;
+		}
+
+		/* Only the writer holding a node's lock changes its version */
+		private static void beginChange(VNode node) {
+			node.version = node.version + 1; //odd
+		}
+
+		private static void endChange(VNode node) {
+			node.version = node.version + 1; //even
+		}
+		/*/*************************************************/
+
+
+		/*/*************************************************
+		 * 				Node Locking Methods 			   *
+		 ***************************************************/
+		/*
+		 * A writer either holds no lock and locks any node, or locks a child of a node it holds,
+		 * read while holding it. A node's parent pointer is changed only by a writer holding the
+		 * node's old parent, so a locked node keeps the children it has.
+		 */
+		private static void lockNode(VNode node) {
+			int spins = 0;
+			while(node.lock != 0 || !VNode.LOCK.compareAndSet(node, 0, 1)) {
+				if(++spins % SPINS_BEFORE_YIELD == 0)
+					Thread.yield();
+				else
+					Thread.onSpinWait();
+			}
+		}
+
+		private static void unlockNode(VNode node) {
+			VNode.LOCK.lazySet(node, 0);
+		}
+
+		/**
+		 * @return The parent of node, locked, or null if node was deleted from the tree.
+		 * Takes no other lock, so the caller must hold none.
+		 */
+		private static VNode lockParent(VNode node) {
+			while(true) {
+				VNode p = node.parent;
+				lockNode(p);
+				if(node.parent == p && !node.unlinked)
+					return p;
+				unlockNode(p);
+				if(node.unlinked)
+					return null;
+			}
+		}
+		/*/*************************************************/
+
+
+		/*/*************************************************
+		 * 					Rotations Methods			   *
+		 ***************************************************/
+		/**
+		 * @param x - The lowest node whose children changed. Called without holding any lock.
+		 * @return Number of rotations.
+		 *
+		 * Updates height, size and sum from x up to the root, holding one node and its parent
+		 * at a time, and rotates wherever |BF|>=2. Stops at a node whose height, size and sum
+		 * did not change, since a concurrent writer already counted this write there, and at a node
+		 * which was deleted, whose deleter retraces from the node's old place.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		private int retrace(VNode x) {
+			int numOfRot = 0;
+			while(x != this.holder) {
+				VNode p = lockParent(x);
+				if(p == null)
+					return numOfRot;
+				lockNode(x);
+				boolean changed = true;
+				int bf = height(x.left) - height(x.right);
+				if(bf >= 2) {
+					VNode c = x.left;
+					lockNode(c);
+					if(height(c.left) < height(c.right)) { //LR
+						VNode g = c.right;
+						lockNode(g);
+						rotateLeft(c);
+						rotateRight(x);
+						unlockNode(g);
+						numOfRot += 2;
+					}
+					else {
+						rotateRight(x);
+						numOfRot++;
+					}
+					unlockNode(c);
+				}
+				else if(bf <= -2) {
+					VNode c = x.right;
+					lockNode(c);
+					if(height(c.right) < height(c.left)) { //RL
+						VNode g = c.left;
+						lockNode(g);
+						rotateRight(c);
+						rotateLeft(x);
+						unlockNode(g);
+						numOfRot += 2;
+					}
+					else {
+						rotateLeft(x);
+						numOfRot++;
+					}
+					unlockNode(c);
+				}
+				else {
+					changed = update(x);
+				}
+				unlockNode(x);
+				unlockNode(p);
+				if(!changed)
+					return numOfRot;
+				x = p;
+			}
+			return numOfRot;
+		}
+
+		/**
+		 * Performs a left rotation on x and returns the node which replaced it.
+		 * The caller holds the locks of x, its right child and its parent, which all change version.
+		 *
+		 * Complexity: O(1)
+		 */
+		private static VNode rotateLeft(VNode x) {
+			VNode p = x.parent;
+			VNode y = x.right;
+			VNode b = y.left;
+			beginChange(p);
+			beginChange(x);
+			beginChange(y);
+
+			x.right = b;
+			if(b != null)
+				b.parent = x;
+			y.left = x;
+			x.parent = y;
+			y.parent = p;
+			replaceChild(p, x, y);
+			update(x);
+			update(y);
+
+			endChange(y);
+			endChange(x);
+			endChange(p);
+			return y;
+		}
+
+		/**
+		 * Performs a right rotation on x and returns the node which replaced it.
+		 * The caller holds the locks of x, its left child and its parent, which all change version.
+		 *
+		 * Complexity: O(1)
+		 */
+		private static VNode rotateRight(VNode x) {
+			VNode p = x.parent;
+			VNode y = x.left;
+			VNode b = y.right;
+			beginChange(p);
+			beginChange(x);
+			beginChange(y);
+
+			x.left = b;
+			if(b != null)
+				b.parent = x;
+			y.right = x;
+			x.parent = y;
+			y.parent = p;
+			replaceChild(p, x, y);
+			update(x);
+			update(y);
+
+			endChange(y);
+			endChange(x);
+			endChange(p);
+			return y;
+		}
+
+		/**
+		 * Replaces the child oldChild of p with newChild. The caller has begun changing p.
+		 */
+		private static void replaceChild(VNode p, VNode oldChild, VNode newChild) {
+			if(p.left == oldChild)
+				p.left = newChild;
+			else
+				p.right = newChild;
+		}
+
+		/**
+		 * Recomputes height, size and sum of x from its children. The caller holds x's lock.
+		 * @return True if any of them changed.
+		 *
+		 * Complexity: O(1)
+		 */
+		private static boolean update(VNode x) {
+			VNode l = x.left;
+			VNode r = x.right;
+			int height = 1 + Math.max(height(l), height(r));
+			int size = 1 + size(l) + size(r);
+			int sum = x.key + sum(l) + sum(r);
+			if(height == x.height && size == x.size && sum == x.sum)
+				return false;
+			x.height = height;
+			x.size = size;
+			x.sum = sum;
+			return true;
+		}
+		/*/*************************************************/
+
+
+		/*/*************************************************
+		 * 					General Methods 			   *
+		 ***************************************************/
+		private static int height(VNode node) {
+			return (node == null) ? -1 : node.height;
+		}
+
+		private static int size(VNode node) {
+			return (node == null) ? 0 : node.size;
+		}
+
+		private static int sum(VNode node) {
+			return (node == null) ? 0 : node.sum;
+		}
+
+		/**
+		 * @param low - Every key in the subtree of node must be above low.
+		 * @param high - Every key in the subtree of node must be below high.
+		 * @return null if the subtree of node passes checkStructure, otherwise what is wrong.
+		 *
+		 * Complexity: O(size(node))
+		 */
+		private static String checkSubtree(VNode node, long low, long high) {
+			if(node == null)
+				return null;
+			int k = node.key;
+			if(k <= low || k >= high)
+				return "Node " + k + " is out of key order";
+			if(node.lock != 0)
+				return "Node " + k + " is still locked";
+			if((node.version & 1L) != 0L)
+				return "Node " + k + " has an odd version";
+			if(node.unlinked)
+				return "Node " + k + " is in the tree but marked deleted";
+			VNode l = node.left;
+			VNode r = node.right;
+			if((l != null && l.parent != node) || (r != null && r.parent != node))
+				return "A child of node " + k + " has a wrong parent";
+			String error = checkSubtree(l, low, k);
+			if(error == null)
+				error = checkSubtree(r, k, high);
+			if(error != null)
+				return error;
+			if(node.height != 1 + Math.max(height(l), height(r)))
+				return "Node " + k + " has height " + node.height + ", its children give " + (1 + Math.max(height(l), height(r)));
+			if(node.size != 1 + size(l) + size(r))
+				return "Node " + k + " has size " + node.size + ", its children give " + (1 + size(l) + size(r));
+			if(node.sum != k + sum(l) + sum(r))
+				return "Node " + k + " has sum " + node.sum + ", its children give " + (k + sum(l) + sum(r));
+			if(Math.abs(height(l) - height(r)) > 1)
+				return "Node " + k + " is unbalanced, BF = " + (height(l) - height(r));
+			return null;
+		}
+
+		/**
+		 * @return The node with key k, or null if there is none, validated like search.
+		 */
+		private VNode findNode(int k) {
+			retry:
+			while(true) {
+				VNode parent = this.holder;
+				long parentVersion = stableVersion(parent);
+				VNode node = parent.right;
+				while(true) {
+					if(node == null) {
+						if(parent.version == parentVersion)
+							return null;
+						continue retry;
+					}
+					long nodeVersion = stableVersion(node);
+					if(parent.version != parentVersion)
+						continue retry; //node may no longer be the child of parent on the path to k.
+					int key = node.key;
+					if(k == key)
+						return node;
+					parent = node;
+					parentVersion = nodeVersion;
+					node = (k < key) ? node.left : node.right;
+				}
+			}
+		}
+
+		/**
+		 * @return The node with the largest key if max, otherwise the smallest, or null if the tree is empty.
+		 * Validated like search.
+		 */
+		private VNode extremeNode(boolean max) {
+			retry:
+			while(true) {
+				VNode parent = this.holder;
+				long parentVersion = stableVersion(parent);
+				VNode node = parent.right;
+				if(node == null) {
+					if(parent.version == parentVersion)
+						return null;
+					continue retry;
+				}
+				while(true) {
+					long nodeVersion = stableVersion(node);
+					if(parent.version != parentVersion)
+						continue retry;
+					VNode next = max ? node.right : node.left;
+					if(next == null) {
+						if(node.version == nodeVersion)
+							return node;
+						continue retry;
+					}
+					parent = node;
+					parentVersion = nodeVersion;
+					node = next;
+				}
+			}
+		}
+
+		/**
+		 * @return The nodes of the tree in key order, for keysToArray and infoToArray.
+		 * An in-order walk which keeps the nodes it still has to visit on a stack with their versions.
+		 * When a node changed since it was pushed (or a link fails validation), the stack is rebuilt
+		 * by a descent to the keys above the last key taken, so keys are taken in increasing order only.
+		 *
+		 * Complexity: O(n) when not disturbed by writes
+		 */
+		private VNode[] nodesInOrder() {
+			VNode[] nodes = new VNode[Math.max(16, size())];
+			int count = 0;
+			VNode[] stack = new VNode[2 * MAX_STEPS];
+			long[] versions = new long[2 * MAX_STEPS];
+			long last = Long.MIN_VALUE; // The last key taken.
+			int top = pushPathAbove(last, stack, versions);
+			while(top > 0) {
+				VNode node = stack[--top];
+				long nodeVersion = versions[top];
+				if(node.version != nodeVersion) {
+					top = pushPathAbove(last, stack, versions);
+					continue;
+				}
+				if(count == nodes.length)
+					nodes = java.util.Arrays.copyOf(nodes, 2 * count);
+				nodes[count++] = node;
+				last = node.key;
+
+				/* Push the left spine of node's right subtree */
+				VNode parent = node;
+				long parentVersion = nodeVersion;
+				VNode child = node.right;
+				boolean valid = true;
+				while(child != null && valid) {
+					long childVersion = stableVersion(child);
+					valid = (parent.version == parentVersion) && top < stack.length;
+					if(valid) {
+						stack[top] = child;
+						versions[top++] = childVersion;
+						parent = child;
+						parentVersion = childVersion;
+						child = child.left;
+					}
+				}
+				if(!valid || parent.version != parentVersion)
+					top = pushPathAbove(last, stack, versions);
+			}
+			return java.util.Arrays.copyOf(nodes, count);
+		}
+
+		/**
+		 * Pushes, from the root down, every node with a key above last on the search path to last,
+		 * with its version: the top of the stack is then the node with the smallest key above last.
+		 * @return The number of nodes pushed.
+		 */
+		private int pushPathAbove(long last, VNode[] stack, long[] versions) {
+			retry:
+			while(true) {
+				int top = 0;
+				VNode parent = this.holder;
+				long parentVersion = stableVersion(parent);
+				VNode node = parent.right;
+				while(node != null) {
+					long nodeVersion = stableVersion(node);
+					if(parent.version != parentVersion || top == stack.length)
+						continue retry;
+					if(node.key > last) {
+						stack[top] = node;
+						versions[top++] = nodeVersion;
+						parent = node;
+						parentVersion = nodeVersion;
+						node = node.left;
+					}
+					else {
+						parent = node;
+						parentVersion = nodeVersion;
+						node = node.right;
+					}
+				}
+				if(parent.version == parentVersion)
+					return top;
+			}
+		}
+		/*/*************************************************/
+
+		/**
+		 * private static final class VNode
+		 *
+		 * A node of OptimisticAVLTree. Missing children are null.
+		 * Links, the version, the lock and the subtree fields are volatile, since reads and
+		 * the retraces of other writers see them without holding the node's lock.
+		 */
+		private static final class VNode {
+			private static final java.util.concurrent.atomic.AtomicIntegerFieldUpdater<VNode> LOCK =
+					java.util.concurrent.atomic.AtomicIntegerFieldUpdater.newUpdater(VNode.class, "lock");
+
+			private final int key;
+			private final String value;
+
+			private volatile long version = 0; // Even when stable, odd while a writer changes the node.
+			private volatile int lock = 0; // 1 while a writer holds the node.
+			private volatile boolean unlinked = false; // Set when a delete removes the node from the tree.
+			private volatile VNode left = null;
+			private volatile VNode right = null;
+			private volatile VNode parent;
+
+			private volatile int height = 0;
+			private volatile int size = 1;
+			private volatile int sum;
+
+			private VNode(int key, String value, VNode parent) {
+				this.key = key;
+				this.value = value;
+				this.parent = parent;
+				this.sum = key;
+			}
+		}
+	}
+
+	/**
+	 * public static class PersistentAVLTree
+	 *
+	 * An AVL tree of immutable nodes without parent pointers.
+	 * insert and delete copy only the O(log(n)) nodes on the path from the root (and the nodes of
+	 * any rotation) and then publish the new root, so every earlier version stays intact.
+	 *
+	 * snapshot() costs O(1): it returns a tree sharing the current root. Readers of a snapshot
+	 * (searches, exports, scans) always see that single version and never block writers.
+	 * Updates to a tree are serialized, reads never lock.
+	 */
+	public static class PersistentAVLTree {
+
+		private static final int MAX_HEIGHT = 64; // Larger than the height of any AVL tree with at most 2^31 nodes.
+
+		private volatile PNode root; // The root of the current version, null if empty.
+
+		/* Results of the current update, used only under the tree's monitor */
+		private int numOfRot;
+		private boolean changed;
+
+		public PersistentAVLTree() {
+			this.root = null;
+		}
+
+		private PersistentAVLTree(PNode root) {
+			this.root = root;
+		}
+
+		/**
+		 * public PersistentAVLTree snapshot()
+		 *
+		 * Returns a tree holding the current version. Later updates to either tree
+		 * are not seen by the other.
+		 *
+		 * Complexity: O(1)
+		 */
+		public PersistentAVLTree snapshot() {
+			return new PersistentAVLTree(this.root);
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return this.root == null;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int size() {
+			return size(this.root);
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String search(int k) {
+			PNode node = this.root;
+			while(node != null) {
+				if(k == node.key)
+					return node.value;
+				node = (k < node.key) ? node.left : node.right;
+			}
+			return null;
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(h)=O(log(n)), versions do not keep a minimum pointer.
+		 */
+		public String min() {
+			PNode node = this.root;
+			if(node == null)
+				return null;
+			while(node.left != null)
+				node = node.left;
+			return node.value;
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(h)=O(log(n)), versions do not keep a maximum pointer.
+		 */
+		public String max() {
+			PNode node = this.root;
+			if(node == null)
+				return null;
+			while(node.right != null)
+				node = node.right;
+			return node.value;
+		}
+
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String select(int i) {
+			PNode node = this.root;
+			if(i < 1 || i > size(node))
+				return null;
+			while(true) {
+				int rootI = size(node.left) + 1;
+				if(i == rootI)
+					return node.value;
+				if(i < rootI) {
+					node = node.left;
+				}
+				else {
+					i -= rootI;
+					node = node.right;
+				}
+			}
+		}
+
+		/**
+		 * public int less(int i)
+		 *
+		 * Returns the sum of all keys which are less or equal to i
+		 * i is not neccessarily a key in the tree
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int less(int i) {
+			PNode node = this.root;
+			int lessSum = 0;
+			while(node != null) {
+				if(node.key > i) {
+					node = node.left;
+				}
+				else {
+					lessSum += sum(node.left) + node.key;
+					node = node.right;
+				}
+			}
+			return lessSum;
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the version the call started on.
+		 *
+		 * Complexity: O(n)
+		 */
+		public int[] keysToArray() {
+			PNode node = this.root;
+			int[] arr = new int[size(node)];
+			PNode[] stack = new PNode[MAX_HEIGHT];
+			int top = 0;
+			int index = 0;
+			while(node != null || top > 0) {
+				while(node != null) {
+					stack[top++] = node;
+					node = node.left;
+				}
+				node = stack[--top];
+				arr[index++] = node.key;
+				node = node.right;
+			}
+			return arr;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the version the call started on,
+		 * sorted by their respective keys.
+		 *
+		 * Complexity: O(n)
+		 */
+		public String[] infoToArray() {
+			PNode node = this.root;
+			String[] arr = new String[size(node)];
+			PNode[] stack = new PNode[MAX_HEIGHT];
+			int top = 0;
+			int index = 0;
+			while(node != null || top > 0) {
+				while(node != null) {
+					stack[top++] = node;
+					node = node.left;
+				}
+				node = stack[--top];
+				arr[index++] = node.value;
+				node = node.right;
+			}
+			return arr;
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i, publishing a new version.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree (no new version is published).
+		 *
+		 * Complexity: O(h)=O(log(n)) time and new nodes
+		 */
+		public synchronized int insert(int k, String i) {
+			if(k < 1) { //Insert k only if k is a natural number
+				return 0;
+			}
+			this.numOfRot = 0;
+			this.changed = false;
+			PNode newRoot = insert(this.root, k, i);
+			if(!this.changed)
+				return -1;
+			this.root = newRoot;
+			return this.numOfRot;
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k, if it is there, publishing a new version.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+		 * returns -1 if an item with key k was not found in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n)) time and new nodes
+		 */
+		public synchronized int delete(int k) {
+			if(k < 1) { //If k is not a natural number then it could not have been inserted.
+				return -1;
+			}
+			this.numOfRot = 0;
+			this.changed = false;
+			PNode newRoot = delete(this.root, k);
+			if(!this.changed)
+				return -1;
+			this.root = newRoot;
+			return this.numOfRot;
+		}
+
+
+		/*/*************************************************
+		 * 				Path Copying Methods 			   *
+		 ***************************************************/
+		/**
+		 * @return the root of a copy of node's subtree with k inserted.
+		 * Sets changed if k was not already there.
+		 */
+		private PNode insert(PNode node, int k, String i) {
+			if(node == null) {
+				this.changed = true;
+				return new PNode(k, i, null, null);
+			}
+			if(k == node.key)
+				return node;
+			if(k < node.key) {
+				PNode left = insert(node.left, k, i);
+				return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+			}
+			else {
+				PNode right = insert(node.right, k, i);
+				return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+			}
+		}
+
+		/**
+		 * @return the root of a copy of node's subtree without k.
+		 * Sets changed if k was there.
+		 */
+		private PNode delete(PNode node, int k) {
+			if(node == null)
+				return null;
+			if(k < node.key) {
+				PNode left = delete(node.left, k);
+				return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+			}
+			if(k > node.key) {
+				PNode right = delete(node.right, k);
+				return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+			}
+			this.changed = true;
+			if(node.left == null)
+				return node.right;
+			if(node.right == null)
+				return node.left;
+			/* Replace node with its successor */
+			PNode suc = node.right;
+			while(suc.left != null)
+				suc = suc.left;
+			return balance(suc.key, suc.value, node.left, deleteMin(node.right));
+		}
+
+		/**
+		 * @return the root of a copy of node's subtree without its minimum.
+		 */
+		private PNode deleteMin(PNode node) {
+			if(node.left == null)
+				return node.right;
+			return balance(node.key, node.value, deleteMin(node.left), node.right);
+		}
+
+		/**
+		 * @return a new node with the given item and children, rotated if |BF|=2.
+		 * Counts the rotations in numOfRot.
+		 *
+		 * Complexity: O(1)
+		 */
+		private PNode balance(int k, String i, PNode left, PNode right) {
+			int bf = height(left) - height(right);
+			if(bf == 2) {
+				if(height(left.left) < height(left.right)) { //LR
+					left = rotateLeft(left.key, left.value, left.left, left.right);
+					this.numOfRot++;
+				}
+				this.numOfRot++;
+				return rotateRight(k, i, left, right);
+			}
+			if(bf == -2) {
+				if(height(right.right) < height(right.left)) { //RL
+					right = rotateRight(right.key, right.value, right.left, right.right);
+					this.numOfRot++;
+				}
+				this.numOfRot++;
+				return rotateLeft(k, i, left, right);
+			}
+			return new PNode(k, i, left, right);
+		}
+
+		/**
+		 * @return the left rotation of a node with the given item and children, as new nodes.
+		 */
+		private static PNode rotateLeft(int k, String i, PNode left, PNode right) {
+			PNode lowered = new PNode(k, i, left, right.left);
+			return new PNode(right.key, right.value, lowered, right.right);
+		}
+
+		/**
+		 * @return the right rotation of a node with the given item and children, as new nodes.
+		 */
+		private static PNode rotateRight(int k, String i, PNode left, PNode right) {
+			PNode lowered = new PNode(k, i, left.right, right);
+			return new PNode(left.key, left.value, left.left, lowered);
+		}
+		/*/*************************************************/
+
+
+		private static int height(PNode node) {
+			return (node == null) ? -1 : node.height;
+		}
+
+		private static int size(PNode node) {
+			return (node == null) ? 0 : node.size;
+		}
+
+		private static int sum(PNode node) {
+			return (node == null) ? 0 : node.sum;
+		}
+
+		/**
+		 * private static final class PNode
+		 *
+		 * An immutable node. height, size and sum are computed once from the children.
+		 */
+		private static final class PNode {
+			private final int key;
+			private final String value;
+			private final PNode left;
+			private final PNode right;
+			private final int height;
+			private final int size;
+			private final int sum;
+
+			private PNode(int key, String value, PNode left, PNode right) {
+				this.key = key;
+				this.value = value;
+				this.left = left;
+				this.right = right;
+				this.height = 1 + Math.max(PersistentAVLTree.height(left), PersistentAVLTree.height(right));
+				this.size = 1 + PersistentAVLTree.size(left) + PersistentAVLTree.size(right);
+				this.sum = key + PersistentAVLTree.sum(left) + PersistentAVLTree.sum(right);
+			}
+		}
+	}
+
+
+	/**
+	 * public static class DurableAVLTree
+	 *
+	 * A thread-safe AVLTree whose updates survive crashes. The tree lives in a directory with two files:
+	 * "snapshot", written by writeSnapshot at every checkpoint, and "wal", an append-only log of every
+	 * successful insert and delete since that checkpoint.
+	 *
+	 * An update is applied to the tree and appended to an in-memory log buffer under the tree's write lock,
+	 * and then, depending on the SyncPolicy, waits until the buffer has reached the file before returning.
+	 * Writers waiting at the same time are group-committed: the first one becomes the leader, writes the
+	 * whole buffer (every writer's record) and forces it with a single fsync, while the others wait for it.
+	 * A read acknowledges the updates it sees just as their own return does, so it also waits until they
+	 * are as durable as the SyncPolicy requires. If the write fails, every update whose record did not
+	 * reach the file is undone, newest first, under the write lock, before any of them throws.
+	 *
+	 * Log record: payload length, payload (op, key, and for an insert the value's byte length, -1 for
+	 * null, and its UTF-8 bytes) and a CRC32 of the payload. Recovery loads the snapshot and replays the
+	 * log up to the first incomplete or corrupt record (a write torn by a crash), and cuts the log there.
+	 * Replaying a log over a snapshot which already contains it gives the same tree, since every key
+	 * ends as its last logged operation left it, so a crash during a checkpoint loses nothing.
+	 *
+	 * If writing the log fails, the tree stops accepting updates (they throw IOException) and reads
+	 * (they throw UncheckedIOException), and has to be reopened, which recovers it from the files.
+	 */
+	public static class DurableAVLTree implements AutoCloseable {
+
+		/**
+		 * public enum SyncPolicy
+		 *
+		 * When an update returns, relative to its log record:
+		 * ALWAYS - the record is forced to the device, nothing is lost on a crash.
+		 * INTERVAL - the record is in memory, a background thread writes and forces the log every
+		 *            sync interval, so at most the last interval is lost on a crash.
+		 * OS - the record is written to the file but not forced, so it survives a process
+		 *      crash but not a machine crash.
+		 */
+		public enum SyncPolicy {ALWAYS, INTERVAL, OS}
+
+		private static final String SNAPSHOT_FILE = "snapshot";
+		private static final String LOG_FILE = "wal";
+		private static final byte INSERT = 1;
+		private static final byte DELETE = 2;
+
+		private final AVLTree tree;
+		private final java.nio.file.Path snapshotPath;
+		private final java.nio.channels.FileChannel log;
+		private final SyncPolicy policy;
+		private final java.util.concurrent.ScheduledExecutorService syncer; // null unless policy is INTERVAL
+		private final java.util.concurrent.locks.ReentrantReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+
+		/* Log state, guarded by the monitor of logMonitor */
+		private final Object logMonitor = new Object();
+		private java.nio.ByteBuffer pending = java.nio.ByteBuffer.allocate(1 << 16); // Records not yet written
+		private java.nio.ByteBuffer spare = java.nio.ByteBuffer.allocate(1 << 16); // Buffer swapped in by the leader
+		private long appendedLsn = 0; // Number of records appended since the log was opened
+		private long writtenLsn = 0; // Records written to the file
+		private long syncedLsn = 0; // Records forced to the device
+		private final java.util.ArrayDeque<Update> unwritten = new java.util.ArrayDeque<>(); // Undo of each record not yet written
+		private boolean flushing = false; // A leader (or a checkpoint) owns the file
+		private java.io.IOException failure = null; // Set when the log could not be written
+		private boolean closed = false;
+
+		private DurableAVLTree(AVLTree tree, java.nio.file.Path snapshotPath, java.nio.channels.FileChannel log,
+				SyncPolicy policy, long syncIntervalMillis) {
+			this.tree = tree;
+			this.snapshotPath = snapshotPath;
+			this.log = log;
+			this.policy = policy;
+			if(policy == SyncPolicy.INTERVAL) {
+				this.syncer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "DurableAVLTree-sync");
+					thread.setDaemon(true);
+					return thread;
+				});
+				this.syncer.scheduleWithFixedDelay(this::syncInBackground, syncIntervalMillis, syncIntervalMillis,
+						java.util.concurrent.TimeUnit.MILLISECONDS);
+			}
+			else {
+				this.syncer = null;
+			}
+		}
+
+		/**
+		 * public static DurableAVLTree open(java.nio.file.Path directory)
+		 *
+		 * Opens (or creates) the tree in directory with SyncPolicy.ALWAYS.
+		 *
+		 * Complexity: O(n + log length)
+		 */
+		public static DurableAVLTree open(java.nio.file.Path directory) throws java.io.IOException {
+			return open(directory, SyncPolicy.ALWAYS, 0);
+		}
+
+		/**
+		 * public static DurableAVLTree open(java.nio.file.Path directory, SyncPolicy policy, long syncIntervalMillis)
+		 *
+		 * Opens (or creates) the tree in directory: loads the snapshot, replays the log and cuts off
+		 * a torn tail. syncIntervalMillis is used only by SyncPolicy.INTERVAL.
+		 *
+		 * precondition: syncIntervalMillis > 0 if policy is INTERVAL (otherwise IllegalArgumentException is thrown)
+		 *
+		 * Complexity: O(n + log length)
+		 */
+		public static DurableAVLTree open(java.nio.file.Path directory, SyncPolicy policy, long syncIntervalMillis)
+				throws java.io.IOException {
+			if(policy == SyncPolicy.INTERVAL && syncIntervalMillis <= 0)
+				throw new IllegalArgumentException("Sync interval must be positive: " + syncIntervalMillis);
+			java.nio.file.Files.createDirectories(directory);
+			java.nio.file.Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+			AVLTree tree = java.nio.file.Files.exists(snapshotPath) ? AVLTree.readSnapshot(snapshotPath) : new AVLTree();
+
+			java.nio.channels.FileChannel log = java.nio.channels.FileChannel.open(directory.resolve(LOG_FILE),
+					java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.READ,
+					java.nio.file.StandardOpenOption.WRITE);
+			try {
+				long valid = replay(log, tree);
+				if(valid < log.size()) { //Cut off the torn tail, so new records follow the last valid one
+					log.truncate(valid);
+					log.force(true);
+				}
+				log.position(valid);
+			} catch (java.io.IOException | RuntimeException e) {
+				log.close();
+				throw e;
+			}
+			return new DurableAVLTree(tree, snapshotPath, log, policy, syncIntervalMillis);
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String search(int k) {
+			String result;
+			long lsn;
+			this.lock.readLock().lock();
+			try {
+				lsn = visibleLsn();
+				result = this.tree.search(k);
+			} finally {
+				this.lock.readLock().unlock();
+			}
+			awaitVisible(lsn);
+			return result;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int size() {
+			int result;
+			long lsn;
+			this.lock.readLock().lock();
+			try {
+				lsn = visibleLsn();
+				result = this.tree.size();
+			} finally {
+				this.lock.readLock().unlock();
+			}
+			awaitVisible(lsn);
+			return result;
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return size() == 0;
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree.
+		 *
+		 * Complexity: O(n)
+		 */
+		public int[] keysToArray() {
+			int[] result;
+			long lsn;
+			this.lock.readLock().lock();
+			try {
+				lsn = visibleLsn();
+				result = this.tree.keysToArray();
+			} finally {
+				this.lock.readLock().unlock();
+			}
+			awaitVisible(lsn);
+			return result;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree, sorted by their respective keys.
+		 *
+		 * Complexity: O(n)
+		 */
+		public String[] infoToArray() {
+			String[] result;
+			long lsn;
+			this.lock.readLock().lock();
+			try {
+				lsn = visibleLsn();
+				result = this.tree.infoToArray();
+			} finally {
+				this.lock.readLock().unlock();
+			}
+			awaitVisible(lsn);
+			return result;
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i, and logs it if it was inserted.
+		 * returns like AVLTree.insert, after the record is as durable as the SyncPolicy requires.
+		 * Throws IOException if the log cannot be written, and then the item is not in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n)) plus the log write
+		 */
+		public int insert(int k, String i) throws java.io.IOException {
+			byte[] value = (i == null) ? null : i.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+			int result;
+			long lsn;
+			this.lock.writeLock().lock();
+			try {
+				checkWritable();
+				result = this.tree.insert(k, i);
+				if(k < 1 || result == -1) //Nothing changed, nothing to log
+					return result;
+				lsn = append(INSERT, k, value, i);
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+			commit(lsn);
+			return result;
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k, if it is there, and logs it if it was deleted.
+		 * returns like AVLTree.delete, after the record is as durable as the SyncPolicy requires.
+		 * Throws IOException if the log cannot be written, and then the item is still in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n)) plus the log write
+		 */
+		public int delete(int k) throws java.io.IOException {
+			int result;
+			long lsn;
+			this.lock.writeLock().lock();
+			try {
+				checkWritable();
+				String info = this.tree.search(k);
+				result = this.tree.delete(k);
+				if(result == -1) //Nothing changed, nothing to log
+					return result;
+				lsn = append(DELETE, k, null, info);
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+			commit(lsn);
+			return result;
+		}
+
+		/**
+		 * public void sync()
+		 *
+		 * Writes and forces every record appended so far, whatever the SyncPolicy.
+		 *
+		 * Complexity: O(buffered records)
+		 */
+		public void sync() throws java.io.IOException {
+			long lsn;
+			synchronized(this.logMonitor) {
+				lsn = this.appendedLsn;
+			}
+			flush(lsn, true);
+		}
+
+		/**
+		 * public void checkpoint()
+		 *
+		 * Writes a snapshot of the tree and then empties the log, so recovery does not replay old records.
+		 * Updates wait until the checkpoint is done, reads continue.
+		 *
+		 * Complexity: O(n)
+		 */
+		public void checkpoint() throws java.io.IOException {
+			this.lock.readLock().lock(); //Keeps writers out, so the snapshot holds every appended record
+			try {
+				checkWritable();
+				acquireLogFile();
+				boolean done = false;
+				try {
+					checkWritable(); //A leader may have failed meanwhile, its records must not reach the snapshot
+					this.tree.writeSnapshot(this.snapshotPath);
+					forceDirectory(this.snapshotPath.getParent()); //The new snapshot must be reachable before the log is emptied
+					try {
+						this.log.truncate(0);
+						this.log.force(true);
+					} catch (java.io.IOException e) {
+						fail(e);
+						throw e;
+					}
+					done = true;
+				} finally {
+					releaseLogFile(done);
+				}
+			} finally {
+				this.lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * public void close()
+		 *
+		 * Stops the background sync, forces every appended record and closes the log.
+		 * Later updates throw IllegalStateException.
+		 */
+		public void close() throws java.io.IOException {
+			this.lock.writeLock().lock();
+			try {
+				if(this.closed)
+					return;
+				this.closed = true;
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+			if(this.syncer != null) { //Let a running sync finish, interrupting it would close the log channel
+				this.syncer.shutdown();
+				try {
+					this.syncer.awaitTermination(Long.MAX_VALUE, java.util.concurrent.TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			try {
+				if(this.failure == null)
+					sync();
+			} finally {
+				this.log.close();
+			}
+		}
+
+
+		/*/*************************************************
+		 * 				Write-Ahead Log Methods 		   *
+		 ***************************************************/
+		/**
+		 * Throws IllegalStateException if the tree is closed, and IOException if the log failed.
+		 */
+		private void checkWritable() throws java.io.IOException {
+			if(this.closed)
+				throw new IllegalStateException("DurableAVLTree is closed");
+			synchronized(this.logMonitor) {
+				if(this.failure != null)
+					throw new java.io.IOException("Write-ahead log failed, reopen the tree to recover", this.failure);
+			}
+		}
+
+		/**
+		 * Called by a reader holding the read lock.
+		 * Throws UncheckedIOException if the log failed, since the tree may then hold updates the log does not.
+		 * @return The log sequence number of the last update the reader can see.
+		 */
+		private long visibleLsn() {
+			synchronized(this.logMonitor) {
+				if(this.failure != null)
+					throw new java.io.UncheckedIOException(new java.io.IOException(
+							"Write-ahead log failed, reopen the tree to recover", this.failure));
+				return this.appendedLsn;
+			}
+		}
+
+		/**
+		 * Waits until the updates a reader saw, up to lsn, are as durable as the SyncPolicy requires,
+		 * because returning what a reader saw acknowledges those updates just as returning from them does.
+		 */
+		private void awaitVisible(long lsn) {
+			try {
+				commit(lsn);
+			} catch (java.io.IOException e) {
+				throw new java.io.UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Appends a record to the pending buffer, and what undoes it to unwritten.
+		 * @param info The info the record inserts, or the info of the item it deletes.
+		 * @return The record's log sequence number.
+		 */
+		private long append(byte op, int k, byte[] value, String info) {
+			int payload = 1 + Integer.BYTES + ((op == INSERT) ? Integer.BYTES + ((value == null) ? 0 : value.length) : 0);
+			int recordSize = Integer.BYTES + payload + Integer.BYTES;
+			synchronized(this.logMonitor) {
+				if(this.pending.remaining() < recordSize) { //Grow the buffer
+					int capacity = this.pending.capacity();
+					while(capacity - this.pending.position() < recordSize)
+						capacity *= 2;
+					java.nio.ByteBuffer larger = java.nio.ByteBuffer.allocate(capacity);
+					this.pending.flip();
+					larger.put(this.pending);
+					this.pending = larger;
+				}
+				java.nio.ByteBuffer buffer = this.pending;
+				buffer.putInt(payload);
+				int start = buffer.position();
+				buffer.put(op).putInt(k);
+				if(op == INSERT) {
+					buffer.putInt((value == null) ? -1 : value.length);
+					if(value != null)
+						buffer.put(value);
+				}
+				java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+				crc.update(buffer.array(), buffer.arrayOffset() + start, payload);
+				buffer.putInt((int) crc.getValue());
+				this.unwritten.addLast(new Update(op, k, info));
+				return ++this.appendedLsn;
+			}
+		}
+
+		/**
+		 * Waits until record lsn is as durable as the SyncPolicy requires.
+		 */
+		private void commit(long lsn) throws java.io.IOException {
+			if(this.policy == SyncPolicy.ALWAYS)
+				flush(lsn, true);
+			else if(this.policy == SyncPolicy.OS)
+				flush(lsn, false);
+			//INTERVAL: the background sync writes it
+		}
+
+
+		/**
+		 * Returns once the records up to lsn are written (and forced, if force).
+		 * If another writer is already writing, waits for it and then checks again; otherwise this
+		 * writer becomes the leader and writes every pending record, its own and those of all waiting writers.
+		 */
+		private void flush(long lsn, boolean force) throws java.io.IOException {
+			java.nio.ByteBuffer batch;
+			long batchLsn;
+			synchronized(this.logMonitor) {
+				while(true) {
+					if(this.failure != null)
+						throw new java.io.IOException("Write-ahead log failed, reopen the tree to recover", this.failure);
+					if((force ? this.syncedLsn : this.writtenLsn) >= lsn)
+						return;
+					if(!this.flushing)
+						break;
+					waitForLog();
+				}
+				this.flushing = true;
+				batch = this.pending;
+				this.pending = this.spare;
+				this.spare = null;
+				batchLsn = this.appendedLsn;
+			}
+
+			java.io.IOException error = null;
+			try {
+				batch.flip();
+				while(batch.hasRemaining())
+					this.log.write(batch);
+				if(force)
+					this.log.force(false);
+			} catch (java.io.IOException e) {
+				error = e;
+			}
+
+			synchronized(this.logMonitor) {
+				batch.clear();
+				this.spare = batch;
+				if(error == null) {
+					for(long written = this.writtenLsn; written < batchLsn; written++)
+						this.unwritten.pollFirst();
+					this.writtenLsn = batchLsn;
+					if(force)
+						this.syncedLsn = batchLsn;
+				}
+				else {
+					this.failure = error;
+				}
+				this.flushing = false;
+				this.logMonitor.notifyAll();
+			}
+			if(error != null) {
+				rollBack();
+				throw error;
+			}
+		}
+
+		/**
+		 * Called by the leader whose write failed, after failure is set, so no record is written from now on.
+		 * Undoes, newest first, every update whose record never reached the file, so the tree holds
+		 * nothing the log does not. Readers see none of this, as they check failure first.
+		 */
+		private void rollBack() {
+			this.lock.writeLock().lock();
+			try {
+				java.util.ArrayDeque<Update> updates;
+				synchronized(this.logMonitor) {
+					updates = new java.util.ArrayDeque<>(this.unwritten);
+					this.unwritten.clear();
+				}
+				while(!updates.isEmpty()) {
+					Update update = updates.pollLast();
+					if(update.op == INSERT)
+						this.tree.delete(update.key);
+					else
+						this.tree.insert(update.key, update.info);
+				}
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+
+		/**
+		 * Run by the INTERVAL policy's background thread.
+		 */
+		private void syncInBackground() {
+			try {
+				sync();
+			} catch (java.io.IOException e) {
+				//The failure is recorded, and the next update reports it.
+			}
+		}
+
+		/**
+		 * Waits on logMonitor (held by the caller) until a leader finishes.
+		 */
+		private void waitForLog() throws java.io.InterruptedIOException {
+			try {
+				this.logMonitor.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new java.io.InterruptedIOException("Interrupted while waiting for the write-ahead log");
+			}
+		}
+
+		/**
+		 * Waits until no leader writes the log, and keeps leaders out until releaseLogFile.
+		 */
+		private void acquireLogFile() throws java.io.IOException {
+			synchronized(this.logMonitor) {
+				while(this.flushing)
+					waitForLog();
+				this.flushing = true;
+			}
+		}
+
+		/**
+		 * Lets leaders write the log again. If a checkpoint completed, the pending records
+		 * are already in the snapshot, so they are dropped and count as forced.
+		 */
+		private void releaseLogFile(boolean checkpointed) {
+			synchronized(this.logMonitor) {
+				if(checkpointed) {
+					this.pending.clear();
+					this.unwritten.clear();
+					this.writtenLsn = this.appendedLsn;
+					this.syncedLsn = this.appendedLsn;
+				}
+				this.flushing = false;
+				this.logMonitor.notifyAll();
+			}
+		}
+
+		/**
+		 * Forces the entries of directory (such as a file just moved into it) to the device.
+		 * Some platforms cannot open a directory, there the move itself has to be trusted.
+		 */
+		private static void forceDirectory(java.nio.file.Path directory) throws java.io.IOException {
+			java.nio.channels.FileChannel channel;
+			try {
+				channel = java.nio.channels.FileChannel.open(directory, java.nio.file.StandardOpenOption.READ);
+			} catch (java.io.IOException | UnsupportedOperationException e) {
+				return;
+			}
+			try(java.nio.channels.FileChannel dir = channel) {
+				dir.force(true);
+			}
+		}
+
+		private void fail(java.io.IOException e) {
+			synchronized(this.logMonitor) {
+				this.failure = e;
+			}
+		}
+
+		/**
+		 * Applies the valid records of the log to tree.
+		 * @return The length of the valid prefix of the log.
+		 *
+		 * Complexity: O(log length * log(n))
+		 */
+		private static long replay(java.nio.channels.FileChannel log, AVLTree tree) throws java.io.IOException {
+			long size = log.size();
+			java.io.DataInputStream in = new java.io.DataInputStream(new java.io.BufferedInputStream(
+					java.nio.channels.Channels.newInputStream(log.position(0)), 1 << 16));
+			long valid = 0;
+			java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+			while(valid + Integer.BYTES <= size) {
+				int payload;
+				byte[] bytes;
+				int stored;
+				try {
+					payload = in.readInt();
+					if(payload < 1 + Integer.BYTES || valid + 2L * Integer.BYTES + payload > size)
+						break; //Torn or corrupt length
+					bytes = new byte[payload];
+					in.readFully(bytes);
+					stored = in.readInt();
+				} catch (java.io.EOFException e) {
+					break; //Torn record
+				}
+				crc.reset();
+				crc.update(bytes, 0, payload);
+				if(stored != (int) crc.getValue())
+					break; //Torn or corrupt record
+				java.nio.ByteBuffer record = java.nio.ByteBuffer.wrap(bytes);
+				byte op = record.get();
+				int k = record.getInt();
+				if(op == INSERT && payload >= 1 + 2 * Integer.BYTES) {
+					int length = record.getInt();
+					if(length != -1 && length != record.remaining())
+						break;
+					tree.insert(k, (length == -1) ? null : new String(bytes, record.position(), length, java.nio.charset.StandardCharsets.UTF_8));
+				}
+				else if(op == DELETE) {
+					tree.delete(k);
+				}
+				else {
+					break; //Unknown operation, treat as corrupt
+				}
+				valid += 2L * Integer.BYTES + payload;
+			}
+			return valid;
+		}
+		/*/*************************************************/
+
+
+		/**
+		 * private static final class Update
+		 *
+		 * A logged update, kept until its record is written so the tree can undo it if the write fails.
+		 */
+		private static final class Update {
+			private final byte op;
+			private final int key;
+			private final String info;
+
+			private Update(byte op, int key, String info) {
+				this.op = op;
+				this.key = key;
+				this.info = info;
+			}
+		}
+	}
+
+	/**
+	 * public abstract static class PrimitiveAVLTree
+	 *
+	 * The slot engine of the primitive-specialized trees (LongAVLTree, IntLongAVLTree, LongLongAVLTree).
+	 * Nodes are slots in parallel primitive arrays, like in ArrayAVLTree, but keys are longs and
+	 * the virtual node is marked by slot 0 instead of a key, so every key is valid, including 0 and negative keys.
+	 * Subclasses add the value array and the typed insert, search and export methods.
+	 *
+	 * Keys are stored as longs, so an int-keyed tree costs the same per key as a long-keyed one.
+	 * Subtree sums are longs: they are exact for int keys and wrap around like long arithmetic
+	 * for long keys whose sum does not fit.
+	 */
+	public abstract static class PrimitiveAVLTree {
+
+		protected static final int NIL = 0; // The slot of the virtual node.
+		private static final int INITIAL_CAPACITY = 16;
+
+		private long[] keys = new long[INITIAL_CAPACITY]; // The key of every slot.
+		private int[] left = new int[INITIAL_CAPACITY]; // The left child slot (next free slot for free slots).
+		private int[] right = new int[INITIAL_CAPACITY]; // The right child slot.
+		private int[] parent = new int[INITIAL_CAPACITY]; // The parent slot.
+		private byte[] height = new byte[INITIAL_CAPACITY]; // The height of the slot's subtree, below 64 for any int size.
+		private int[] size = new int[INITIAL_CAPACITY]; // The number of real slots in the slot's subtree.
+		private long[] sum = new long[INITIAL_CAPACITY]; // The sum of the keys in the slot's subtree.
+
+		private int root = NIL; // The slot which is the root of the tree.
+		private int minSlot = NIL; // The slot which contains the minimum key in the tree.
+		private int maxSlot = NIL; // The slot which contains the maximum key in the tree.
+
+		private int freeHead = NIL; // The first slot of the free list.
+		private int nextSlot = 1; // The first slot that has never been used.
+
+		protected int numOfRot; // The number of rotations of the last insertSlot.
+
+		protected PrimitiveAVLTree() {
+			this.height[NIL] = -1;
+		}
+
+		/*/*************************************************
+		 * 					Value Storage				   *
+		 ***************************************************/
+		/*
+		 * Subclasses store the values, indexed by slot.
+		 */
+		/**
+		 * Makes sure values of slots 0..capacity-1 can be stored.
+		 */
+		protected abstract void growValues(int capacity);
+
+		/**
+		 * Copies the value of slot from to slot to.
+		 */
+		protected abstract void moveValue(int from, int to);
+
+		/**
+		 * Forgets the value of a freed slot.
+		 */
+		protected abstract void clearValue(int x);
+		/*/*************************************************/
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return this.root == NIL;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int size() {
+			return this.size[this.root];
+		}
+
+		/**
+		 * public boolean contains(long k)
+		 *
+		 * returns true if and only if an item with key k is in the tree
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public boolean contains(long k) {
+			return findSlot(k) != NIL;
+		}
+
+		/**
+		 * public int delete(long k)
+		 *
+		 * deletes an item with key k from the tree, if it is there.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+		 * returns -1 if an item with key k was not found in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int delete(long k) {
+			int z = findSlot(k);
+			if(z == NIL) //k was not found
+				return -1;
+
+			boolean wasMin = (z == this.minSlot);
+			boolean wasMax = (z == this.maxSlot);
+
+			/* A slot with two children takes the item of its successor, and the successor slot is removed instead */
+			int removed = z;
+			if(this.left[z] != NIL && this.right[z] != NIL) {
+				removed = minInSubtree(this.right[z]);
+				this.keys[z] = this.keys[removed];
+				moveValue(removed, z);
+				if(removed == this.maxSlot)
+					wasMax = true;
+			}
+
+			/* removed has at most one child, bypass it */
+			int child = (this.left[removed] != NIL) ? this.left[removed] : this.right[removed];
+			int p = this.parent[removed];
+			if(child != NIL)
+				this.parent[child] = p;
+			replaceChild(p, removed, child);
+			freeSlot(removed);
+
+			int rotations = retrace(p);
+
+			if(this.root == NIL) {
+				this.minSlot = NIL;
+				this.maxSlot = NIL;
+			}
+			else {
+				if(wasMin)
+					this.minSlot = minInSubtree(this.root);
+				if(wasMax)
+					this.maxSlot = maxInSubtree(this.root);
+			}
+			return rotations;
+		}
+
+		/**
+		 * public long less(long i)
+		 *
+		 * Returns the sum of all keys which are less or equal to i
+		 * i is not neccessarily a key in the tree
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long less(long i) {
+			return prefixSum(i, true);
+		}
+
+		/**
+		 * public long rangeSum(long lo, long hi)
+		 *
+		 * Returns the sum of all keys in [lo, hi], or 0 if lo > hi.
+		 * lo and hi are not neccessarily keys in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long rangeSum(long lo, long hi) {
+			if(lo > hi)
+				return 0;
+			return prefixSum(hi, true) - prefixSum(lo, false);
+		}
+
+		/**
+		 * public int rank(long k)
+		 *
+		 * Returns the number of keys which are less or equal to k.
+		 * k is not neccessarily a key in the tree. If it is, rank(k) is its position,
+		 * so selectKey(rank(k)) returns k.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int rank(long k) {
+			return prefixCount(k, true);
+		}
+
+		/**
+		 * public int rangeCount(long lo, long hi)
+		 *
+		 * Returns the number of keys in [lo, hi], or 0 if lo > hi.
+		 * lo and hi are not neccessarily keys in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int rangeCount(long lo, long hi) {
+			if(lo > hi)
+				return 0;
+			return prefixCount(hi, true) - prefixCount(lo, false);
 		}
-		else { //Has two children
-			IAVLNode suc =  successor(node);  //successor of node
-			IAVLNode sucParent;
-			if(node.getRight().getKey()==suc.getKey())
-				sucParent = suc;
+
+
+		/*/*************************************************
+		 * 			Methods Used By The Subclasses		   *
+		 ***************************************************/
+		/**
+		 * @return The slot with key k, or NIL if k is not in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		protected final int findSlot(long k) {
+			int x = this.root;
+			while(x != NIL) {
+				long key = this.keys[x];
+				if(k == key)
+					return x;
+				x = (k < key) ? this.left[x] : this.right[x];
+			}
+			return NIL;
+		}
+
+		/**
+		 * @param k - The key to insert.
+		 * @return The new slot with key k, whose value the caller sets, or NIL if k is already in the tree.
+		 * The number of rotations is left in numOfRot.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		protected final int insertSlot(long k) {
+			this.numOfRot = 0;
+			int y = NIL; //The last slot on the path to k.
+			int x = this.root;
+			while(x != NIL) {
+				y = x;
+				long key = this.keys[x];
+				if(k == key)
+					return NIL;
+				x = (k < key) ? this.left[x] : this.right[x];
+			}
+
+			int slot = allocateSlot(k, y);
+			if(y == NIL) { //Empty tree
+				this.root = slot;
+				this.minSlot = slot;
+				this.maxSlot = slot;
+				return slot;
+			}
+			if(k < this.keys[y])
+				this.left[y] = slot;
 			else
-				sucParent = suc.getParent();
+				this.right[y] = slot;
 
-			if(sucParent!=null && sucParent.getKey()==node.getKey())
-				sucParent = sucParent.getParent();
-			/*
-			 * suc is from the subtree of the right children of node (node has two child).
-			 * Therefore suc has no left children.
-			 * Remove suc and Replace node with suc;
-			 */
-			if(isLeaf(suc))
-				justDelete(suc);
-			else if(isOneChild(suc))
-				bypassDelete(suc);
+			if(k > this.keys[this.maxSlot])
+				this.maxSlot = slot;
+			else if(k < this.keys[this.minSlot])
+				this.minSlot = slot;
 
-			if(node.getParent()==null) {
-				rootNode = suc;
-				rootNode.setParent(null);
+			this.numOfRot = retrace(y);
+			return slot;
+		}
+
+		/**
+		 * @param i - A position, 1 <= i <= size().
+		 * @return The slot of the i'th smallest key.
+		 * @throws IndexOutOfBoundsException if i is out of range.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		protected final int selectSlot(int i) {
+			if(i < 1 || i > size())
+				throw new IndexOutOfBoundsException("Position " + i + " is out of range [1, " + size() + "]");
+			int x = this.root;
+			while(true) {
+				int rootI = this.size[this.left[x]] + 1;
+				if(i == rootI)
+					return x;
+				if(i < rootI) {
+					x = this.left[x];
+				}
+				else {
+					i -= rootI;
+					x = this.right[x];
+				}
 			}
-			else {
-				IAVLNode parent = node.getParent();
-				if(parent.getLeft().getKey() == node.getKey()) //node is left child
-					parent.setLeft(suc);
-				else if(parent.getRight().getKey() == node.getKey())
-					parent.setRight(suc);
-				suc.setParent(parent);
+		}
+
+		/**
+		 * @return The slot of the minimum key, or NIL if the tree is empty.
+		 */
+		protected final int minSlot() {
+			return this.minSlot;
+		}
+
+		/**
+		 * @return The slot of the maximum key, or NIL if the tree is empty.
+		 */
+		protected final int maxSlot() {
+			return this.maxSlot;
+		}
+
+		/**
+		 * @return The slot of the minimum (or maximum) key.
+		 * @throws java.util.NoSuchElementException if the tree is empty.
+		 */
+		protected final int endSlot(boolean max) {
+			if(empty())
+				throw new java.util.NoSuchElementException("The tree is empty");
+			return max ? this.maxSlot : this.minSlot;
+		}
+
+		protected final long keyOf(int x) {
+			return this.keys[x];
+		}
+
+		/**
+		 * @return The successor slot of x. Returns NIL if x is the maximum slot.
+		 */
+		protected final int successor(int x) {
+			if(this.right[x] != NIL)
+				return minInSubtree(this.right[x]);
+			int p = this.parent[x];
+			while(p != NIL && x == this.right[p]) {
+				x = p;
+				p = this.parent[x];
 			}
+			return p;
+		}
+		/*/*************************************************/
 
 
-			suc.setLeft(node.getLeft());
-			suc.setRight(node.getRight());
-			suc.getLeft().setParent(suc);
-			suc.getRight().setParent(suc);
+		/*/*************************************************
+		 * 			Methods Used By less and rank		   *
+		 ***************************************************/
+		/**
+		 * @return The sum of the keys below k (or up to k, if inclusive).
+		 */
+		private long prefixSum(long k, boolean inclusive) {
+			int x = this.root;
+			long lessSum = 0;
+			while(x != NIL) {
+				long key = this.keys[x];
+				if(key > k || (key == k && !inclusive)) {
+					x = this.left[x];
+				}
+				else {
+					lessSum += this.sum[this.left[x]] + key;
+					x = this.right[x];
+				}
+			}
+			return lessSum;
+		}
+
+		/**
+		 * @return The number of keys below k (or up to k, if inclusive).
+		 */
+		private int prefixCount(long k, boolean inclusive) {
+			int x = this.root;
+			int count = 0;
+			while(x != NIL) {
+				long key = this.keys[x];
+				if(key > k || (key == k && !inclusive)) {
+					x = this.left[x];
+				}
+				else {
+					count += this.size[this.left[x]] + 1;
+					x = this.right[x];
+				}
+			}
+			return count;
+		}
+		/*/*************************************************/
 
 
-			return sucParent;
+		/*/*************************************************
+		 * 				Slot Allocation Methods 		   *
+		 ***************************************************/
+		/**
+		 * @return a slot holding a new leaf with key k and the given parent.
+		 *
+		 * Complexity: O(1) amortized
+		 */
+		private int allocateSlot(long k, int parentSlot) {
+			int slot;
+			if(this.freeHead != NIL) {
+				slot = this.freeHead;
+				this.freeHead = this.left[slot];
+			}
+			else {
+				ensureCapacity(this.nextSlot + 1);
+				slot = this.nextSlot++;
+			}
+			this.keys[slot] = k;
+			this.left[slot] = NIL;
+			this.right[slot] = NIL;
+			this.parent[slot] = parentSlot;
+			this.height[slot] = 0;
+			this.size[slot] = 1;
+			this.sum[slot] = k;
+			return slot;
 		}
-	}
 
-	/**
-	 * @param parent - A node on the path from the node actually deleted.
-	 * @return True if the height of parent has changed, False otherwise.
-	 * 
-	 * Complexity: O(1)
-	 */
-	private static boolean updateHeightIfNeeded_Deletion(IAVLNode parent) {
+		/**
+		 * Pushes slot to the free list.
+		 *
+		 * Complexity: O(1)
+		 */
+		private void freeSlot(int slot) {
+			clearValue(slot);
+			this.left[slot] = this.freeHead;
+			this.freeHead = slot;
+		}
 
-		if(parent.getHeight()==parent.getLeft().getHeight()+1 && parent.getHeight()==parent.getRight().getHeight()+1) //Equal heights, No need to update.
-			return false;
-		else if(parent.getLeft().getHeight()>parent.getRight().getHeight() && parent.getHeight()==parent.getLeft().getHeight()+1) { //No need to update.
-			return false;
+		/**
+		 * Doubles the capacity of all the arrays until capacity slots fit.
+		 *
+		 * Complexity: O(n)
+		 */
+		private void ensureCapacity(int capacity) {
+			if(capacity <= this.keys.length)
+				return;
+			int newCapacity = Math.max(capacity, this.keys.length * 2);
+			this.keys = java.util.Arrays.copyOf(this.keys, newCapacity);
+			this.left = java.util.Arrays.copyOf(this.left, newCapacity);
+			this.right = java.util.Arrays.copyOf(this.right, newCapacity);
+			this.parent = java.util.Arrays.copyOf(this.parent, newCapacity);
+			this.height = java.util.Arrays.copyOf(this.height, newCapacity);
+			this.size = java.util.Arrays.copyOf(this.size, newCapacity);
+			this.sum = java.util.Arrays.copyOf(this.sum, newCapacity);
+			growValues(newCapacity);
 		}
-		else if(parent.getRight().getHeight()>parent.getLeft().getHeight() && parent.getHeight()==parent.getRight().getHeight()+1) { //No need to update.
-			return false;
+		/*/*************************************************/
+
+
+		/*/*************************************************
+		 * 					Rotations Methods			   *
+		 ***************************************************/
+		/**
+		 * @param x - A slot on the path from a changed slot.
+		 * @return Number of rotations.
+		 *
+		 * Updates height, size and sum from x up to the root and rotates wherever |BF|=2.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		private int retrace(int x) {
+			int rotations = 0;
+			while(x != NIL) {
+				update(x);
+				int bf = this.height[this.left[x]] - this.height[this.right[x]];
+				if(bf == 2) {
+					int l = this.left[x];
+					if(this.height[this.left[l]] < this.height[this.right[l]]) { //LR
+						rotateLeft(l);
+						rotations++;
+					}
+					x = rotateRight(x);
+					rotations++;
+				}
+				else if(bf == -2) {
+					int r = this.right[x];
+					if(this.height[this.right[r]] < this.height[this.left[r]]) { //RL
+						rotateRight(r);
+						rotations++;
+					}
+					x = rotateLeft(x);
+					rotations++;
+				}
+				x = this.parent[x];
+			}
+			return rotations;
 		}
-		else {
-			parent.setHeight(1+Math.max(parent.getLeft().getHeight(), parent.getRight().getHeight()));
-			return true;
+
+		/**
+		 * Performs a left rotation on x and returns the slot which replaced it.
+		 *
+		 * Complexity: O(1)
+		 */
+		private int rotateLeft(int x) {
+			int y = this.right[x];
+			int b = this.left[y];
+			int p = this.parent[x];
+
+			this.right[x] = b;
+			if(b != NIL)
+				this.parent[b] = x;
+			this.left[y] = x;
+			this.parent[x] = y;
+			this.parent[y] = p;
+			replaceChild(p, x, y);
+
+			update(x);
+			update(y);
+			return y;
 		}
-	}
-	/*/*************************************************/
 
+		/**
+		 * Performs a right rotation on x and returns the slot which replaced it.
+		 *
+		 * Complexity: O(1)
+		 */
+		private int rotateRight(int x) {
+			int y = this.left[x];
+			int b = this.right[y];
+			int p = this.parent[x];
+
+			this.left[x] = b;
+			if(b != NIL)
+				this.parent[b] = x;
+			this.right[y] = x;
+			this.parent[x] = y;
+			this.parent[y] = p;
+			replaceChild(p, x, y);
 
-	/*/*************************************************
-	 * 					General Methods 			   *
-	 ***************************************************/
+			update(x);
+			update(y);
+			return y;
+		}
 
-	/**
-	 * 
-	 * @param node - Is the root node of the sub tree.
-	 * @param k - the key which his position is wanted.
-	 * 
-	 * precondition: node.isRealNode() == true
-	 * 
-	 * Complexity: O(h)=O(log(n))
-	 */
-	private static IAVLNode treePosition(IAVLNode node, int k) {
-		IAVLNode y = null; //Supposed to be replaced by node anyway.
-		while(node.isRealNode()) {
-			y = node;
-			if(k == node.getKey())
-				return node;
-			else if(k < node.getKey())
-				node = node.getLeft();
+		/**
+		 * Replaces the child oldChild of p (or the root if p is NIL) with newChild.
+		 */
+		private void replaceChild(int p, int oldChild, int newChild) {
+			if(p == NIL)
+				this.root = newChild;
+			else if(this.left[p] == oldChild)
+				this.left[p] = newChild;
 			else
-				node = node.getRight();
+				this.right[p] = newChild;
 		}
-		return y;
-	}
 
-	/**
-	 * Balance Factor
-	 * @return the node's balance factor
-	 * 
-	 * Complexity: O(1)
-	 */
-	private static int BF(IAVLNode node) {
-		return node.getLeft().getHeight() - node.getRight().getHeight();
-	}
+		/**
+		 * Recomputes height, size and sum of x from its children.
+		 *
+		 * Complexity: O(1)
+		 */
+		private void update(int x) {
+			int l = this.left[x];
+			int r = this.right[x];
+			this.height[x] = (byte) (1 + Math.max(this.height[l], this.height[r]));
+			this.size[x] = 1 + this.size[l] + this.size[r];
+			this.sum[x] = this.keys[x] + this.sum[l] + this.sum[r];
+		}
 
-	/**
-	 * @return Whether the node is a leaf or not
-	 */
-	private static boolean isLeaf(IAVLNode node) {
-		return ( !node.getLeft().isRealNode() && !node.getRight().isRealNode() );
+		private int minInSubtree(int x) {
+			while(this.left[x] != NIL)
+				x = this.left[x];
+			return x;
+		}
+
+		private int maxInSubtree(int x) {
+			while(this.right[x] != NIL)
+				x = this.right[x];
+			return x;
+		}
+		/*/*************************************************/
 	}
 
 	/**
-	 * @return Whether the node has one child or not
+	 * public static final class LongAVLTree
+	 *
+	 * A PrimitiveAVLTree from long keys to String info.
+	 * Every long is a valid key. The info methods behave like in AVLTree,
+	 * the key methods throw when there is no key to return.
 	 */
-	private static boolean isOneChild(IAVLNode node) {
-		return ( node.getLeft().isRealNode() && !node.getRight().isRealNode() ) || ( !node.getLeft().isRealNode() && node.getRight().isRealNode() );
+	public static final class LongAVLTree extends PrimitiveAVLTree {
+
+		private String[] values = new String[16]; // The info of every slot.
+
+		protected void growValues(int capacity) {this.values = java.util.Arrays.copyOf(this.values, capacity);}
+		protected void moveValue(int from, int to) {this.values[to] = this.values[from];}
+		protected void clearValue(int x) {this.values[x] = null;} //Let the info be collected.
+
+		/**
+		 * public int insert(long k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int insert(long k, String i) {
+			int slot = insertSlot(k);
+			if(slot == NIL)
+				return -1;
+			this.values[slot] = i;
+			return this.numOfRot;
+		}
+
+		/**
+		 * public String search(long k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String search(long k) {
+			return this.values[findSlot(k)];
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public String min() {
+			return this.values[minSlot()];
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public String max() {
+			return this.values[maxSlot()];
+		}
+
+		/**
+		 * public long minKey()
+		 *
+		 * Returns the smallest key. Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long minKey() {
+			return keyOf(endSlot(false));
+		}
+
+		/**
+		 * public long maxKey()
+		 *
+		 * Returns the largest key. Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long maxKey() {
+			return keyOf(endSlot(true));
+		}
+
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public String select(int i) {
+			if(i < 1 || i > size())
+				return null;
+			return this.values[selectSlot(i)];
+		}
+
+		/**
+		 * public long selectKey(int i)
+		 *
+		 * Returns the i'th smallest key. Throws IndexOutOfBoundsException if i < 1 or i > size().
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long selectKey(int i) {
+			return keyOf(selectSlot(i));
+		}
+
+		/**
+		 * public long[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public long[] keysToArray() {
+			long[] arr = new long[size()];
+			int index = 0;
+			for(int x = minSlot(); x != NIL; x = successor(x))
+				arr[index++] = keyOf(x);
+			return arr;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public String[] infoToArray() {
+			String[] arr = new String[size()];
+			int index = 0;
+			for(int x = minSlot(); x != NIL; x = successor(x))
+				arr[index++] = this.values[x];
+			return arr;
+		}
 	}
 
 	/**
-	 * @param node - The root of the sub tree.
-	 * @return The node minimum node in the sub tree.
+	 * public static final class IntLongAVLTree
+	 *
+	 * A PrimitiveAVLTree from int keys to long values, neither of them boxed.
+	 * Every int is a valid key and every long a valid value, so search takes the value to return
+	 * when the key is missing, and the methods which return a key or a value throw when there is none.
 	 */
-	private static IAVLNode minInSubtree(IAVLNode node) {
-		while(node.getLeft().isRealNode()) {
-			node = node.getLeft();
+	public static final class IntLongAVLTree extends PrimitiveAVLTree {
+
+		private long[] values = new long[16]; // The value of every slot.
+
+		protected void growValues(int capacity) {this.values = java.util.Arrays.copyOf(this.values, capacity);}
+		protected void moveValue(int from, int to) {this.values[to] = this.values[from];}
+		protected void clearValue(int x) {}
+
+		/**
+		 * public int insert(int k, long v)
+		 *
+		 * inserts an item with key k and value v to the tree.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int insert(int k, long v) {
+			int slot = insertSlot(k);
+			if(slot == NIL)
+				return -1;
+			this.values[slot] = v;
+			return this.numOfRot;
+		}
+
+		/**
+		 * public long search(int k, long notFound)
+		 *
+		 * returns the value of the item with key k if it exists in the tree
+		 * otherwise, returns notFound
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long search(int k, long notFound) {
+			int x = findSlot(k);
+			return (x == NIL) ? notFound : this.values[x];
+		}
+
+		/**
+		 * public long min()
+		 *
+		 * Returns the value of the item with the smallest key.
+		 * Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long min() {
+			return this.values[endSlot(false)];
+		}
+
+		/**
+		 * public long max()
+		 *
+		 * Returns the value of the item with the largest key.
+		 * Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long max() {
+			return this.values[endSlot(true)];
+		}
+
+		/**
+		 * public int minKey()
+		 *
+		 * Returns the smallest key. Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int minKey() {
+			return (int) keyOf(endSlot(false));
+		}
+
+		/**
+		 * public int maxKey()
+		 *
+		 * Returns the largest key. Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public int maxKey() {
+			return (int) keyOf(endSlot(true));
+		}
+
+		/**
+		 * public long select(int i)
+		 *
+		 * Returns the value of the i'th smallest key.
+		 * Throws IndexOutOfBoundsException if i < 1 or i > size().
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long select(int i) {
+			return this.values[selectSlot(i)];
 		}
-		return node;
-	}
 
-	/**
-	 * @param node - A node in the tree.
-	 * @return The successor of node. Returns null if node is the maximum node.
-	 */
-	private static IAVLNode successor(IAVLNode node) {
-		if(node.getRight().isRealNode()) {
-			return minInSubtree(node.getRight());
+		/**
+		 * public int selectKey(int i)
+		 *
+		 * Returns the i'th smallest key. Throws IndexOutOfBoundsException if i < 1 or i > size().
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int selectKey(int i) {
+			return (int) keyOf(selectSlot(i));
 		}
 
-		IAVLNode parent = node.getParent();
-		while(parent!=null && node.getKey() == parent.getRight().getKey()) {
-			node = parent;
-			parent = node.getParent();
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public int[] keysToArray() {
+			int[] arr = new int[size()];
+			int index = 0;
+			for(int x = minSlot(); x != NIL; x = successor(x))
+				arr[index++] = (int) keyOf(x);
+			return arr;
 		}
-		return parent;
-	}
 
-	/**
-	 * @param node - The root of the sub tree.
-	 * @return The node maximum node in the sub tree.
-	 */
-	private static IAVLNode maxInSubtree(IAVLNode node) {
-		while(node.getRight().isRealNode()) {
-			node = node.getRight();
+		/**
+		 * public long[] valuesToArray()
+		 *
+		 * Returns an array which contains all values in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public long[] valuesToArray() {
+			long[] arr = new long[size()];
+			int index = 0;
+			for(int x = minSlot(); x != NIL; x = successor(x))
+				arr[index++] = this.values[x];
+			return arr;
 		}
-		return node;
 	}
 
 	/**
-	 * @param node - A node in the tree.
-	 * @return The predecessor of node. Returns null if node is the minimum node.
+	 * public static final class LongLongAVLTree
+	 *
+	 * A PrimitiveAVLTree from long keys to long values, neither of them boxed.
+	 * Every long is a valid key and a valid value, so search takes the value to return
+	 * when the key is missing, and the methods which return a key or a value throw when there is none.
 	 */
-	private static IAVLNode predecessor(IAVLNode node) {
-		if(node.getLeft().isRealNode()) {
-			return maxInSubtree(node.getLeft());
-		}
+	public static final class LongLongAVLTree extends PrimitiveAVLTree {
 
-		IAVLNode parent = node.getParent();
-		while(parent!=null && node.getKey() == parent.getLeft().getKey()) {
-			node = parent;
-			parent = node.getParent();
+		private long[] values = new long[16]; // The value of every slot.
+
+		protected void growValues(int capacity) {this.values = java.util.Arrays.copyOf(this.values, capacity);}
+		protected void moveValue(int from, int to) {this.values[to] = this.values[from];}
+		protected void clearValue(int x) {}
+
+		/**
+		 * public int insert(long k, long v)
+		 *
+		 * inserts an item with key k and value v to the tree.
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree.
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public int insert(long k, long v) {
+			int slot = insertSlot(k);
+			if(slot == NIL)
+				return -1;
+			this.values[slot] = v;
+			return this.numOfRot;
 		}
-		return parent;
-	}
-	/*/*************************************************/
 
+		/**
+		 * public long search(long k, long notFound)
+		 *
+		 * returns the value of the item with key k if it exists in the tree
+		 * otherwise, returns notFound
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long search(long k, long notFound) {
+			int x = findSlot(k);
+			return (x == NIL) ? notFound : this.values[x];
+		}
 
-	/*/*************************************************
-	 * 			Method enveloped by keyToArray 		   *
-	 ***************************************************/
-	/**
-	 * @param root - A subtree root.
-	 * 
-	 * precondition: keysArr and keysArrIndex are initialized.
-	 * 
-	 * When inOrder is finished the array keysArr will contain a sorted list of the keys that are in the tree.
-	 */
-	private void inOrderKeys(IAVLNode root) {
-		if (root.isRealNode() == false) {return;}
-		inOrderKeys(root.getLeft());
-		keysArr[keysArrIndex] = root.getKey();
-		keysArrIndex++;
-		inOrderKeys(root.getRight());
-	}
-	/*/*************************************************/
-	/*/*************************************************
-	 * 			Method enveloped by keyToArray 		   *
-	 ***************************************************/
-	/**
-	 * @param root - A subtree root.
-	 * 
-	 * precondition: keysArr and keysArrIndex are initialized.
-	 * 
-	 * When inOrder is finished the array keysArr will contain a sorted list of the keys that are in the tree.
-	 */
-	private void inOrderInfo(IAVLNode root) {
-		if (root.isRealNode() == false) {return;}
-		inOrderInfo(root.getLeft());
-		infoArr[infoArrIndex] = root.getValue();
-		infoArrIndex++;
-		inOrderInfo(root.getRight());
-	}
-	/*/*************************************************/
+		/**
+		 * public long min()
+		 *
+		 * Returns the value of the item with the smallest key.
+		 * Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long min() {
+			return this.values[endSlot(false)];
+		}
 
-	/*/*************************************************
-	 * 				Method enveloped by select 		   *
-	 ***************************************************/
-	/**
-	 * 
-	 * @param root
-	 * @param i
-	 * @return
-	 */
-	private String treeSelect(IAVLNode root, int i) {
-		int rootI = (root.getLeft().getSubtreeSize()) + 1;	
-		if (i==rootI) {return root.getValue();}
-		else if (i < rootI) {
-			return treeSelect(root.getLeft(), i);
+		/**
+		 * public long max()
+		 *
+		 * Returns the value of the item with the largest key.
+		 * Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long max() {
+			return this.values[endSlot(true)];
 		}
-		else {
-			return treeSelect(root.getRight(), (i-rootI));
+
+		/**
+		 * public long minKey()
+		 *
+		 * Returns the smallest key. Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long minKey() {
+			return keyOf(endSlot(false));
 		}
-	}
-	/*/*************************************************/
 
+		/**
+		 * public long maxKey()
+		 *
+		 * Returns the largest key. Throws java.util.NoSuchElementException if the tree is empty.
+		 *
+		 * Complexity: O(1)
+		 */
+		public long maxKey() {
+			return keyOf(endSlot(true));
+		}
 
-	/*/*************************************************
-	 * 				Method Used By less 			   *
-	 ***************************************************/
-	/**
-	 * @param i - A number between 1 and size()
-	 * @return the sum of all keys which are less or equal to i.
-	 */
-	private int treeLess(int i) {
-		IAVLNode node = this.getRoot(); //Start from the root.
-		int lessSum = 0; //Initialize the sum of keys which are less or equal to i.
+		/**
+		 * public long select(int i)
+		 *
+		 * Returns the value of the i'th smallest key.
+		 * Throws IndexOutOfBoundsException if i < 1 or i > size().
+		 *
+		 * Complexity: O(h)=O(log(n))
+		 */
+		public long select(int i) {
+			return this.values[selectSlot(i)];
+		}
 
-		/*
-		 * Start a the top and get down towards the supposed location of i.
-		 * Sum the node with keys which are less or equal to i along the way.
+		/**
+		 * public long selectKey(int i)
+		 *
+		 * Returns the i'th smallest key. Throws IndexOutOfBoundsException if i < 1 or i > size().
+		 *
+		 * Complexity: O(h)=O(log(n))
 		 */
-		while(node.isRealNode()) { //Stop at the bottom
-			/* If the node's key is larger than i continue left. Otherwise, continue right and sum the smaller/equal keys. */
-			if(node.getKey()>i) {
-				node = node.getLeft();
-			}
-			else {
-				lessSum += node.getLeft().getSum() + node.getKey();
-				node = node.getRight();
-			}
+		public long selectKey(int i) {
+			return keyOf(selectSlot(i));
 		}
 
-		return lessSum;
-	}
-	/*/*************************************************/
+		/**
+		 * public long[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public long[] keysToArray() {
+			long[] arr = new long[size()];
+			int index = 0;
+			for(int x = minSlot(); x != NIL; x = successor(x))
+				arr[index++] = keyOf(x);
+			return arr;
+		}
 
-	/**
-	 * public interface IAVLNode
-	 * ! Do not delete or modify this - otherwise all tests will fail !
-	 */
-	public interface IAVLNode{	
-		public int getKey(); //returns node's key (for virtual node return -1)
-		public String getValue(); //returns node's value [info] (for virtual node return null)
-		public void setLeft(IAVLNode node); //sets left child
-		public IAVLNode getLeft(); //returns left child (if there is no left child return null)
-		public void setRight(IAVLNode node); //sets right child
-		public IAVLNode getRight(); //returns right child (if there is no right child return null)
-		public void setParent(IAVLNode node); //sets parent
-		public IAVLNode getParent(); //returns the parent (if there is no parent return null)
-		public boolean isRealNode(); // Returns True if this is a non-virtual AVL node
-		public void setSubtreeSize(int size); // sets the number of real nodes in this node's subtree
-		public int getSubtreeSize(); // Returns the number of real nodes in this node's subtree (Should be implemented in O(1))
-		public void setHeight(int height); // sets the height of the node
-		public int getHeight(); // Returns the height of the node (-1 for virtual nodes)
-		public int getSum(); // Returns the sum of all node's keys in the node's subtree.
+		/**
+		 * public long[] valuesToArray()
+		 *
+		 * Returns an array which contains all values in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
+		 */
+		public long[] valuesToArray() {
+			long[] arr = new long[size()];
+			int index = 0;
+			for(int x = minSlot(); x != NIL; x = successor(x))
+				arr[index++] = this.values[x];
+			return arr;
+		}
 	}
 
 	/**
-	 * public class AVLNode
+	 * public static final class FrozenAVLTree
 	 *
-	 * If you wish to implement classes other than AVLTree
-	 * (for example AVLNode), do it in this file, not in 
-	 * another file.
-	 * This class can and must be modified.
-	 * (It must implement IAVLNode)
+	 * An immutable copy of an AVLTree (see AVLTree.freeze()) for trees that are built once and queried many times.
+	 * The keys are packed in an int array in Eytzinger (BFS) order: the children of index j are 2j and 2j+1.
+	 * A search is a branch-free loop, j = 2j + (key[j] < k), with no pointers to chase and no mispredicted branches,
+	 * and the top levels of the implicit tree share a few cache lines which stay hot.
+	 * The 8 descendants of j three levels down are adjacent, so every step above the last three levels also loads them early
+	 * (Java has no prefetch instruction), and the misses of successive levels overlap.
+	 * The info is kept in the same order, so a found key costs no further miss.
+	 * The keys and info in sorted order and the prefix sums of the keys are kept by rank,
+	 * so select is O(1) and less, rank and range queries cost one search and O(1) lookups.
+	 *
+	 * A FrozenAVLTree is never modified, so it can be shared by any number of threads.
+	 * Memory: 28 bytes per key with compressed references (plus the info strings), against 48 bytes per node of AVLTree.
 	 */
-	public class AVLNode implements IAVLNode{
-		private int key = -1; // Contains the node's key.
-		private String info = null; // Contains the node's info.
-
-		private IAVLNode parentNode = null; // Contains the node's parent node.
-		private IAVLNode leftNode = null; // Contains the node's left node.
-		private IAVLNode rightNode = null; // Contains the node's right node.
-
-		private int size = 0; // Contains the number of nodes in the node's subtree.
-		private int height = -1; // Contains the height of the node in the AVLTree.
-		private int sum = 0; // Contains the sum of all node's keys in the node's subtree.
+	public static final class FrozenAVLTree {
 
-		//Use only if creating a virtual node.(default)
-		public AVLNode() {
+		private final int n; // The number of keys.
+		private final int[] eytzinger; // eytzinger[1..n] are the keys in BFS order of the implicit tree, eytzinger[0] is unused.
+		private final String[] eytzingerValues; // The info of eytzinger[j] is eytzingerValues[j].
+		private final int[] ranks; // ranks[j] is the number of keys smaller than eytzinger[j].
+		private final int[] keys; // The keys in increasing order.
+		private final String[] values; // The info of keys[r] is values[r].
+		private final long[] prefixSums; // prefixSums[r] is the sum of keys[0..r-1].
 
+		/**
+		 * @param keys - Strictly increasing natural numbers, owned by the new tree.
+		 * @param values - The info of every key, owned by the new tree.
+		 */
+		private FrozenAVLTree(int[] keys, String[] values) {
+			this.n = keys.length;
+			this.keys = keys;
+			this.values = values;
+			this.eytzinger = new int[this.n + 1];
+			this.eytzingerValues = new String[this.n + 1];
+			this.ranks = new int[this.n + 1];
+			layout(0, 1);
+			this.prefixSums = new long[this.n + 1];
+			for(int r = 0; r < this.n; r++)
+				this.prefixSums[r + 1] = this.prefixSums[r] + keys[r];
 		}
-		//Use only if creating a leaf. (real node)
-		public AVLNode(int k, String i, IAVLNode parent) {
-			this.key = k;
-			this.info = i;
 
-			this.parentNode = parent;
-			this.leftNode = new AVLNode(); //new virtual node
-			this.rightNode = new AVLNode();//new virtual node
+		/**
+		 * Places keys[rank..] at the in-order positions of the implicit subtree rooted at index j.
+		 * @return The rank of the first key after the subtree.
+		 *
+		 * Complexity: O(size of the subtree)
+		 */
+		private int layout(int rank, int j) {
+			if(j > this.n)
+				return rank;
+			rank = layout(rank, 2 * j);
+			this.eytzinger[j] = this.keys[rank];
+			this.eytzingerValues[j] = this.values[rank];
+			this.ranks[j] = rank;
+			return layout(rank + 1, 2 * j + 1);
+		}
 
-			this.height = 0;
-			this.size = 1;
-			this.sum = k;
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 * Complexity: O(1)
+		 */
+		public boolean empty() {
+			return this.n == 0;
 		}
+
 		/**
-		 * @return the node key.
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 * Complexity: O(1)
 		 */
-		public int getKey()
-		{
-			return this.key;
+		public int size() {
+			return this.n;
 		}
+
 		/**
-		 * @return the node value.
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public String getValue()
-		{
-			return this.info;
+		public String search(int k) {
+			int j = lowerBound(k);
+			if(j == 0 || this.eytzinger[j] != k)
+				return null;
+			return this.eytzingerValues[j];
 		}
+
 		/**
-		 * @param node the reference of the node to be set as the left node.
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
 		 */
-		public void setLeft(IAVLNode node)
-		{
-			this.leftNode = node;
+		public String min() {
+			return empty() ? null : this.values[0];
 		}
+
 		/**
-		 * @return the left node reference.
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 *
+		 * Complexity: O(1)
 		 */
-		public IAVLNode getLeft()
-		{
-			return this.leftNode;
+		public String max() {
+			return empty() ? null : this.values[this.n - 1];
 		}
+
 		/**
-		 * @param node the reference of the node to be set as the right node.
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+		 *
+		 * Complexity: O(1)
 		 */
-		public void setRight(IAVLNode node)
-		{
-			this.rightNode = node;
+		public String select(int i) {
+			if(i < 1 || i > this.n)
+				return null;
+			return this.values[i - 1];
 		}
+
 		/**
-		 * @return the right node reference.
+		 * public int selectKey(int i)
+		 *
+		 * Returns the i'th smallest key, or -1 if i is out of range (i < 1 or i > size()).
+		 *
+		 * Complexity: O(1)
 		 */
-		public IAVLNode getRight()
-		{
-			return this.rightNode;
+		public int selectKey(int i) {
+			if(i < 1 || i > this.n)
+				return -1;
+			return this.keys[i - 1];
 		}
+
 		/**
-		 * @param node the reference of the node to be set as the parent node.
+		 * public int rank(int k)
+		 *
+		 * Returns the number of keys which are less or equal to k.
+		 * k is not neccessarily a key in the tree. If it is, rank(k) is its position,
+		 * so select(rank(k)) returns its info.
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public void setParent(IAVLNode node)
-		{
-			this.parentNode = node;
+		public int rank(int k) {
+			int j = upperBound(k);
+			return (j == 0) ? this.n : this.ranks[j];
 		}
+
 		/**
-		 * @return the parent node reference.
+		 * public int less(int i)
+		 *
+		 * Returns the sum of all keys which are less or equal to i
+		 * i is not neccessarily a key in the tree
+		 * The sum wraps around like int arithmetic when it does not fit, like AVLTree.less.
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public IAVLNode getParent()
-		{
-			return this.parentNode;
+		public int less(int i) {
+			return (int) this.prefixSums[rank(i)];
 		}
+
 		/**
-		 *  @return True if this is a non-virtual AVL node, Flase otherwise.
+		 * public long rangeSum(int lo, int hi)
+		 *
+		 * Returns the sum of all keys in [lo, hi], as a long so it does not overflow.
+		 * lo and hi are not neccessarily keys in the tree, and the sum is 0 if lo > hi.
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public boolean isRealNode()
-		{
-			if(this.key == -1)
-				return false;
-			else
-				return true;
+		public long rangeSum(int lo, int hi) {
+			if(lo > hi)
+				return 0;
+			return this.prefixSums[rank(hi)] - this.prefixSums[rankBelow(lo)];
 		}
+
 		/**
-		 * @param size is the value to be set as the node's subtree size.
+		 * public int rangeCount(int lo, int hi)
+		 *
+		 * Returns the number of keys in [lo, hi].
+		 * lo and hi are not neccessarily keys in the tree, and the count is 0 if lo > hi.
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public void setSubtreeSize(int size)
-		{
-			this.size = size;
+		public int rangeCount(int lo, int hi) {
+			if(lo > hi)
+				return 0;
+			return rank(hi) - rankBelow(lo);
 		}
+
 		/**
-		 * @return the nodes's subtree size.
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
 		 */
-		public int getSubtreeSize()
-		{
-			return this.size;
+		public int[] keysToArray() {
+			return this.keys.clone();
 		}
+
 		/**
-		 * @param height is the value to be set as the node's height.
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 *
+		 * Complexity: O(n)
 		 */
-		public void setHeight(int height)
-		{
-			this.height = height;
+		public String[] infoToArray() {
+			return this.values.clone();
 		}
+
+
+		/*/*************************************************
+		 * 				Eytzinger Search Methods 		   *
+		 ***************************************************/
+		/*
+		 * Both searches descend all the way to an index past n. Going right appends a 1 bit to j,
+		 * going left a 0 bit, so the last node where the search went left is found by dropping
+		 * the trailing 1 bits and the 0 bit before them.
+		 *
+		 * Every step that has descendants three levels down also reads eytzinger[8j], the first of the 8 adjacent ones,
+		 * so its cache line is on the way before the search gets there. Those steps run in a loop of their own,
+		 * and the loop over the last three levels has no extra check. The reads are or-ed together
+		 * and checked (keys are positive, so the check never fails) to keep the JIT from dropping them.
+		 */
 		/**
-		 * @return the nodes's height.
+		 * @return The index of the smallest key which is at least k, or 0 if there is none.
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public int getHeight()
-		{
-			return height;
+		private int lowerBound(int k) {
+			int[] tree = this.eytzinger;
+			int n = this.n;
+			int lastWithAhead = n >>> 3; //The last j with 8j <= n
+			int j = 1;
+			int ahead = 0;
+			while(j <= lastWithAhead) { //Levels whose descendants three levels down exist
+				ahead |= tree[8 * j];
+				j = 2 * j + ((tree[j] < k) ? 1 : 0);
+			}
+			while(j <= n)
+				j = 2 * j + ((tree[j] < k) ? 1 : 0);
+			if(ahead < 0)
+				throw new IllegalStateException("Corrupt key");
+			return j >>> (Integer.numberOfTrailingZeros(~j) + 1);
 		}
+
 		/**
-		 * @param sum is the value to be set as the node's subtree sum.
+		 * @return The index of the smallest key which is greater than k, or 0 if there is none.
+		 *
+		 * Complexity: O(log(n))
 		 */
-		public void setSum(int sum) {
-			this.sum = sum;
+		private int upperBound(int k) {
+			int[] tree = this.eytzinger;
+			int n = this.n;
+			int lastWithAhead = n >>> 3; //The last j with 8j <= n
+			int j = 1;
+			int ahead = 0;
+			while(j <= lastWithAhead) { //Levels whose descendants three levels down exist
+				ahead |= tree[8 * j];
+				j = 2 * j + ((tree[j] <= k) ? 1 : 0);
+			}
+			while(j <= n)
+				j = 2 * j + ((tree[j] <= k) ? 1 : 0);
+			if(ahead < 0)
+				throw new IllegalStateException("Corrupt key");
+			return j >>> (Integer.numberOfTrailingZeros(~j) + 1);
 		}
+
 		/**
-		 * @return the nodes's subtree sum.
+		 * @return The number of keys smaller than k.
 		 */
-		public int getSum() {
-			return this.sum;
+		private int rankBelow(int k) {
+			int j = lowerBound(k);
+			return (j == 0) ? this.n : this.ranks[j];
 		}
+		/*/*************************************************/
 	}
 
 }
-
-
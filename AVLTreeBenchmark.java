@@ -0,0 +1,562 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ *
+ * AVLTreeBenchmark
+ *
+ * A self-contained benchmark harness for every public AVLTree operation,
+ * with java.util.TreeMap as a baseline.
+ *
+ * For each tree size and key distribution it reports the average time per operation,
+ * the bytes allocated per operation (from the thread allocation counter, the same
+ * number as gc.alloc.rate.norm in JMH's GC profiler) and, for insert/delete,
+ * the average number of rebalancing operations.
+ * The AVLTree runs use each requested rebalance policy: AVLTree is the AVL policy
+ * and WAVLTree the same class under the WAVL policy.
+ * All inputs come from fixed seeds, so runs are reproducible.
+ *
+ * Usage:
+ *   javac AVLTree.java AVLTreeBenchmark.java
+ *   java -Xmx8g AVLTreeBenchmark [options]
+ *
+ * Options (all optional):
+ *   --sizes=1000,10000,100000,1000000,10000000
+ *   --dists=SEQUENTIAL,RANDOM,ZIPFIAN,ADVERSARIAL
+ *   --ops=insert,delete,churn,search,min,max,select,less,keysToArray,infoToArray
+ *   --policies=AVL,WAVL
+ *   --warmup=3 --iterations=5
+ *   --treemap=true   Also run the TreeMap baseline.
+ *   --frozen=false   Also run the read-only operations on AVLTree.freeze().
+ *   --pooled=false   Also run the updates on an AVLTree with a node pool (see AVLTree.enableNodePool).
+ *   --footprint=true Also report retained heap bytes per key.
+ *
+ */
+public class AVLTreeBenchmark {
+
+	/*
+	 * Key distributions.
+	 * SEQUENTIAL - keys 1..n inserted, probed and deleted in ascending order.
+	 * RANDOM - keys 1..n in a random permutation.
+	 * ZIPFIAN - keys inserted in random order, probes drawn from a Zipf(0.99) distribution over the keys.
+	 * ADVERSARIAL - keys inserted in ascending order and deleted alternately from both ends,
+	 *               which keeps removing nodes from the spines and forces rebalancing near the root.
+	 *
+	 * churn deletes every key of the full tree in deletion order and inserts it right back,
+	 * so it measures rebalancing under turnover at a steady size.
+	 */
+	enum Distribution {SEQUENTIAL, RANDOM, ZIPFIAN, ADVERSARIAL}
+
+	private static final long SEED = 0x5EED;
+	private static final int VALUE_POOL = 1024; // Values are shared, so the tree is measured and not the strings.
+	private static final long LOOKUP_OPS = 1_000_000; // Operations per iteration for the O(1)/O(log(n)) queries.
+	private static final long SCAN_ELEMENTS = 10_000_000; // Elements per iteration for keysToArray/infoToArray.
+	private static final int NODE_POOL = 1024; // Node pool capacity of the Pooled runs.
+
+	private static volatile long sink; // Consumes results so the JIT cannot drop the measured work.
+
+	private static final String[] VALUES = new String[VALUE_POOL];
+	static {
+		for(int i = 0; i < VALUE_POOL; i++)
+			VALUES[i] = "v" + i;
+	}
+
+	public static void main(String[] args) {
+		int[] sizes = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+		List<Distribution> dists = new ArrayList<>(List.of(Distribution.values()));
+		List<String> ops = new ArrayList<>(List.of("insert", "delete", "churn", "search", "min", "max", "select", "less", "keysToArray", "infoToArray"));
+		List<AVLTree.RebalancePolicy> policies = new ArrayList<>(List.of(AVLTree.RebalancePolicy.AVL));
+		int warmup = 3;
+		int iterations = 5;
+		boolean treeMap = true;
+		boolean footprint = false;
+		boolean frozen = false;
+		boolean pooled = false;
+
+		for(String arg : args) {
+			String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+			String value = kv.length > 1 ? kv[1] : "true";
+			switch(kv[0]) {
+			case "sizes":
+				String[] parts = value.split(",");
+				sizes = new int[parts.length];
+				for(int i = 0; i < parts.length; i++)
+					sizes[i] = Integer.parseInt(parts[i].trim());
+				break;
+			case "dists":
+				dists.clear();
+				for(String d : value.split(","))
+					dists.add(Distribution.valueOf(d.trim().toUpperCase()));
+				break;
+			case "ops":
+				ops = List.of(value.split(","));
+				break;
+			case "policies":
+				policies.clear();
+				for(String p : value.split(","))
+					policies.add(AVLTree.RebalancePolicy.valueOf(p.trim().toUpperCase()));
+				break;
+			case "warmup": warmup = Integer.parseInt(value); break;
+			case "iterations": iterations = Integer.parseInt(value); break;
+			case "treemap": treeMap = Boolean.parseBoolean(value); break;
+			case "footprint": footprint = Boolean.parseBoolean(value); break;
+			case "frozen": frozen = Boolean.parseBoolean(value); break;
+			case "pooled": pooled = Boolean.parseBoolean(value); break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		System.out.printf("%-8s %-11s %-12s %-9s %12s %12s %10s%n", "impl", "dist", "op", "n", "ns/op", "B/op", "rot/op");
+		for(int n : sizes) {
+			for(Distribution dist : dists) {
+				Workload w = new Workload(n, dist);
+				for(String op : ops) {
+					for(AVLTree.RebalancePolicy policy : policies)
+						run(policy == AVLTree.RebalancePolicy.AVL ? "AVLTree" : "WAVLTree", op, w, warmup, iterations);
+					if(frozen)
+						run("Frozen", op, w, warmup, iterations);
+					if(pooled)
+						run("Pooled", op, w, warmup, iterations);
+					if(treeMap)
+						run("TreeMap", op, w, warmup, iterations);
+				}
+			}
+			if(footprint)
+				System.out.printf("%-8s %-11s %-12s %-9d %12s %12.1f%n", "AVLTree", "SEQUENTIAL", "bytes/key", n, "", footprint(n));
+		}
+	}
+
+	/**
+	 * The keys of one run: insertion order, deletion order and probes.
+	 */
+	static final class Workload {
+		final int n;
+		final Distribution dist;
+		final int[] insertOrder;
+		final int[] deleteOrder;
+		final int[] probes; // Keys for search and bounds for less.
+		final int[] ranks; // Ranks for select.
+
+		Workload(int n, Distribution dist) {
+			this.n = n;
+			this.dist = dist;
+			Random rnd = new Random(SEED ^ n ^ dist.ordinal());
+			this.insertOrder = ascending(n);
+			if(dist == Distribution.RANDOM || dist == Distribution.ZIPFIAN)
+				shuffle(this.insertOrder, rnd);
+
+			switch(dist) {
+			case SEQUENTIAL:
+				this.deleteOrder = ascending(n);
+				break;
+			case ADVERSARIAL:
+				this.deleteOrder = new int[n];
+				for(int i = 0, lo = 1, hi = n; i < n; i++)
+					this.deleteOrder[i] = (i % 2 == 0) ? lo++ : hi--;
+				break;
+			default:
+				this.deleteOrder = ascending(n);
+				shuffle(this.deleteOrder, rnd);
+			}
+
+			int probeCount = (int) LOOKUP_OPS;
+			this.probes = new int[probeCount];
+			this.ranks = new int[probeCount];
+			Zipf zipf = (dist == Distribution.ZIPFIAN) ? new Zipf(n, 0.99, rnd) : null;
+			for(int i = 0; i < probeCount; i++) {
+				if(dist == Distribution.SEQUENTIAL || dist == Distribution.ADVERSARIAL)
+					this.probes[i] = (i % n) + 1;
+				else if(zipf != null)
+					this.probes[i] = this.insertOrder[zipf.next() - 1]; // Hot keys are spread over the key space.
+				else
+					this.probes[i] = rnd.nextInt(n) + 1;
+				this.ranks[i] = (zipf != null) ? zipf.next() : rnd.nextInt(n) + 1;
+			}
+		}
+	}
+
+	/**
+	 * Runs warmup and measured iterations of op and prints the averages of the measured ones.
+	 */
+	private static void run(String impl, String op, Workload w, int warmup, int iterations) {
+		Result total = new Result();
+		for(int i = 0; i < warmup + iterations; i++) {
+			Result r;
+			if(impl.equals("TreeMap"))
+				r = treeMap(op, w);
+			else if(impl.equals("Frozen"))
+				r = frozen(op, w);
+			else if(impl.equals("Pooled"))
+				r = (op.equals("insert") || op.equals("delete") || op.equals("churn")) ? avlTree(op, w, AVLTree.RebalancePolicy.AVL, NODE_POOL) : null;
+			else
+				r = avlTree(op, w, impl.equals("WAVLTree") ? AVLTree.RebalancePolicy.WAVL : AVLTree.RebalancePolicy.AVL, 0);
+			if(r == null) {
+				return; // Not supported by this implementation.
+			}
+			if(i >= warmup)
+				total.add(r);
+		}
+		System.out.printf("%-8s %-11s %-12s %-9d %12.1f %12.1f %10s%n", impl, w.dist, op, w.n,
+				(double) total.nanos / total.ops, (double) total.bytes / total.ops,
+				total.rotations < 0 ? "" : String.format("%.3f", (double) total.rotations / total.ops));
+	}
+
+	/**
+	 * One measured iteration of op on AVLTree under the given rebalance policy,
+	 * with a node pool of the given capacity (0 for none).
+	 */
+	private static Result avlTree(String op, Workload w, AVLTree.RebalancePolicy policy, int nodePool) {
+		AVLTree tree = new AVLTree();
+		tree.setRebalancePolicy(policy);
+		if(nodePool > 0)
+			tree.enableNodePool(nodePool);
+		if(!op.equals("insert"))
+			fill(tree, w.insertOrder);
+		Result r = new Result();
+		long acc = 0;
+		r.start();
+		switch(op) {
+		case "insert":
+			for(int k : w.insertOrder)
+				acc += tree.insert(k, VALUES[k & (VALUE_POOL - 1)]);
+			r.stop(w.n);
+			r.rotations = acc;
+			break;
+		case "delete":
+			for(int k : w.deleteOrder)
+				acc += tree.delete(k);
+			r.stop(w.n);
+			r.rotations = acc;
+			break;
+		case "churn":
+			for(int k : w.deleteOrder) {
+				acc += tree.delete(k);
+				acc += tree.insert(k, VALUES[k & (VALUE_POOL - 1)]);
+			}
+			r.stop(2L * w.n);
+			r.rotations = acc;
+			break;
+		case "search":
+			for(int k : w.probes)
+				acc += tree.search(k).length();
+			r.stop(w.probes.length);
+			break;
+		case "min":
+			for(long i = 0; i < LOOKUP_OPS; i++)
+				acc += tree.min().length();
+			r.stop(LOOKUP_OPS);
+			break;
+		case "max":
+			for(long i = 0; i < LOOKUP_OPS; i++)
+				acc += tree.max().length();
+			r.stop(LOOKUP_OPS);
+			break;
+		case "select":
+			for(int i : w.ranks)
+				acc += tree.select(i).length();
+			r.stop(w.ranks.length);
+			break;
+		case "less":
+			for(int k : w.probes)
+				acc += tree.less(k);
+			r.stop(w.probes.length);
+			break;
+		case "keysToArray": {
+			long reps = Math.max(1, SCAN_ELEMENTS / w.n);
+			for(long i = 0; i < reps; i++)
+				acc += tree.keysToArray().length;
+			r.stop(reps * w.n);
+			break;
+		}
+		case "infoToArray": {
+			long reps = Math.max(1, SCAN_ELEMENTS / w.n);
+			for(long i = 0; i < reps; i++)
+				acc += tree.infoToArray().length;
+			r.stop(reps * w.n);
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("Unknown operation: " + op);
+		}
+		sink += acc;
+		return r;
+	}
+
+	/**
+	 * One measured iteration of op on a FrozenAVLTree, or null if op changes the tree.
+	 */
+	private static Result frozen(String op, Workload w) {
+		if(op.equals("insert") || op.equals("delete") || op.equals("churn"))
+			return null;
+		AVLTree tree = new AVLTree();
+		fill(tree, w.insertOrder);
+		AVLTree.FrozenAVLTree frozen = tree.freeze();
+		tree = null; // Only the frozen copy stays reachable while measuring.
+		Result r = new Result();
+		long acc = 0;
+		r.start();
+		switch(op) {
+		case "search":
+			for(int k : w.probes)
+				acc += frozen.search(k).length();
+			r.stop(w.probes.length);
+			break;
+		case "min":
+			for(long i = 0; i < LOOKUP_OPS; i++)
+				acc += frozen.min().length();
+			r.stop(LOOKUP_OPS);
+			break;
+		case "max":
+			for(long i = 0; i < LOOKUP_OPS; i++)
+				acc += frozen.max().length();
+			r.stop(LOOKUP_OPS);
+			break;
+		case "select":
+			for(int i : w.ranks)
+				acc += frozen.select(i).length();
+			r.stop(w.ranks.length);
+			break;
+		case "less":
+			for(int k : w.probes)
+				acc += frozen.less(k);
+			r.stop(w.probes.length);
+			break;
+		case "keysToArray": {
+			long reps = Math.max(1, SCAN_ELEMENTS / w.n);
+			for(long i = 0; i < reps; i++)
+				acc += frozen.keysToArray().length;
+			r.stop(reps * w.n);
+			break;
+		}
+		case "infoToArray": {
+			long reps = Math.max(1, SCAN_ELEMENTS / w.n);
+			for(long i = 0; i < reps; i++)
+				acc += frozen.infoToArray().length;
+			r.stop(reps * w.n);
+			break;
+		}
+		default:
+			return null;
+		}
+		sink += acc;
+		return r;
+	}
+
+	/**
+	 * One measured iteration of the TreeMap equivalent of op, or null if there is none.
+	 * TreeMap has no order statistics, so select and less are not measured.
+	 */
+	private static Result treeMap(String op, Workload w) {
+		TreeMap<Integer, String> map = new TreeMap<>();
+		if(!op.equals("insert"))
+			for(int k : w.insertOrder)
+				map.put(k, VALUES[k & (VALUE_POOL - 1)]);
+		Result r = new Result();
+		long acc = 0;
+		r.start();
+		switch(op) {
+		case "insert":
+			for(int k : w.insertOrder)
+				acc += (map.putIfAbsent(k, VALUES[k & (VALUE_POOL - 1)]) == null) ? 0 : 1;
+			r.stop(w.n);
+			break;
+		case "delete":
+			for(int k : w.deleteOrder)
+				acc += map.remove(k).length();
+			r.stop(w.n);
+			break;
+		case "churn":
+			for(int k : w.deleteOrder) {
+				acc += map.remove(k).length();
+				map.put(k, VALUES[k & (VALUE_POOL - 1)]);
+			}
+			r.stop(2L * w.n);
+			break;
+		case "search":
+			for(int k : w.probes)
+				acc += map.get(k).length();
+			r.stop(w.probes.length);
+			break;
+		case "min":
+			for(long i = 0; i < LOOKUP_OPS; i++)
+				acc += map.firstEntry().getValue().length();
+			r.stop(LOOKUP_OPS);
+			break;
+		case "max":
+			for(long i = 0; i < LOOKUP_OPS; i++)
+				acc += map.lastEntry().getValue().length();
+			r.stop(LOOKUP_OPS);
+			break;
+		case "keysToArray": {
+			long reps = Math.max(1, SCAN_ELEMENTS / w.n);
+			for(long i = 0; i < reps; i++) {
+				int[] keys = new int[map.size()];
+				int j = 0;
+				for(int k : map.keySet())
+					keys[j++] = k;
+				acc += keys.length;
+			}
+			r.stop(reps * w.n);
+			break;
+		}
+		case "infoToArray": {
+			long reps = Math.max(1, SCAN_ELEMENTS / w.n);
+			for(long i = 0; i < reps; i++)
+				acc += map.values().toArray(new String[0]).length;
+			r.stop(reps * w.n);
+			break;
+		}
+		default:
+			return null;
+		}
+		r.rotations = -1;
+		sink += acc;
+		return r;
+	}
+
+	/**
+	 * @return the retained heap bytes per key of an AVLTree with keys 1..n.
+	 */
+	private static double footprint(int n) {
+		Runtime rt = Runtime.getRuntime();
+		gc();
+		long before = rt.totalMemory() - rt.freeMemory();
+		AVLTree tree = new AVLTree();
+		for(int k = 1; k <= n; k++)
+			tree.insert(k, VALUES[0]);
+		gc();
+		long after = rt.totalMemory() - rt.freeMemory();
+		sink += tree.size();
+		return (double) (after - before) / n;
+	}
+
+	private static void gc() {
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void fill(AVLTree tree, int[] keys) {
+		for(int k : keys)
+			tree.insert(k, VALUES[k & (VALUE_POOL - 1)]);
+	}
+
+	private static int[] ascending(int n) {
+		int[] arr = new int[n];
+		for(int i = 0; i < n; i++)
+			arr[i] = i + 1;
+		return arr;
+	}
+
+	private static void shuffle(int[] arr, Random rnd) {
+		for(int i = arr.length - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			int tmp = arr[i];
+			arr[i] = arr[j];
+			arr[j] = tmp;
+		}
+	}
+
+	/**
+	 * Time, allocation and rebalancing totals of measured iterations.
+	 */
+	static final class Result {
+		private static final com.sun.management.ThreadMXBean THREADS =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		long nanos;
+		long bytes;
+		long ops;
+		long rotations = -1;
+		private long startNanos;
+		private long startBytes;
+
+		void start() {
+			this.startBytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+			this.startNanos = System.nanoTime();
+		}
+
+		void stop(long ops) {
+			this.nanos = System.nanoTime() - this.startNanos;
+			this.bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - this.startBytes;
+			this.ops = ops;
+		}
+
+		void add(Result r) {
+			this.nanos += r.nanos;
+			this.bytes += r.bytes;
+			this.ops += r.ops;
+			if(r.rotations >= 0)
+				this.rotations = Math.max(this.rotations, 0) + r.rotations;
+		}
+	}
+
+	/**
+	 * Zipf distribution over 1..n (rank 1 is the hottest), using the rejection-inversion
+	 * method of Hormann and Derflinger so no table of n probabilities is needed.
+	 */
+	static final class Zipf {
+		private final int n;
+		private final double s;
+		private final Random rnd;
+		private final double hIntegralX1;
+		private final double hIntegralN;
+		private final double threshold;
+
+		Zipf(int n, double s, Random rnd) {
+			this.n = n;
+			this.s = s;
+			this.rnd = rnd;
+			this.hIntegralX1 = hIntegral(1.5) - 1;
+			this.hIntegralN = hIntegral(n + 0.5);
+			this.threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+		}
+
+		int next() {
+			while(true) {
+				double u = this.hIntegralN + this.rnd.nextDouble() * (this.hIntegralX1 - this.hIntegralN);
+				double x = hIntegralInverse(u);
+				int k = (int) (x + 0.5);
+				if(k < 1)
+					k = 1;
+				else if(k > this.n)
+					k = this.n;
+				if(k - x <= this.threshold || u >= hIntegral(k + 0.5) - h(k))
+					return k;
+			}
+		}
+
+		private double h(double x) {
+			return Math.exp(-this.s * Math.log(x));
+		}
+
+		private double hIntegral(double x) {
+			double logX = Math.log(x);
+			return helper2((1 - this.s) * logX) * logX;
+		}
+
+		private double hIntegralInverse(double x) {
+			double t = x * (1 - this.s);
+			if(t < -1)
+				t = -1;
+			return Math.exp(helper1(t) * x);
+		}
+
+		private static double helper1(double x) {
+			return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+		}
+
+		private static double helper2(double x) {
+			return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x * (1.0 / 3) * (1 + 0.25 * x));
+		}
+	}
+}
@@ -0,0 +1,312 @@
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * AVLTreeConcurrencyBenchmark
+ *
+ * A multi-threaded stress test and throughput harness for the concurrent trees
+ * (AVLTree.ConcurrentAVLTree and AVLTree.OptimisticAVLTree), with
+ * java.util.concurrent.ConcurrentSkipListMap as a baseline.
+ *
+ * stress: writer threads insert and delete keys, half of them in a range every writer shares
+ *         and half in a range of keys each writer owns, while reader threads check that keys
+ *         which are never deleted are always found and that order statistics stay consistent.
+ *         At the end the contents must equal what the writers' successful updates add up to,
+ *         and the structure of an OptimisticAVLTree must pass its checkStructure.
+ * throughput: every thread runs a read/write mix for a fixed time over a prefilled tree,
+ *         for each thread count, and the total operations per second are reported.
+ *
+ * Usage:
+ *   javac AVLTree.java AVLTreeConcurrencyBenchmark.java
+ *   java -Xmx4g AVLTreeConcurrencyBenchmark [options]
+ *
+ * Options (all optional):
+ *   --threads=1,2,4,8,16,32   --size=1000000   --reads=95   --seconds=5
+ *   --writers=4      Writer threads of the stress test, next to max(2, processors - writers) readers.
+ *   --stress=true --throughput=true
+ *
+ */
+public class AVLTreeConcurrencyBenchmark {
+
+	/**
+	 * The operations the harness needs, over each implementation.
+	 */
+	interface Target {
+		String name();
+		boolean insert(int k, String v); // True if k was inserted.
+		boolean delete(int k); // True if k was deleted.
+		String search(int k);
+		String select(int i);
+		long less(int k);
+		int[] keys();
+		String checkStructure(); // null if the structure is sound (or has nothing to check), called after the threads stop.
+	}
+
+	private static final String VALUE = "v";
+
+	private static volatile long sink; // Consumes results so the JIT cannot drop the measured work.
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] threads = {1, 2, 4, 8, 16, 32};
+		int size = 1_000_000;
+		int reads = 95;
+		int seconds = 5;
+		int writers = 4;
+		boolean stress = true;
+		boolean throughput = true;
+
+		for(String arg : args) {
+			String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+			String value = kv.length > 1 ? kv[1] : "true";
+			switch(kv[0]) {
+			case "threads":
+				String[] parts = value.split(",");
+				threads = new int[parts.length];
+				for(int i = 0; i < parts.length; i++)
+					threads[i] = Integer.parseInt(parts[i].trim());
+				break;
+			case "size": size = Integer.parseInt(value); break;
+			case "reads": reads = Integer.parseInt(value); break;
+			case "seconds": seconds = Integer.parseInt(value); break;
+			case "writers": writers = Integer.parseInt(value); break;
+			case "stress": stress = Boolean.parseBoolean(value); break;
+			case "throughput": throughput = Boolean.parseBoolean(value); break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		if(stress) {
+			int readers = Math.max(2, Runtime.getRuntime().availableProcessors() - writers);
+			for(String impl : new String[] {"ConcurrentAVLTree", "OptimisticAVLTree", "ConcurrentSkipListMap"})
+				stress(target(impl), writers, readers, 10_000, seconds);
+		}
+		if(throughput) {
+			System.out.printf("%-22s %8s %8s %16s%n", "impl", "threads", "reads%", "ops/s");
+			for(int t : threads)
+				for(String impl : new String[] {"ConcurrentAVLTree", "OptimisticAVLTree", "ConcurrentSkipListMap"})
+					throughput(target(impl), t, size, reads, seconds);
+		}
+	}
+
+	/**
+	 * The keys 1..range/2 are shared: every writer inserts or deletes them at random, so writers race
+	 * for the same keys and nodes. Above range/2, writer id owns the keys k with (k - range/2 - 1) % writers == id
+	 * and toggles them. Each writer counts, per key, its successful inserts minus its successful deletes,
+	 * so at the end a key must be in the tree exactly when the counts of all writers add up to 1.
+	 * Readers check the keys above range, which are inserted once and never deleted.
+	 * range is small enough that the sum of all keys fits in an int.
+	 */
+	private static void stress(Target target, int writers, int readers, int range, int seconds) throws InterruptedException {
+		if(writers < 1 || writers > range / 2)
+			throw new IllegalArgumentException("Writers must be in 1.." + range / 2 + ": " + writers);
+		int shared = range / 2;
+		long permanentSum = 0;
+		for(int k = range + 1; k <= 2 * range; k++) {
+			target.insert(k, VALUE + k);
+			permanentSum += k;
+		}
+		final long minLess = permanentSum;
+		final long maxLess = permanentSum + (long) range * (range + 1) / 2;
+
+		int threadCount = writers + readers;
+		int[][] net = new int[writers][range + 1]; // Successful inserts minus successful deletes, per writer and key.
+		AtomicBoolean stop = new AtomicBoolean(false);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] workers = new Thread[threadCount];
+		for(int t = 0; t < threadCount; t++) {
+			final int id = t;
+			workers[t] = new Thread(() -> {
+				SplittableRandom rnd = new SplittableRandom(id);
+				try {
+					while(!stop.get()) {
+						if(id < writers) {
+							int k;
+							boolean insert;
+							if(rnd.nextBoolean()) {
+								k = rnd.nextInt(shared) + 1;
+								insert = rnd.nextBoolean();
+							}
+							else {
+								k = shared + rnd.nextInt((range - shared) / writers) * writers + id + 1;
+								insert = net[id][k] == 0;
+							}
+							if(insert) {
+								if(target.insert(k, VALUE + k))
+									net[id][k]++;
+							}
+							else if(target.delete(k)) {
+								net[id][k]--;
+							}
+						}
+						else {
+							int k = range + 1 + rnd.nextInt(range);
+							if(!(VALUE + k).equals(target.search(k)))
+								throw new AssertionError("Permanent key " + k + " not found");
+							int own = rnd.nextInt(range) + 1;
+							String v = target.search(own);
+							if(v != null && !v.equals(VALUE + own))
+								throw new AssertionError("Wrong value for " + own);
+							if(target.select(1) == null)
+								throw new AssertionError("select(1) returned null on a non-empty tree");
+							long less = target.less(2 * range);
+							if(less < minLess || less > maxLess)
+								throw new AssertionError("less(" + 2 * range + ") = " + less + " is out of range");
+						}
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+					stop.set(true);
+				}
+			});
+			workers[t].start();
+		}
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		for(Thread w : workers)
+			w.join();
+
+		/* Join made the writers' counts visible: a key is in the tree if and only if they add up to 1 */
+		BitSet present = new BitSet(range + 1);
+		String result = null;
+		for(int k = 1; k <= range && result == null; k++) {
+			int count = 0;
+			for(int w = 0; w < writers; w++)
+				count += net[w][k];
+			if(count == 1)
+				present.set(k);
+			else if(count != 0)
+				result = "FAILED: key " + k + " was inserted " + count + " more times than deleted";
+		}
+		int[] keys = target.keys();
+		if(failure.get() != null)
+			result = "FAILED: " + failure.get();
+		else if(result == null && keys.length != range + present.cardinality())
+			result = "FAILED: size " + keys.length + ", expected " + (range + present.cardinality());
+		for(int i = 0; i < keys.length && result == null; i++) {
+			int k = keys[i];
+			if((i > 0 && keys[i - 1] >= k) || (k <= range && !present.get(k)))
+				result = "FAILED: unexpected key " + k;
+		}
+		if(result == null) {
+			String broken = target.checkStructure();
+			if(broken != null)
+				result = "FAILED: " + broken;
+		}
+		System.out.printf("stress %-22s writers=%d readers=%d: %s%n", target.name(), writers, readers, (result == null) ? "OK" : result);
+	}
+
+	/**
+	 * Every thread runs the mix for seconds over a tree prefilled with the odd keys of 1..2*size.
+	 * Writes insert or delete even keys, so the tree size stays around size.
+	 */
+	private static void throughput(Target target, int threadCount, int size, int reads, int seconds) throws InterruptedException {
+		for(int k = 1; k <= 2 * size; k += 2)
+			target.insert(k, VALUE);
+
+		AtomicBoolean stop = new AtomicBoolean(false);
+		CountDownLatch start = new CountDownLatch(1);
+		long[] counts = new long[threadCount * 16]; // Padded, one counter per 128 bytes.
+		Thread[] workers = new Thread[threadCount];
+		for(int t = 0; t < threadCount; t++) {
+			final int id = t;
+			workers[t] = new Thread(() -> {
+				SplittableRandom rnd = new SplittableRandom(31L * id + 7);
+				long ops = 0;
+				long acc = 0;
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				while(!stop.get()) {
+					for(int j = 0; j < 64; j++) {
+						int k = rnd.nextInt(2 * size) + 1;
+						int dice = rnd.nextInt(100);
+						if(dice < reads) {
+							String v = target.search(k);
+							acc += (v == null) ? 0 : 1;
+						}
+						else if((dice & 1) == 0) {
+							target.insert((k & ~1) + 2, VALUE);
+						}
+						else {
+							target.delete((k & ~1) + 2);
+						}
+					}
+					ops += 64;
+				}
+				counts[id * 16] = ops;
+				sink += acc;
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		long total = 0;
+		for(int t = 0; t < threadCount; t++) {
+			workers[t].join();
+			total += counts[t * 16];
+		}
+		System.out.printf("%-22s %8d %8d %16.0f%n", target.name(), threadCount, reads, (double) total / seconds);
+	}
+
+	private static Target target(String impl) {
+		switch(impl) {
+		case "ConcurrentAVLTree": {
+			AVLTree.ConcurrentAVLTree tree = new AVLTree.ConcurrentAVLTree();
+			return new Target() {
+				public String name() {return impl;}
+				public boolean insert(int k, String v) {return tree.insert(k, v) != -1;}
+				public boolean delete(int k) {return tree.delete(k) != -1;}
+				public String search(int k) {return tree.search(k);}
+				public String select(int i) {return tree.select(i);}
+				public long less(int k) {return tree.less(k);}
+				public int[] keys() {return tree.keysToArray();}
+				public String checkStructure() {return null;} //A single lock, the contents check covers it
+			};
+		}
+		case "OptimisticAVLTree": {
+			AVLTree.OptimisticAVLTree tree = new AVLTree.OptimisticAVLTree();
+			return new Target() {
+				public String name() {return impl;}
+				public boolean insert(int k, String v) {return tree.insert(k, v) != -1;}
+				public boolean delete(int k) {return tree.delete(k) != -1;}
+				public String search(int k) {return tree.search(k);}
+				public String select(int i) {return tree.select(i);}
+				public long less(int k) {return tree.less(k);}
+				public int[] keys() {return tree.keysToArray();}
+				public String checkStructure() {return tree.checkStructure();}
+			};
+		}
+		default: {
+			/* ConcurrentSkipListMap has no order statistics, select and less walk the map */
+			ConcurrentSkipListMap<Integer, String> map = new ConcurrentSkipListMap<>();
+			return new Target() {
+				public String name() {return impl;}
+				public boolean insert(int k, String v) {return map.putIfAbsent(k, v) == null;}
+				public boolean delete(int k) {return map.remove(k) != null;}
+				public String search(int k) {return map.get(k);}
+				public String select(int i) {
+					java.util.Map.Entry<Integer, String> e = map.firstEntry();
+					return (i == 1 && e != null) ? e.getValue() : null;
+				}
+				public long less(int k) {
+					long sum = 0;
+					for(int key : map.headMap(k, true).keySet())
+						sum += key;
+					return sum;
+				}
+				public int[] keys() {return map.keySet().stream().mapToInt(Integer::intValue).toArray();}
+				public String checkStructure() {return null;}
+			};
+		}
+		}
+	}
+}
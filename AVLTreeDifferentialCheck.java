@@ -0,0 +1,427 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/**
+ *
+ * AVLTreeDifferentialCheck
+ *
+ * A randomized differential check of the alternative tree engines against java.util.TreeMap
+ * and against AVLTree itself.
+ *
+ * int engines: ArrayAVLTree, OffHeapAVLTree, PersistentAVLTree and IntLongAVLTree run the same
+ *         random inserts and deletes as an AVLTree. Every update must return exactly what AVLTree
+ *         returned (-1, or the same number of rebalancing operations), so the engines must not only
+ *         hold the same keys but also rebalance the same way. Persistent snapshots taken along the
+ *         way must keep the contents they were taken with.
+ * long engines: LongAVLTree and LongLongAVLTree run random updates over the whole long range,
+ *         including 0, negative keys and sums that wrap around, against a TreeMap.
+ *
+ * Every few hundred operations the full contents are compared (size, empty, keysToArray,
+ * infoToArray/valuesToArray, min, max) along with random search, less, select and range probes,
+ * and the slot trees are walked through getRoot() to check parent links, order, heights,
+ * balance, sizes and sums. The first divergence (or exception) is reported and the exit code is 1.
+ * All inputs come from the seed, so a failure is reproduced by rerunning with the same options.
+ *
+ * Usage:
+ *   javac AVLTree.java AVLTreeDifferentialCheck.java
+ *   java AVLTreeDifferentialCheck [options]
+ *
+ * Options (all optional):
+ *   --rounds=20 --ops=20000 --seed=1
+ *   --range=4000     int keys are drawn from 1..range, so most inserts and deletes hit existing keys.
+ *   --verify=499     Operations between full comparisons.
+ *
+ */
+public class AVLTreeDifferentialCheck {
+
+	private static final int PROBES = 32; // Random queries per full comparison.
+	private static final int MAX_SNAPSHOTS = 8; // Persistent snapshots kept alive at a time.
+
+	public static void main(String[] args) {
+		int rounds = 20;
+		int ops = 20_000;
+		long seed = 1;
+		int range = 4000;
+		int verify = 499;
+
+		for(String arg : args) {
+			String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+			String value = kv.length > 1 ? kv[1] : "true";
+			switch(kv[0]) {
+			case "rounds": rounds = Integer.parseInt(value); break;
+			case "ops": ops = Integer.parseInt(value); break;
+			case "seed": seed = Long.parseLong(value); break;
+			case "range": range = Integer.parseInt(value); break;
+			case "verify": verify = Integer.parseInt(value); break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if(range < 1 || range > 65_535)
+			throw new IllegalArgumentException("range must be in 1..65535 so key sums fit in an int: " + range);
+		if(verify < 1)
+			throw new IllegalArgumentException("verify must be positive: " + verify);
+
+		try {
+			for(int round = 0; round < rounds; round++) {
+				intEngines(new SplittableRandom(seed + round), ops, range, verify);
+				longEngines(new SplittableRandom(~(seed + round)), ops, verify);
+			}
+		}
+		catch(RuntimeException e) { //A divergence, or an exception thrown by an engine
+			System.out.println("FAILED: " + e + " (--seed=" + seed + " --range=" + range + " --verify=" + verify + ")");
+			System.exit(1);
+		}
+		System.out.printf("OK: %d rounds of %d operations%n", rounds, ops);
+	}
+
+	/*/*************************************************
+	 * 					int Engines					   *
+	 ***************************************************/
+
+	/**
+	 * Runs ops random updates on an AVLTree and on every int engine, comparing each update's result,
+	 * and compares the full contents every verify operations and at the end of the round.
+	 * The last phase deletes the remaining keys in random order, so every round ends on empty trees.
+	 */
+	private static void intEngines(SplittableRandom rnd, int ops, int range, int verify) {
+		AVLTree reference = new AVLTree();
+		TreeMap<Integer, String> model = new TreeMap<>();
+		AVLTree.ArrayAVLTree array = new AVLTree.ArrayAVLTree();
+		AVLTree.PersistentAVLTree persistent = new AVLTree.PersistentAVLTree();
+		AVLTree.IntLongAVLTree primitive = new AVLTree.IntLongAVLTree();
+		List<AVLTree.PersistentAVLTree> snapshots = new ArrayList<>();
+		List<TreeMap<Integer, String>> snapshotModels = new ArrayList<>();
+
+		try(AVLTree.OffHeapAVLTree offHeap = new AVLTree.OffHeapAVLTree()) {
+			for(int op = 1; op <= ops; op++) {
+				int k = 1 + rnd.nextInt(range);
+				String v = "v" + k;
+				String name;
+				if(rnd.nextInt(100) < 55) {
+					int expected = reference.insert(k, v);
+					if((expected == -1) != model.containsKey(k))
+						throw new IllegalStateException("AVLTree.insert(" + k + ") returned " + expected + ", TreeMap containsKey " + model.containsKey(k));
+					model.putIfAbsent(k, v);
+					name = "insert(" + k + ")";
+					same("ArrayAVLTree." + name, expected, array.insert(k, v));
+					same("OffHeapAVLTree." + name, expected, offHeap.insert(k, v));
+					same("PersistentAVLTree." + name, expected, persistent.insert(k, v));
+					same("IntLongAVLTree." + name, expected, primitive.insert(k, k * 31L));
+				}
+				else {
+					int expected = reference.delete(k);
+					if((expected == -1) == model.containsKey(k))
+						throw new IllegalStateException("AVLTree.delete(" + k + ") returned " + expected + ", TreeMap containsKey " + model.containsKey(k));
+					model.remove(k);
+					name = "delete(" + k + ")";
+					same("ArrayAVLTree." + name, expected, array.delete(k));
+					same("OffHeapAVLTree." + name, expected, offHeap.delete(k));
+					same("PersistentAVLTree." + name, expected, persistent.delete(k));
+					same("IntLongAVLTree." + name, expected, primitive.delete((long) k));
+				}
+
+				if(rnd.nextInt(1000) == 0) {
+					if(snapshots.size() == MAX_SNAPSHOTS) {
+						snapshots.remove(0);
+						snapshotModels.remove(0);
+					}
+					snapshots.add(persistent.snapshot());
+					snapshotModels.add(new TreeMap<>(model));
+				}
+				if(op % verify == 0)
+					verifyIntEngines(rnd, model, array, offHeap, persistent, primitive, snapshots, snapshotModels);
+			}
+			verifyIntEngines(rnd, model, array, offHeap, persistent, primitive, snapshots, snapshotModels);
+
+			List<Integer> rest = new ArrayList<>(model.keySet());
+			for(int i = rest.size() - 1; i > 0; i--) {
+				int j = rnd.nextInt(i + 1);
+				Integer t = rest.get(i);
+				rest.set(i, rest.get(j));
+				rest.set(j, t);
+			}
+			for(int k : rest) {
+				int expected = reference.delete(k);
+				model.remove(k);
+				same("ArrayAVLTree.delete(" + k + ")", expected, array.delete(k));
+				same("OffHeapAVLTree.delete(" + k + ")", expected, offHeap.delete(k));
+				same("PersistentAVLTree.delete(" + k + ")", expected, persistent.delete(k));
+				same("IntLongAVLTree.delete(" + k + ")", expected, primitive.delete((long) k));
+			}
+			verifyIntEngines(rnd, model, array, offHeap, persistent, primitive, snapshots, snapshotModels);
+		}
+	}
+
+	private static void verifyIntEngines(SplittableRandom rnd, TreeMap<Integer, String> model,
+			AVLTree.ArrayAVLTree array, AVLTree.OffHeapAVLTree offHeap, AVLTree.PersistentAVLTree persistent,
+			AVLTree.IntLongAVLTree primitive, List<AVLTree.PersistentAVLTree> snapshots, List<TreeMap<Integer, String>> snapshotModels) {
+		verifySlotTree("ArrayAVLTree", rnd, model, array);
+		verifySlotTree("OffHeapAVLTree", rnd, model, offHeap);
+		verifyPersistent("PersistentAVLTree", rnd, model, persistent);
+		for(int s = 0; s < snapshots.size(); s++)
+			verifyPersistent("PersistentAVLTree snapshot " + s, rnd, snapshotModels.get(s), snapshots.get(s));
+		verifyIntLong(rnd, model, primitive);
+	}
+
+	private static void verifySlotTree(String name, SplittableRandom rnd, TreeMap<Integer, String> model, AVLTree.SlotAVLTree tree) {
+		same(name + ".size()", model.size(), tree.size());
+		same(name + ".empty()", model.isEmpty(), tree.empty());
+		sameKeys(name, model, tree.keysToArray(), tree.infoToArray());
+		same(name + ".min()", model.isEmpty() ? null : model.firstEntry().getValue(), tree.min());
+		same(name + ".max()", model.isEmpty() ? null : model.lastEntry().getValue(), tree.max());
+		if(tree.getRoot() == null) {
+			if(!model.isEmpty())
+				throw new IllegalStateException(name + ".getRoot() is null with " + model.size() + " keys");
+		}
+		else {
+			checkStructure(name, tree.getRoot(), null, Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+		for(int q = 0; q < PROBES; q++) {
+			int k = probe(rnd, model);
+			same(name + ".search(" + k + ")", model.get(k), tree.search(k));
+			same(name + ".less(" + k + ")", lessInt(model, k), tree.less(k));
+			int i = rnd.nextInt(model.size() + 2);
+			same(name + ".select(" + i + ")", select(model, i), tree.select(i));
+		}
+	}
+
+	private static void verifyPersistent(String name, SplittableRandom rnd, TreeMap<Integer, String> model, AVLTree.PersistentAVLTree tree) {
+		same(name + ".size()", model.size(), tree.size());
+		same(name + ".empty()", model.isEmpty(), tree.empty());
+		sameKeys(name, model, tree.keysToArray(), tree.infoToArray());
+		same(name + ".min()", model.isEmpty() ? null : model.firstEntry().getValue(), tree.min());
+		same(name + ".max()", model.isEmpty() ? null : model.lastEntry().getValue(), tree.max());
+		for(int q = 0; q < PROBES; q++) {
+			int k = probe(rnd, model);
+			same(name + ".search(" + k + ")", model.get(k), tree.search(k));
+			same(name + ".less(" + k + ")", lessInt(model, k), tree.less(k));
+			int i = rnd.nextInt(model.size() + 2);
+			same(name + ".select(" + i + ")", select(model, i), tree.select(i));
+		}
+	}
+
+	private static void verifyIntLong(SplittableRandom rnd, TreeMap<Integer, String> model, AVLTree.IntLongAVLTree tree) {
+		String name = "IntLongAVLTree";
+		same(name + ".size()", model.size(), tree.size());
+		same(name + ".empty()", model.isEmpty(), tree.empty());
+		int[] keys = tree.keysToArray();
+		long[] values = tree.valuesToArray();
+		same(name + ".keysToArray().length", model.size(), keys.length);
+		same(name + ".valuesToArray().length", model.size(), values.length);
+		int i = 0;
+		for(int k : model.keySet()) {
+			same(name + ".keysToArray()[" + i + "]", k, keys[i]);
+			same(name + ".valuesToArray()[" + i + "]", k * 31L, values[i]);
+			i++;
+		}
+		if(!model.isEmpty()) {
+			same(name + ".minKey()", model.firstKey(), tree.minKey());
+			same(name + ".maxKey()", model.lastKey(), tree.maxKey());
+			same(name + ".min()", model.firstKey() * 31L, tree.min());
+			same(name + ".max()", model.lastKey() * 31L, tree.max());
+		}
+		for(int q = 0; q < PROBES; q++) {
+			int k = probe(rnd, model);
+			same(name + ".search(" + k + ")", model.containsKey(k) ? k * 31L : -1L, tree.search(k, -1L));
+			same(name + ".contains(" + k + ")", model.containsKey(k), tree.contains(k));
+			same(name + ".less(" + k + ")", (long) lessInt(model, k), tree.less(k));
+			same(name + ".rank(" + k + ")", model.headMap(k, true).size(), tree.rank(k));
+			if(!model.isEmpty()) {
+				int j = 1 + rnd.nextInt(model.size());
+				same(name + ".selectKey(" + j + ")", keys[j - 1], tree.selectKey(j));
+				same(name + ".select(" + j + ")", values[j - 1], tree.select(j));
+			}
+		}
+	}
+
+	/**
+	 * Walks the subtree of node, checking parent links, key order, heights, balance, sizes and sums.
+	 * @param low exclusive lower bound of the keys in the subtree
+	 * @param high exclusive upper bound of the keys in the subtree
+	 * @return the height of the subtree (-1 for a virtual node)
+	 */
+	private static int checkStructure(String name, AVLTree.IAVLNode node, AVLTree.IAVLNode parent, long low, long high) {
+		if(!node.isRealNode()) {
+			if(node.getHeight() != -1 || node.getSubtreeSize() != 0 || node.getSum() != 0)
+				throw new IllegalStateException(name + ": virtual node with height " + node.getHeight() + ", size " + node.getSubtreeSize() + ", sum " + node.getSum());
+			return -1;
+		}
+		int k = node.getKey();
+		if(k <= low || k >= high)
+			throw new IllegalStateException(name + ": key " + k + " out of order");
+		AVLTree.IAVLNode p = node.getParent();
+		if((parent == null) != (p == null) || (parent != null && p.getKey() != parent.getKey()))
+			throw new IllegalStateException(name + ": wrong parent of " + k);
+		int hl = checkStructure(name, node.getLeft(), node, low, k);
+		int hr = checkStructure(name, node.getRight(), node, k, high);
+		if(Math.abs(hl - hr) > 1)
+			throw new IllegalStateException(name + ": " + k + " is out of balance (" + hl + ", " + hr + ")");
+		if(node.getHeight() != 1 + Math.max(hl, hr))
+			throw new IllegalStateException(name + ": height " + node.getHeight() + " of " + k + ", expected " + (1 + Math.max(hl, hr)));
+		if(node.getSubtreeSize() != 1 + node.getLeft().getSubtreeSize() + node.getRight().getSubtreeSize())
+			throw new IllegalStateException(name + ": wrong size of " + k);
+		if(node.getSum() != k + node.getLeft().getSum() + node.getRight().getSum())
+			throw new IllegalStateException(name + ": wrong sum of " + k);
+		return node.getHeight();
+	}
+	/*/*************************************************/
+
+	/*/*************************************************
+	 * 					long Engines				   *
+	 ***************************************************/
+
+	/**
+	 * Runs ops random updates on a LongAVLTree and a LongLongAVLTree against a TreeMap.
+	 * Keys are drawn from a small pool, so they repeat, and the pool mixes 0, the extremes
+	 * and random longs, so sums wrap around.
+	 */
+	private static void longEngines(SplittableRandom rnd, int ops, int verify) {
+		long[] pool = new long[Math.max(16, ops / 8)];
+		pool[0] = 0;
+		pool[1] = Long.MIN_VALUE;
+		pool[2] = Long.MAX_VALUE;
+		pool[3] = -1;
+		for(int i = 4; i < pool.length; i++)
+			pool[i] = (i % 2 == 0) ? rnd.nextLong() : rnd.nextInt(2 * pool.length) - pool.length;
+
+		AVLTree.LongAVLTree tree = new AVLTree.LongAVLTree();
+		AVLTree.LongLongAVLTree longs = new AVLTree.LongLongAVLTree();
+		TreeMap<Long, Long> model = new TreeMap<>();
+		for(int op = 1; op <= ops; op++) {
+			long k = pool[rnd.nextInt(pool.length)];
+			boolean present = model.containsKey(k);
+			if(rnd.nextInt(100) < 55) {
+				same("LongAVLTree.insert(" + k + ") == -1", present, tree.insert(k, "v" + k) == -1);
+				same("LongLongAVLTree.insert(" + k + ") == -1", present, longs.insert(k, ~k) == -1);
+				model.putIfAbsent(k, ~k);
+			}
+			else {
+				same("LongAVLTree.delete(" + k + ") == -1", !present, tree.delete(k) == -1);
+				same("LongLongAVLTree.delete(" + k + ") == -1", !present, longs.delete(k) == -1);
+				model.remove(k);
+			}
+			if(op % verify == 0)
+				verifyLongEngines(rnd, pool, model, tree, longs);
+		}
+		verifyLongEngines(rnd, pool, model, tree, longs);
+		while(!model.isEmpty()) {
+			long k = model.pollFirstEntry().getKey();
+			same("LongAVLTree.delete(" + k + ") == -1", false, tree.delete(k) == -1);
+			same("LongLongAVLTree.delete(" + k + ") == -1", false, longs.delete(k) == -1);
+		}
+		verifyLongEngines(rnd, pool, model, tree, longs);
+	}
+
+	private static void verifyLongEngines(SplittableRandom rnd, long[] pool, TreeMap<Long, Long> model,
+			AVLTree.LongAVLTree tree, AVLTree.LongLongAVLTree longs) {
+		same("LongAVLTree.size()", model.size(), tree.size());
+		same("LongLongAVLTree.size()", model.size(), longs.size());
+		same("LongAVLTree.empty()", model.isEmpty(), tree.empty());
+		same("LongLongAVLTree.empty()", model.isEmpty(), longs.empty());
+		long[] keys = tree.keysToArray();
+		String[] info = tree.infoToArray();
+		long[] longKeys = longs.keysToArray();
+		long[] values = longs.valuesToArray();
+		same("LongAVLTree.keysToArray().length", model.size(), keys.length);
+		same("LongLongAVLTree.keysToArray().length", model.size(), longKeys.length);
+		int i = 0;
+		for(Map.Entry<Long, Long> e : model.entrySet()) {
+			same("LongAVLTree.keysToArray()[" + i + "]", e.getKey(), keys[i]);
+			same("LongAVLTree.infoToArray()[" + i + "]", "v" + e.getKey(), info[i]);
+			same("LongLongAVLTree.keysToArray()[" + i + "]", e.getKey(), longKeys[i]);
+			same("LongLongAVLTree.valuesToArray()[" + i + "]", e.getValue(), values[i]);
+			i++;
+		}
+		if(!model.isEmpty()) {
+			same("LongAVLTree.minKey()", model.firstKey(), tree.minKey());
+			same("LongAVLTree.maxKey()", model.lastKey(), tree.maxKey());
+			same("LongAVLTree.min()", "v" + model.firstKey(), tree.min());
+			same("LongAVLTree.max()", "v" + model.lastKey(), tree.max());
+			same("LongLongAVLTree.min()", model.firstEntry().getValue(), longs.min());
+			same("LongLongAVLTree.max()", model.lastEntry().getValue(), longs.max());
+		}
+		for(int q = 0; q < PROBES; q++) {
+			long k = pool[rnd.nextInt(pool.length)];
+			long lo = pool[rnd.nextInt(pool.length)];
+			long hi = rnd.nextBoolean() ? k : pool[rnd.nextInt(pool.length)];
+			same("LongAVLTree.search(" + k + ")", model.containsKey(k) ? "v" + k : null, tree.search(k));
+			same("LongLongAVLTree.search(" + k + ")", model.containsKey(k) ? ~k : 7L, longs.search(k, 7L));
+			long less = 0;
+			for(long x : model.headMap(k, true).keySet())
+				less += x;
+			same("LongAVLTree.less(" + k + ")", less, tree.less(k));
+			same("LongLongAVLTree.less(" + k + ")", less, longs.less(k));
+			same("LongLongAVLTree.rank(" + k + ")", model.headMap(k, true).size(), longs.rank(k));
+			long rangeSum = 0;
+			int rangeCount = 0;
+			if(lo <= hi) {
+				for(long x : model.subMap(lo, true, hi, true).keySet()) {
+					rangeSum += x;
+					rangeCount++;
+				}
+			}
+			same("LongLongAVLTree.rangeSum(" + lo + ", " + hi + ")", rangeSum, longs.rangeSum(lo, hi));
+			same("LongLongAVLTree.rangeCount(" + lo + ", " + hi + ")", rangeCount, longs.rangeCount(lo, hi));
+			if(!model.isEmpty()) {
+				int j = 1 + rnd.nextInt(model.size());
+				same("LongAVLTree.selectKey(" + j + ")", keys[j - 1], tree.selectKey(j));
+				same("LongAVLTree.select(" + j + ")", info[j - 1], tree.select(j));
+				same("LongLongAVLTree.select(" + j + ")", values[j - 1], longs.select(j));
+			}
+		}
+	}
+	/*/*************************************************/
+
+	/*/*************************************************
+	 * 					General Methods				   *
+	 ***************************************************/
+
+	private static void same(String what, Object expected, Object actual) {
+		if(expected == null ? actual != null : !expected.equals(actual))
+			throw new IllegalStateException(what + " returned " + actual + ", expected " + expected);
+	}
+
+	private static void sameKeys(String name, TreeMap<Integer, String> model, int[] keys, String[] info) {
+		same(name + ".keysToArray().length", model.size(), keys.length);
+		same(name + ".infoToArray().length", model.size(), info.length);
+		int i = 0;
+		for(Map.Entry<Integer, String> e : model.entrySet()) {
+			same(name + ".keysToArray()[" + i + "]", e.getKey(), keys[i]);
+			same(name + ".infoToArray()[" + i + "]", e.getValue(), info[i]);
+			i++;
+		}
+	}
+
+	/**
+	 * Returns a key to query: a key of the model half of the time, otherwise any key
+	 * in or just outside the model's range.
+	 */
+	private static int probe(SplittableRandom rnd, TreeMap<Integer, String> model) {
+		if(model.isEmpty() || rnd.nextBoolean())
+			return rnd.nextInt(-2, 70_000);
+		Integer k = model.ceilingKey(rnd.nextInt(model.firstKey(), model.lastKey() + 1));
+		return k;
+	}
+
+	private static int lessInt(TreeMap<Integer, String> model, int k) {
+		int sum = 0;
+		for(int x : model.headMap(k, true).keySet())
+			sum += x;
+		return sum;
+	}
+
+	private static String select(TreeMap<Integer, String> model, int i) {
+		if(i < 1 || i > model.size())
+			return null;
+		for(String v : model.values()) {
+			if(--i == 0)
+				return v;
+		}
+		return null;
+	}
+	/*/*************************************************/
+}